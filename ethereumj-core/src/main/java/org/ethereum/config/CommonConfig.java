@@ -3,10 +3,12 @@ package org.ethereum.config;
 import org.ethereum.core.*;
 import org.ethereum.datasource.KeyValueDataSource;
 import org.ethereum.datasource.LevelDbDataSource;
+import org.ethereum.datasource.RocksDbDataSource;
 import org.ethereum.datasource.mapdb.MapDBFactory;
 import org.ethereum.datasource.mapdb.MapDBFactoryImpl;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.ContractDetailsImpl;
+import org.ethereum.db.RecordingTrack;
 import org.ethereum.db.RepositoryImpl;
 import org.ethereum.db.RepositoryTrack;
 import org.ethereum.listener.EthereumListener;
@@ -22,6 +24,7 @@ import org.springframework.context.annotation.*;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 import static java.util.Arrays.asList;
 
@@ -66,6 +69,8 @@ public class CommonConfig {
         try {
             if ("mapdb".equals(dataSource)) {
                 return mapDBFactory().createDataSource();
+            } else if ("rocksdb".equals(dataSource)) {
+                return new RocksDbDataSource();
             } else {
                 dataSource = "leveldb";
                 return new LevelDbDataSource();
@@ -108,6 +113,12 @@ public class CommonConfig {
         return new RepositoryTrack(parent);
     }
 
+    @Bean
+    @Scope("prototype")
+    public RecordingTrack recordingTrack(Repository snapshot, byte[] coinbase, Lock snapshotLock) {
+        return new RecordingTrack(snapshot, coinbase, snapshotLock);
+    }
+
     @Bean
     public BlockHeaderValidator headerValidator() {
 
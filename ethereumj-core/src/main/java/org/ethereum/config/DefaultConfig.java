@@ -65,7 +65,10 @@ public class DefaultConfig {
         blocks.setName("block");
         blocks.init();
         IndexedBlockStore indexedBlockStore = new IndexedBlockStore();
-        indexedBlockStore.init(new CachingDataSource(index), new CachingDataSource(blocks));
+        // the index is written only by the ordered blockchain flush, the block bodies
+        // are not reachable without it and can be written in background at any time
+        indexedBlockStore.init(new CachingDataSource(index),
+                new CachingDataSource(blocks, writeBufferSize()));
 
         return indexedBlockStore;
     }
@@ -75,7 +78,12 @@ public class DefaultConfig {
         KeyValueDataSource ds = commonConfig.keyValueDataSource();
         ds.setName("transactions");
         ds.init();
-        CachingDataSource cachingDataSource = new CachingDataSource(ds);
+        // the infos of the blocks which were not indexed yet are ignored and rewritten on reimport
+        CachingDataSource cachingDataSource = new CachingDataSource(ds, writeBufferSize());
         return new TransactionStore(cachingDataSource);
     }
+
+    private long writeBufferSize() {
+        return config.cacheWriteBufferSize() * 1024L * 1024L;
+    }
 }
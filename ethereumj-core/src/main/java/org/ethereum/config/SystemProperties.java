@@ -480,6 +480,40 @@ public class SystemProperties {
         this.databaseDir = dataBaseDir;
     }
 
+    /**
+     * LevelDB options of the DB: the 'database.leveldb.default' ones overridden
+     * by the options of the DB name (the part before '/' for the pooled DBs,
+     * e.g. 'details-storage' for 'details-storage/&lt;address&gt;')
+     */
+    public Config levelDbOptions(String dbName) {
+        Config options = config.getConfig("database.leveldb.default");
+        String profile = "database.leveldb.\"" + dbName.split("/")[0] + "\"";
+        if (config.hasPath(profile)) {
+            options = config.getConfig(profile).withFallback(options);
+        }
+        return options;
+    }
+
+    @ValidateMe
+    public Config levelDbDefaultOptions() {
+        return levelDbOptions("default");
+    }
+
+    @ValidateMe
+    public Config rocksDbOptions() {
+        return config.getConfig("database.rocksdb");
+    }
+
+    @ValidateMe
+    public boolean databasePruneEnabled() {
+        return config.getBoolean("database.prune.enabled");
+    }
+
+    @ValidateMe
+    public int databasePruneDepth() {
+        return config.getInt("database.prune.maxDepth");
+    }
+
     @ValidateMe
     public boolean dumpCleanOnRestart() {
         return config.getBoolean("dump.clean.on.restart");
@@ -490,6 +524,16 @@ public class SystemProperties {
         return config.getBoolean("play.vm");
     }
 
+    @ValidateMe
+    public int parallelTxThreads() {
+        return config.getInt("blockchain.parallelTx.threads");
+    }
+
+    @ValidateMe
+    public int prefetchThreads() {
+        return config.getInt("blockchain.prefetch.threads");
+    }
+
     @ValidateMe
     public boolean blockChainOnly() {
         return config.getBoolean("blockchain.only");
@@ -547,6 +591,16 @@ public class SystemProperties {
         return config.getStringList("peer.capabilities");
     }
 
+    @ValidateMe
+    public String vmInterpreter() {
+        return config.getString("vm.interpreter");
+    }
+
+    @ValidateMe
+    public int vmJitThreshold() {
+        return config.getInt("vm.jit.threshold");
+    }
+
     @ValidateMe
     public boolean vmTrace() {
         return config.getBoolean("vm.structured.trace");
@@ -568,8 +622,8 @@ public class SystemProperties {
     }
 
     @ValidateMe
-    public double cacheFlushMemory() {
-        return config.getDouble("cache.flush.memory");
+    public int cacheFlushSize() {
+        return config.getInt("cache.flush.size");
     }
 
     @ValidateMe
@@ -577,6 +631,21 @@ public class SystemProperties {
         return config.getInt("cache.flush.blocks");
     }
 
+    @ValidateMe
+    public int cacheTrieNodesSize() {
+        return config.getInt("cache.trieNodes.size");
+    }
+
+    @ValidateMe
+    public int cacheCodeAnalysisSize() {
+        return config.getInt("cache.codeAnalysis.size");
+    }
+
+    @ValidateMe
+    public int cacheWriteBufferSize() {
+        return config.getInt("cache.writeBuffer.size");
+    }
+
     @ValidateMe
     public String vmTraceDir() {
         return config.getString("vm.structured.dir");
@@ -747,6 +816,21 @@ public class SystemProperties {
         return config.getInt("transaction.outdated.threshold");
     }
 
+    @ValidateMe
+    public int senderRecoveryThreads() {
+        return config.getInt("transaction.senderRecovery.threads");
+    }
+
+    @ValidateMe
+    public int senderRecoveryCacheSize() {
+        return config.getInt("transaction.senderRecovery.cacheSize");
+    }
+
+    @ValidateMe
+    public String secp256k1Backend() {
+        return config.getString("crypto.secp256k1");
+    }
+
     public void setGenesisInfo(String genesisInfo){
         this.genesisInfo = genesisInfo;
     }
@@ -19,6 +19,11 @@ public interface Blockchain {
 
     Block getBestBlock();
 
+    /**
+     * @return the canonical chain as it was after the last imported block
+     */
+    ChainSnapshot getChainSnapshot();
+
     boolean hasParentOnTheChain(Block block);
 
     void close();
@@ -1,18 +1,23 @@
 package org.ethereum.core;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.ethereum.config.CommonConfig;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.HashMapDB;
+import org.ethereum.datasource.RocksDbStorage;
 import org.ethereum.db.BlockStore;
 import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.IndexedBlockStore;
 import org.ethereum.db.RepositoryImpl;
+import org.ethereum.db.RepositoryTrack;
+import org.ethereum.db.StatePruner;
 import org.ethereum.db.TransactionStore;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.listener.EthereumListenerAdapter;
 import org.ethereum.manager.AdminInfo;
+import org.ethereum.trie.PatriciaTrie;
 import org.ethereum.trie.Trie;
-import org.ethereum.trie.TrieImpl;
 import org.ethereum.util.AdvancedDeviceUtils;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.FastByteComparisons;
@@ -42,9 +47,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static java.lang.Math.max;
-import static java.lang.Runtime.getRuntime;
 import static java.math.BigInteger.ONE;
 import static java.math.BigInteger.ZERO;
 import static java.util.Collections.emptyList;
@@ -96,6 +102,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     // to avoid using minGasPrice=0 from Genesis for the wallet
     private static final long INITIAL_MIN_GAS_PRICE = 10 * SZABO.longValue();
     private static final int MAGIC_REWARD_OFFSET = 8;
+    // smaller blocks are not worth the parallel execution overhead
+    private static final int MIN_PARALLEL_TXS = 4;
 
     @Autowired
     private Repository repository;
@@ -107,10 +115,20 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     @Autowired
     private TransactionStore transactionStore;
 
+    @Autowired
+    private StatePruner statePruner;
+
+    @Autowired
+    private RocksDbStorage rocksDbStorage;
+
     private Block bestBlock;
 
     private BigInteger totalDifficulty = ZERO;
 
+    /* the chain after the last import, read by the public getters: the peers
+     * being served, JSON-RPC, the pending state; the import uses the fields */
+    private volatile ChainSnapshot chainSnapshot;
+
     @Autowired
     private EthereumListener listener;
 
@@ -153,6 +171,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     private Stack<State> stateStack = new Stack<>();
 
+    private ExecutorService txExecutionPool;
+
+    private StatePrefetcher statePrefetcher;
+
     public BlockchainImpl() {
     }
 
@@ -210,7 +232,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     @Override
     public long getSize() {
-        return bestBlock.getNumber() + 1;
+        return getBestBlock().getNumber() + 1;
     }
 
     @Override
@@ -257,13 +279,13 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     }
 
     @Override
-    public synchronized List<byte[]> getListOfHashesStartFrom(byte[] hash, int qty) {
+    public List<byte[]> getListOfHashesStartFrom(byte[] hash, int qty) {
         return blockStore.getListHashesEndWith(hash, qty);
     }
 
     @Override
-    public synchronized List<byte[]> getListOfHashesStartFromBlock(long blockNumber, int qty) {
-        long bestNumber = bestBlock.getNumber();
+    public List<byte[]> getListOfHashesStartFromBlock(long blockNumber, int qty) {
+        long bestNumber = getChainSnapshot().getBestNumber();
 
         if (blockNumber > bestNumber) {
             return emptyList();
@@ -287,7 +309,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     public static byte[] calcTxTrie(List<Transaction> transactions) {
 
-        Trie txsState = new TrieImpl(null);
+        Trie txsState = new PatriciaTrie();
 
         if (transactions == null || transactions.isEmpty())
             return HashUtil.EMPTY_TRIE_HASH;
@@ -367,6 +389,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             }
 
             dropState();
+            publishSnapshot();
         } else {
             // Stay on previous branch
             popState();
@@ -408,13 +431,13 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         } else {
 
             if (blockStore.isBlockExist(block.getParentHash())) {
-                BigInteger oldTotalDiff = getTotalDifficulty();
+                BigInteger oldTotalDiff = totalDifficulty;
 
                 recordBlock(block);
                 summary = tryConnectAndFork(block);
 
                 ret = summary == null ? INVALID_BLOCK :
-                        (isMoreThan(getTotalDifficulty(), oldTotalDiff) ? IMPORTED_BEST : IMPORTED_NOT_BEST);
+                        (isMoreThan(totalDifficulty, oldTotalDiff) ? IMPORTED_BEST : IMPORTED_NOT_BEST);
             } else {
                 summary = null;
                 ret = NO_PARENT;
@@ -477,6 +500,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         List<TransactionReceipt> receipts = summary.getReceipts();
         track.commit();
         block.setStateRoot(getRepository().getRoot());
+        // the block is not imported yet, its state nodes are journaled as a fork ones
+        storeStateChanges(block);
 
         popState();
 
@@ -557,6 +582,9 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             // block is bad so 'rollback' the state root to the original state
             ((RepositoryImpl) repository).setRoot(origRoot);
 
+            // nodes created by the bad block are pruned the same way as fork ones
+            storeStateChanges(block);
+
             if (config.exitOnBlockConflict()) {
                 adminInfo.lostConsensus();
                 System.out.println("CONFLICT: BLOCK #" + block.getNumber() + ", dump: " + Hex.toHexString(block.getEncoded()));
@@ -568,9 +596,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
         track.commit();
         updateTotalDifficulty(block);
-        summary.setTotalDifficulty(getTotalDifficulty());
+        summary.setTotalDifficulty(totalDifficulty);
 
         storeBlock(block, receipts);
+        storeStateChanges(block);
 
         if (!byTest && needFlush(block)) {
             flush();
@@ -579,37 +608,69 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return summary;
     }
 
+    private void storeStateChanges(Block block) {
+        if (statePruner != null && statePruner.isEnabled()) {
+            statePruner.storeBlockChanges(block.getHash(), block.getNumber());
+        }
+    }
+
     public void flush() {
-        repository.flush();
-        blockStore.flush();
-        transactionStore.flush();
+        // with RocksDB the state, blocks and transactions are written as one atomic batch
+        boolean atomic = rocksDbStorage != null && rocksDbStorage.isOpen();
+        if (atomic) rocksDbStorage.startBatch();
+        try {
+            repository.flush();
+            blockStore.flush();
+            transactionStore.flush();
+            if (atomic) rocksDbStorage.commitBatch();
+        } catch (RuntimeException e) {
+            if (!atomic) throw e;
+            // the stores flushed before the failure have already dropped
+            // their caches, their rows are neither in memory nor on disk
+            logger.error("Blockchain flush failed, the batch is dropped. Shutting down", e);
+            rocksDbStorage.abortBatch();
+            System.exit(1);
+        }
 
-        if (isMemoryBoundFlush()) {
-            System.gc();
+        if (atomic && rocksDbStorage.isStatisticsEnabled()) {
+            logger.info("RocksDB statistics:\n{}", rocksDbStorage.getStats());
         }
-    }
 
-    private boolean isMemoryBoundFlush() {
-        return config.cacheFlushMemory() > 0 || config.cacheFlushBlocks() == 0;
+        if (statePruner != null && statePruner.isEnabled()) {
+            statePruner.prune(bestBlock.getNumber());
+        }
     }
 
     private boolean needFlush(Block block) {
-        if (config.cacheFlushMemory() > 0) {
-            return needFlushByMemory(config.cacheFlushMemory());
-        } else if (config.cacheFlushBlocks() > 0) {
-            return block.getNumber() % config.cacheFlushBlocks() == 0;
-        } else {
-            return needFlushByMemory(.7);
+        if (config.cacheFlushSize() <= 0 && config.cacheFlushBlocks() <= 0) return true;
+
+        if (config.cacheFlushBlocks() > 0 && block.getNumber() % config.cacheFlushBlocks() == 0) {
+            return true;
         }
+        return config.cacheFlushSize() > 0 && getPendingWritesSize() >= config.cacheFlushSize() * 1024L * 1024L;
     }
 
-    private boolean needFlushByMemory(double maxMemoryPercents) {
-        return getRuntime().freeMemory() < (getRuntime().totalMemory() * (1 - maxMemoryPercents));
+    /**
+     * @return approximate memory size in bytes of the state, block
+     * and transaction records not yet written to the DB
+     */
+    private long getPendingWritesSize() {
+        long size = 0;
+        if (repository instanceof RepositoryImpl) {
+            size += ((RepositoryImpl) repository).getPendingSize();
+        }
+        if (blockStore instanceof IndexedBlockStore) {
+            size += ((IndexedBlockStore) blockStore).getPendingSize();
+        }
+        if (transactionStore != null) {
+            size += transactionStore.getPendingSize();
+        }
+        return size;
     }
 
     public static byte[] calcReceiptsTrie(List<TransactionReceipt> receipts) {
         //TODO Fix Trie hash for receipts - doesnt match cpp
-        Trie receiptsTrie = new TrieImpl(null);
+        Trie receiptsTrie = new PatriciaTrie();
 
         if (receipts == null || receipts.isEmpty())
             return HashUtil.EMPTY_TRIE_HASH;
@@ -821,16 +882,44 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         List<TransactionReceipt> receipts = new ArrayList<>();
         List<TransactionExecutionSummary> summaries = new ArrayList<>();
 
+        ParallelTransactionExecutor parallelExecutor = null;
+        if (isParallelExecution(block)) {
+            track.commit();
+            parallelExecutor = new ParallelTransactionExecutor(block, repository, blockStore,
+                    new ProgramInvokeFactoryImpl(bestBlock), commonConfig);
+            parallelExecutor.start(getTxExecutionPool());
+        }
+
+        StatePrefetcher.Prefetch prefetch = null;
+        if (parallelExecutor == null && config.prefetchThreads() > 0) {
+            prefetch = getStatePrefetcher().start(block, repository);
+        }
+
+        int txIndex = 0;
         for (Transaction tx : block.getTransactionsList()) {
             stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
 
-            TransactionExecutor executor = commonConfig.transactionExecutor(tx, block.getCoinbase(),
-                    track, blockStore, programInvokeFactory, block, listener, totalGasUsed);
+            if (prefetch != null) {
+                prefetch.txStarted(txIndex);
+            }
+            txIndex++;
+
+            TransactionExecutor executor;
+            TransactionExecutionSummary summary;
+            if (parallelExecutor != null) {
+                ParallelTransactionExecutor.Execution execution =
+                        parallelExecutor.applyNext((RepositoryTrack) track, totalGasUsed, listener);
+                executor = execution.getExecutor();
+                summary = execution.getSummary();
+            } else {
+                executor = commonConfig.transactionExecutor(tx, block.getCoinbase(),
+                        track, blockStore, getImportInvokeFactory(), block, listener, totalGasUsed);
 
-            executor.init();
-            executor.execute();
-            executor.go();
-            TransactionExecutionSummary summary = executor.finalization();
+                executor.init();
+                executor.execute();
+                executor.go();
+                summary = executor.finalization();
+            }
 
             totalGasUsed += executor.getGasUsed();
 
@@ -852,9 +941,26 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             receipts.add(receipt);
             if (summary != null) {
                 summaries.add(summary);
+                if (prefetch != null) {
+                    getStatePrefetcher().record(summary);
+                }
             }
         }
 
+        if (prefetch != null) {
+            long aheadTime = prefetch.finish();
+            adminInfo.addBlockPrefetchTime(aheadTime);
+            logger.debug("block: num: [{}] state of the txs prefetched in advance in [{}]nano",
+                    block.getNumber(), aheadTime);
+        }
+
+        if (parallelExecutor != null) {
+            int txs = block.getTransactionsList().size();
+            adminInfo.addBlockConflictRate((double) parallelExecutor.getReexecuted() / txs);
+            logger.debug("block: num: [{}] executed in parallel, [{}] of [{}] txs executed again due to conflicts",
+                    block.getNumber(), parallelExecutor.getReexecuted(), txs);
+        }
+
         Map<byte[], BigInteger> rewards = addReward(block, summaries);
 
         track.commit();
@@ -874,6 +980,27 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return new BlockSummary(block, rewards, receipts, summaries);
     }
 
+    private boolean isParallelExecution(Block block) {
+        // the vm traces are reported to the listener by the executor
+        return config.parallelTxThreads() > 0 && block.getTransactionsList().size() >= MIN_PARALLEL_TXS &&
+                !config.vmTrace() && track instanceof RepositoryTrack;
+    }
+
+    private synchronized StatePrefetcher getStatePrefetcher() {
+        if (statePrefetcher == null) {
+            statePrefetcher = new StatePrefetcher(config.prefetchThreads());
+        }
+        return statePrefetcher;
+    }
+
+    private synchronized ExecutorService getTxExecutionPool() {
+        if (txExecutionPool == null) {
+            txExecutionPool = Executors.newFixedThreadPool(config.parallelTxThreads(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("tx-execution-%d").build());
+        }
+        return txExecutionPool;
+    }
+
     /**
      * Add reward to block- and every uncle coinbase
      * assuming the entire block is valid.
@@ -959,13 +1086,35 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     @Override
     public void setBestBlock(Block block) {
         bestBlock = block;
+        // the fork block becomes the best one only if the fork is heavier
+        if (!fork) publishSnapshot();
     }
 
     @Override
-    public synchronized Block getBestBlock() {
-        // the method is synchronized since the bestBlock might be
-        // temporarily switched to the fork while importing non-best block
-        return bestBlock;
+    public Block getBestBlock() {
+        return getChainSnapshot().getBestBlock();
+    }
+
+    @Override
+    public ChainSnapshot getChainSnapshot() {
+        ChainSnapshot snapshot = chainSnapshot;
+        return snapshot != null ? snapshot : new ChainSnapshot(bestBlock, totalDifficulty);
+    }
+
+    /**
+     * The import reads the bestBlock and totalDifficulty fields directly since
+     * they might be temporarily switched to the fork while importing non-best block.
+     * The shared invoke factory reads the published best block, so the fork block
+     * is executed with the one bound to its parent
+     */
+    private ProgramInvokeFactory getImportInvokeFactory() {
+        return fork ? new ProgramInvokeFactoryImpl(bestBlock) : programInvokeFactory;
+    }
+
+    private void publishSnapshot() {
+        if (bestBlock != null) {
+            chainSnapshot = new ChainSnapshot(bestBlock, totalDifficulty);
+        }
     }
 
     @Override
@@ -975,7 +1124,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     @Override
     public BigInteger getTotalDifficulty() {
-        return totalDifficulty;
+        return getChainSnapshot().getTotalDifficulty();
     }
 
     @Override
@@ -987,6 +1136,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     @Override
     public void setTotalDifficulty(BigInteger totalDifficulty) {
         this.totalDifficulty = totalDifficulty;
+        if (!fork) publishSnapshot();
     }
 
     private void recordBlock(Block block) {
@@ -1078,20 +1228,18 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     }
 
     @Override
-    public synchronized List<BlockHeader> getListOfHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse) {
+    public List<BlockHeader> getListOfHeadersStartFrom(BlockIdentifier identifier, int skip, int limit, boolean reverse) {
         long blockNumber = identifier.getNumber();
 
         if (identifier.getHash() != null) {
-            Block block = getBlockByHash(identifier.getHash());
+            blockNumber = blockStore.getBlockNumberByHash(identifier.getHash());
 
-            if (block == null) {
+            if (blockNumber < 0) {
                 return emptyList();
             }
-
-            blockNumber = block.getNumber();
         }
 
-        long bestNumber = bestBlock.getNumber();
+        long bestNumber = getChainSnapshot().getBestNumber();
 
         if (bestNumber < blockNumber) {
             return emptyList();
@@ -1137,17 +1285,11 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
             startNumber = blockNumber + skip + qty - 1;
         }
 
-        Block block = getBlockByNumber(startNumber);
-
-        if (block == null) {
-            return null;
-        }
-
-        return block.getHash();
+        return blockStore.getBlockHashByNumber(startNumber);
     }
 
     @Override
-    public synchronized List<byte[]> getListOfBodiesByHashes(List<byte[]> hashes) {
+    public List<byte[]> getListOfBodiesByHashes(List<byte[]> hashes) {
         List<byte[]> bodies = new ArrayList<>(hashes.size());
 
         for (byte[] hash : hashes) {
@@ -0,0 +1,43 @@
+package org.ethereum.core;
+
+import java.math.BigInteger;
+
+/**
+ * Read-only view of the canonical chain published by the {@link Blockchain} after each import.
+ *
+ * The best block and the total difficulty always belong to the same imported block,
+ * the block store index is read only up to the best block number, so the peer and
+ * JSON-RPC queries see the chain as it was after the last import without waiting for
+ * the block being imported.
+ */
+public class ChainSnapshot {
+
+    private final Block bestBlock;
+    private final BigInteger totalDifficulty;
+
+    public ChainSnapshot(Block bestBlock, BigInteger totalDifficulty) {
+        this.bestBlock = bestBlock;
+        this.totalDifficulty = totalDifficulty;
+    }
+
+    public Block getBestBlock() {
+        return bestBlock;
+    }
+
+    public long getBestNumber() {
+        return bestBlock.getNumber();
+    }
+
+    public byte[] getBestHash() {
+        return bestBlock.getHash();
+    }
+
+    public BigInteger getTotalDifficulty() {
+        return totalDifficulty;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainSnapshot{#" + bestBlock.getNumber() + " (" + bestBlock.getShortHash() + "), TD: " + totalDifficulty + "}";
+    }
+}
@@ -0,0 +1,170 @@
+package org.ethereum.core;
+
+import org.ethereum.config.CommonConfig;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.RecordingTrack;
+import org.ethereum.db.RepositoryTrack;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Executes the transactions of a block in parallel, see [blockchain.parallelTx.threads].
+ *
+ * Every transaction is executed speculatively on its own {@link RecordingTrack} over the state
+ * before the block. The results are applied in the block order: the transaction which has read
+ * an account or a storage row changed by the preceding transactions of the block is executed
+ * again over the current state, so the state, the receipts and the logs are exactly the same
+ * as of the sequential execution.
+ */
+public class ParallelTransactionExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger("execute");
+
+    public static class Execution {
+        private final TransactionExecutor executor;
+        private final TransactionExecutionSummary summary;
+        private final RecordingTrack track;
+
+        Execution(TransactionExecutor executor, TransactionExecutionSummary summary, RecordingTrack track) {
+            this.executor = executor;
+            this.summary = summary;
+            this.track = track;
+        }
+
+        public TransactionExecutor getExecutor() {
+            return executor;
+        }
+
+        public TransactionExecutionSummary getSummary() {
+            return summary;
+        }
+    }
+
+    private final Block block;
+    private final Repository repository;
+    private final BlockStore blockStore;
+    private final ProgramInvokeFactory programInvokeFactory;
+    private final CommonConfig commonConfig;
+
+    /* the snapshots share the contract details with the repository, which is changed under the write lock */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<Future<Execution>> executions = new ArrayList<>();
+    private final Set<ByteArrayWrapper> changedAccounts = new HashSet<>();
+    private final Map<ByteArrayWrapper, Set<DataWord>> changedStorage = new HashMap<>();
+    private int nextIndex = 0;
+    private int reexecuted = 0;
+
+    public ParallelTransactionExecutor(Block block, Repository repository, BlockStore blockStore,
+                                       ProgramInvokeFactory programInvokeFactory, CommonConfig commonConfig) {
+        this.block = block;
+        this.repository = repository;
+        this.blockStore = blockStore;
+        this.programInvokeFactory = programInvokeFactory;
+        this.commonConfig = commonConfig;
+    }
+
+    /**
+     * Starts the speculative execution of all the block transactions
+     * over the current state of the repository
+     */
+    public void start(ExecutorService pool) {
+        byte[] root = repository.getRoot();
+        for (final Transaction tx : block.getTransactionsList()) {
+            final Repository snapshot = repository.getSnapshotTo(root);
+            executions.add(pool.submit(new Callable<Execution>() {
+                @Override
+                public Execution call() {
+                    return execute(tx, snapshot, 0);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Applies the next transaction of the block to the track and commits the track
+     */
+    public Execution applyNext(RepositoryTrack track, long gasUsedInTheBlock, EthereumListener listener) {
+        int index = nextIndex++;
+        Transaction tx = block.getTransactionsList().get(index);
+
+        Execution execution = null;
+        try {
+            execution = executions.get(index).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            logger.debug("Speculative execution of tx [{}] failed: {}", index, e.getCause());
+        }
+
+        if (execution == null || !isGasLimitCovered(tx, gasUsedInTheBlock) ||
+                execution.track.hasRead(changedAccounts, changedStorage)) {
+            reexecuted++;
+            execution = execute(tx, repository.getSnapshotTo(repository.getRoot()), gasUsedInTheBlock);
+        }
+
+        lock.writeLock().lock();
+        try {
+            execution.track.applyTo(track, changedAccounts, changedStorage);
+            track.commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        execution.executor.getReceipt().setCumulativeGas(gasUsedInTheBlock + execution.executor.getGasUsed());
+        if (execution.summary != null) {
+            listener.onTransactionExecuted(execution.summary);
+        }
+        return execution;
+    }
+
+    /**
+     * @return the number of the transactions executed again because of the conflicts
+     */
+    public int getReexecuted() {
+        return reexecuted;
+    }
+
+    private Execution execute(Transaction tx, Repository snapshot, long gasUsedInTheBlock) {
+        RecordingTrack track = commonConfig.recordingTrack(snapshot, block.getCoinbase(), lock.readLock());
+        TransactionExecutor executor = commonConfig.transactionExecutor(tx, block.getCoinbase(),
+                track, blockStore, programInvokeFactory, block, new EthereumListenerAdapter(), gasUsedInTheBlock);
+
+        executor.init();
+        executor.execute();
+        executor.go();
+        TransactionExecutionSummary summary = executor.finalization();
+
+        return new Execution(executor, summary, track);
+    }
+
+    /**
+     * The speculative execution assumes no gas is used in the block before the transaction,
+     * the transaction is executed again if it doesn't fit into the block gas limit actually
+     */
+    private boolean isGasLimitCovered(Transaction tx, long gasUsedInTheBlock) {
+        BigInteger txGasLimit = new BigInteger(1, tx.getGasLimit());
+        BigInteger blockGasLimit = new BigInteger(1, block.getGasLimit());
+        return txGasLimit.add(BigInteger.valueOf(gasUsedInTheBlock)).compareTo(blockGasLimit) <= 0;
+    }
+}
@@ -0,0 +1,113 @@
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Recovers the transaction senders from the signatures, see [transaction.senderRecovery].
+ *
+ * The recovered senders are cached by the transaction hash, so the same transaction
+ * received again, e.g. first from the peers and then in a block, is not recovered twice.
+ * The batches of transactions coming from the network are recovered in parallel.
+ */
+public class SenderRecovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(Transaction.class);
+
+    private static SenderRecovery inst;
+
+    public static synchronized SenderRecovery getDefault() {
+        if (inst == null) {
+            SystemProperties config = SystemProperties.getDefault();
+            inst = new SenderRecovery(config.senderRecoveryThreads(), config.senderRecoveryCacheSize());
+        }
+        return inst;
+    }
+
+    private final Map<ByteArrayWrapper, byte[]> senders;
+    private final int threads;
+    private final ExecutorService pool;
+
+    public SenderRecovery(int threads, int cacheSize) {
+        this.senders = Collections.synchronizedMap(new LRUMap<ByteArrayWrapper, byte[]>(cacheSize));
+        this.threads = threads;
+        this.pool = threads == 0 ? null : Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sender-recovery-%d").build());
+    }
+
+    /**
+     * @return the sender address, null if the signature is invalid
+     */
+    public byte[] getSender(Transaction tx) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
+        byte[] sender = senders.get(hash);
+        if (sender == null) {
+            try {
+                sender = ECKey.signatureToAddress(tx.getRawHash(), tx.getSignature());
+            } catch (SignatureException e) {
+                logger.error(e.getMessage(), e);
+                return null;
+            }
+            senders.put(hash, sender);
+        }
+        return sender;
+    }
+
+    /**
+     * Recovers the senders of the transactions splitting them between the pool threads
+     * and the calling one, returns when all of them are recovered
+     */
+    public void recover(List<Transaction> txs) {
+        int chunk = (txs.size() + threads) / (threads + 1);
+        if (pool == null || chunk == txs.size()) {
+            recoverAll(txs);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = chunk; from < txs.size(); from += chunk) {
+            final List<Transaction> part = txs.subList(from, Math.min(from + chunk, txs.size()));
+            futures.add(pool.submit(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    recoverAll(part);
+                    return null;
+                }
+            }));
+        }
+        recoverAll(txs.subList(0, chunk));
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.error("Unexpected sender recovery error: ", e.getCause());
+            }
+        }
+    }
+
+    private static void recoverAll(List<Transaction> txs) {
+        for (Transaction tx : txs) {
+            tx.getSender();
+        }
+    }
+}
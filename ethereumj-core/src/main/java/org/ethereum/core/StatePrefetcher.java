@@ -0,0 +1,159 @@
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.ContractDetails;
+import org.ethereum.vm.DataWord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_DATA_HASH;
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Reads the state of the block transactions ahead of their execution, see [blockchain.prefetch.threads].
+ *
+ * The accounts of the senders and the receivers, the receiver code and the storage rows
+ * the receiver has touched last time are read from the snapshot of the state before the block.
+ * The snapshots share the contract details and the trie node caches with the repository,
+ * so the transactions executed afterwards don't wait for the database.
+ */
+public class StatePrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger("blockchain");
+
+    private static final int MAX_CONTRACTS = 10000;
+    private static final int MAX_KEYS_PER_CONTRACT = 256;
+
+    /**
+     * Prefetching of the single block transactions
+     */
+    public class Prefetch implements Runnable {
+        private final List<Transaction> txs;
+        private final byte[] root;
+        private final Repository repository;
+
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicLong aheadTime = new AtomicLong();
+        private volatile int executing = -1;
+        private volatile boolean finished;
+
+        Prefetch(List<Transaction> txs, Repository repository) {
+            this.txs = txs;
+            this.repository = repository;
+            this.root = repository.getRoot();
+        }
+
+        @Override
+        public void run() {
+            Repository snapshot = repository.getSnapshotTo(root);
+            int index;
+            while (!finished && (index = next.getAndIncrement()) < txs.size()) {
+                // the transaction is already executing, the reads wouldn't save anything
+                if (index <= executing) continue;
+
+                long start = System.nanoTime();
+                try {
+                    prefetch(snapshot, txs.get(index));
+                } catch (RuntimeException e) {
+                    logger.debug("Prefetching of tx [{}] failed: {}", index, e);
+                    continue;
+                }
+                if (index > executing) {
+                    aheadTime.addAndGet(System.nanoTime() - start);
+                }
+            }
+        }
+
+        /**
+         * Called before the transaction with the given index is executed
+         */
+        public void txStarted(int index) {
+            executing = index;
+        }
+
+        /**
+         * Stops the prefetching
+         *
+         * @return time spent reading the state of the transactions
+         *         before they were executed [nanos]
+         */
+        public long finish() {
+            finished = true;
+            return aheadTime.get();
+        }
+    }
+
+    private final int threads;
+    private final ExecutorService pool;
+
+    /* storage keys touched by the last call of the contract */
+    private final Map<ByteArrayWrapper, Collection<DataWord>> touchedKeys =
+            Collections.synchronizedMap(new LRUMap<ByteArrayWrapper, Collection<DataWord>>(MAX_CONTRACTS));
+
+    public StatePrefetcher(int threads) {
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("state-prefetch-%d").build());
+    }
+
+    /**
+     * Starts prefetching of the block transactions from the current state of the repository
+     */
+    public Prefetch start(Block block, Repository repository) {
+        Prefetch prefetch = new Prefetch(block.getTransactionsList(), repository);
+        for (int i = 0; i < Math.min(threads, block.getTransactionsList().size()); i++) {
+            pool.execute(prefetch);
+        }
+        return prefetch;
+    }
+
+    /**
+     * Remembers the storage keys touched by the executed transaction
+     */
+    public void record(TransactionExecutionSummary summary) {
+        Transaction tx = summary.getTransaction();
+        if (tx.isContractCreation()) return;
+
+        Collection<DataWord> keys = summary.getTouchedStorage().getAll().keySet();
+        if (keys.isEmpty()) return;
+
+        List<DataWord> recorded = new ArrayList<>(keys);
+        if (recorded.size() > MAX_KEYS_PER_CONTRACT) {
+            recorded = recorded.subList(0, MAX_KEYS_PER_CONTRACT);
+        }
+        touchedKeys.put(wrap(tx.getReceiveAddress()), recorded);
+    }
+
+    private void prefetch(Repository snapshot, Transaction tx) {
+        snapshot.getAccountState(tx.getSender());
+        if (tx.isContractCreation()) return;
+
+        byte[] receiver = tx.getReceiveAddress();
+        AccountState account = snapshot.getAccountState(receiver);
+        if (account == null || Arrays.equals(account.getCodeHash(), EMPTY_DATA_HASH)) return;
+
+        ContractDetails details = snapshot.getContractDetails(receiver);
+        if (details == null) return;
+        details.getCode(account.getCodeHash());
+
+        Collection<DataWord> keys = touchedKeys.get(wrap(receiver));
+        if (keys != null) {
+            for (DataWord key : keys) {
+                details.get(key);
+            }
+        }
+    }
+}
@@ -15,7 +15,6 @@ import org.spongycastle.util.BigIntegers;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
-import java.security.SignatureException;
 import java.util.Arrays;
 
 import static org.ethereum.util.ByteUtil.*;
@@ -143,10 +142,15 @@ public class Transaction {
         return parsed;
     }
 
+    /**
+     * The hash is taken over the encoded transaction, so the transaction
+     * received from the network is not parsed to get it
+     */
     public byte[] getHash() {
-        if (!parsed) rlpParse();
-        byte[] plainMsg = this.getEncoded();
-        return HashUtil.sha3(plainMsg);
+        if (hash == null) {
+            hash = HashUtil.sha3(getEncoded());
+        }
+        return hash;
     }
 
     public byte[] getRawHash() {
@@ -236,15 +240,10 @@ public class Transaction {
     }
 
     public synchronized byte[] getSender() {
-        try {
-            if (sendAddress == null) {
-                sendAddress = ECKey.signatureToAddress(getRawHash(), getSignature());
-            }
-            return sendAddress;
-        } catch (SignatureException e) {
-            logger.error(e.getMessage(), e);
+        if (sendAddress == null) {
+            sendAddress = SenderRecovery.getDefault().getSender(this);
         }
-        return null;
+        return sendAddress;
     }
 
     /**
@@ -257,6 +256,7 @@ public class Transaction {
     public void sign(ECKey key) throws MissingPrivateKeyException {
         this.signature = key.sign(this.getRawHash());
         this.rlpEncoded = null;
+        this.hash = null;
     }
 
     @Override
@@ -0,0 +1,33 @@
+package org.ethereum.crypto;
+
+import org.spongycastle.asn1.x9.X9ECParameters;
+import org.spongycastle.crypto.ec.CustomNamedCurves;
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.math.ec.ECPoint;
+
+/**
+ * Pure Java secp256k1 specific EC math: the field arithmetic on the fixed size 256-bit
+ * numbers and the GLV endomorphism of the SpongyCastle custom curve. The wNAF tables
+ * of the generator point are computed once and kept on the point.
+ *
+ * The cofactor of secp256k1 is 1, so every point of the curve has the curve order
+ * and the recovery skips that check
+ */
+public class OptimizedSecp256k1 extends SpongyCastleSecp256k1 {
+
+    private static final ECDomainParameters DOMAIN;
+
+    static {
+        X9ECParameters params = CustomNamedCurves.getByName("secp256k1");
+        DOMAIN = new ECDomainParameters(params.getCurve(), params.getG(), params.getN(), params.getH());
+    }
+
+    public OptimizedSecp256k1() {
+        super(DOMAIN);
+    }
+
+    @Override
+    protected boolean hasCurveOrder(ECPoint R) {
+        return true;
+    }
+}
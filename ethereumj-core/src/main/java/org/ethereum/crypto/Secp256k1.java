@@ -0,0 +1,54 @@
+package org.ethereum.crypto;
+
+import org.ethereum.config.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the {@link Secp256k1Backend} on the first use, see [crypto.secp256k1]
+ */
+public final class Secp256k1 {
+
+    private static final Logger logger = LoggerFactory.getLogger(ECKey.class);
+
+    private static volatile Secp256k1Backend backend;
+
+    private Secp256k1() {
+    }
+
+    public static Secp256k1Backend getBackend() {
+        if (backend == null) {
+            synchronized (Secp256k1.class) {
+                if (backend == null) {
+                    backend = create(SystemProperties.getDefault().secp256k1Backend());
+                }
+            }
+        }
+        return backend;
+    }
+
+    public static void setBackend(Secp256k1Backend backend) {
+        Secp256k1.backend = backend;
+    }
+
+    /**
+     * @param name 'java', 'spongycastle' or the name of the {@link Secp256k1Backend} class,
+     *             e.g. the binding of the native library
+     * @return the backend, the optimized pure Java one if the class can't be loaded
+     */
+    public static Secp256k1Backend create(String name) {
+        switch (name) {
+            case "java":
+                return new OptimizedSecp256k1();
+            case "spongycastle":
+                return new SpongyCastleSecp256k1();
+            default:
+                try {
+                    return (Secp256k1Backend) Class.forName(name).newInstance();
+                } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+                    logger.warn("Secp256k1 backend '{}' is not available, using the pure Java one: {}", name, e.toString());
+                    return new OptimizedSecp256k1();
+                }
+        }
+    }
+}
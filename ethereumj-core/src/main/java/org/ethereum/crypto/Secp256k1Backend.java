@@ -0,0 +1,23 @@
+package org.ethereum.crypto;
+
+import java.math.BigInteger;
+
+/**
+ * The secp256k1 operations behind the signature recovery and verification
+ * of the {@link ECKey}, see {@link Secp256k1}
+ */
+public interface Secp256k1Backend {
+
+    /**
+     * Recovers the public key according to the algorithm in SEC1v2 section 4.1.6,
+     * see {@link ECKey#recoverPubBytesFromSignature}
+     *
+     * @return 65-byte encoded public key, null if there is no key for the recId
+     */
+    byte[] recoverPubBytes(int recId, BigInteger r, BigInteger s, byte[] messageHash);
+
+    /**
+     * @return true if the signature of the hash is made by the key
+     */
+    boolean verify(byte[] messageHash, BigInteger r, BigInteger s, byte[] pub);
+}
@@ -0,0 +1,110 @@
+package org.ethereum.crypto;
+
+import org.spongycastle.asn1.x9.X9IntegerConverter;
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+import org.spongycastle.crypto.signers.ECDSASigner;
+import org.spongycastle.math.ec.ECAlgorithms;
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+
+/**
+ * Generic SpongyCastle EC math over the {@link ECKey#CURVE}, the reference implementation
+ */
+public class SpongyCastleSecp256k1 implements Secp256k1Backend {
+
+    private static final Logger logger = LoggerFactory.getLogger(ECKey.class);
+
+    private final ECDomainParameters domain;
+
+    public SpongyCastleSecp256k1() {
+        this(ECKey.CURVE);
+    }
+
+    protected SpongyCastleSecp256k1(ECDomainParameters domain) {
+        this.domain = domain;
+    }
+
+    @Override
+    public byte[] recoverPubBytes(int recId, BigInteger r, BigInteger s, byte[] messageHash) {
+        // 1.0 For j from 0 to h   (h == recId here and the loop is outside this function)
+        //   1.1 Let x = r + jn
+        BigInteger n = domain.getN();  // Curve order.
+        BigInteger i = BigInteger.valueOf((long) recId / 2);
+        BigInteger x = r.add(i.multiply(n));
+        //   1.2. Convert the integer x to an octet string X of length mlen using the conversion routine
+        //        specified in Section 2.3.7, where mlen = ⌈(log2 p)/8⌉ or mlen = ⌈m/8⌉.
+        //   1.3. Convert the octet string (16 set binary digits)||X to an elliptic curve point R using the
+        //        conversion routine specified in Section 2.3.4. If this conversion routine outputs “invalid”, then
+        //        do another iteration of Step 1.
+        //
+        // More concisely, what these points mean is to use X as a compressed public key.
+        BigInteger prime = domain.getCurve().getField().getCharacteristic();
+        if (x.compareTo(prime) >= 0) {
+            // Cannot have point co-ordinates larger than this as everything takes place modulo Q.
+            return null;
+        }
+        // Compressed keys require you to know an extra bit of data about the y-coord as there are two possibilities.
+        // So it's encoded in the recId.
+        ECPoint R = decompressKey(x, (recId & 1) == 1);
+        //   1.4. If nR != point at infinity, then do another iteration of Step 1 (callers responsibility).
+        if (!hasCurveOrder(R))
+            return null;
+        //   1.5. Compute e from M using Steps 2 and 3 of ECDSA signature verification.
+        BigInteger e = new BigInteger(1, messageHash);
+        //   1.6. For k from 1 to 2 do the following.   (loop is outside this function via iterating recId)
+        //   1.6.1. Compute a candidate public key as:
+        //               Q = mi(r) * (sR - eG)
+        //
+        // Where mi(x) is the modular multiplicative inverse. We transform this into the following:
+        //               Q = (mi(r) * s ** R) + (mi(r) * -e ** G)
+        // Where -e is the modular additive inverse of e, that is z such that z + e = 0 (mod n). In the above equation
+        // ** is point multiplication and + is point addition (the EC group operator).
+        //
+        // We can find the additive inverse by subtracting e from zero then taking the mod. For example the additive
+        // inverse of 3 modulo 11 is 8 because 3 + 8 mod 11 = 0, and -3 mod 11 = 8.
+        BigInteger eInv = BigInteger.ZERO.subtract(e).mod(n);
+        BigInteger rInv = r.modInverse(n);
+        BigInteger srInv = rInv.multiply(s).mod(n);
+        BigInteger eInvrInv = rInv.multiply(eInv).mod(n);
+        ECPoint q = ECAlgorithms.sumOfTwoMultiplies(domain.getG(), eInvrInv, R, srInv);
+        return q.getEncoded(/* compressed */ false);
+    }
+
+    @Override
+    public boolean verify(byte[] messageHash, BigInteger r, BigInteger s, byte[] pub) {
+        ECDSASigner signer = new ECDSASigner();
+        ECPublicKeyParameters params = new ECPublicKeyParameters(domain.getCurve().decodePoint(pub), domain);
+        signer.init(false, params);
+        try {
+            return signer.verifySignature(messageHash, r, s);
+        } catch (NullPointerException npe) {
+            // Bouncy Castle contains a bug that can cause NPEs given specially crafted signatures.
+            // Those signatures are inherently invalid/attack sigs so we just fail them here rather than crash the thread.
+            logger.error("Caught NPE inside bouncy castle", npe);
+            return false;
+        }
+    }
+
+    /**
+     * @return true if nR is the point at infinity
+     */
+    protected boolean hasCurveOrder(ECPoint R) {
+        return R.multiply(domain.getN()).isInfinity();
+    }
+
+    /**
+     * Decompress a compressed public key (x co-ord and low-bit of y-coord).
+     */
+    private ECPoint decompressKey(BigInteger xBN, boolean yBit) {
+        ECCurve curve = domain.getCurve();
+        X9IntegerConverter x9 = new X9IntegerConverter();
+        byte[] compEnc = x9.integerToBytes(xBN, 1 + x9.getByteLength(curve));
+        compEnc[0] = (byte) (yBit ? 0x03 : 0x02);
+        return curve.decodePoint(compEnc);
+    }
+}
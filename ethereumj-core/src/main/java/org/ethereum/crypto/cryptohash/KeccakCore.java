@@ -570,6 +570,37 @@ abstract class KeccakCore extends DigestEngine {
 		A[20] = 0xFFFFFFFFFFFFFFFFL;
 	}
 
+	/**
+	 * Copy the current state to the digest {@code dst} of the same
+	 * length; unlike {@link #copy} no new instance is allocated.
+	 *
+	 * @param dst   the destination digest
+	 */
+	public void copyTo(KeccakCore dst)
+	{
+		copyState(dst);
+	}
+
+	/**
+	 * Reset the digest to the state absorbed by another Keccak
+	 * implementation with the same block length. The 200 bytes of
+	 * {@code state} hold the 25 lanes in little-endian convention.
+	 *
+	 * @param state   the state to continue from
+	 */
+	public void setState(byte[] state)
+	{
+		reset();
+		for (int i = 0; i < 25; i ++)
+			A[i] = decodeLELong(state, i << 3);
+		A[ 1] = ~A[ 1];
+		A[ 2] = ~A[ 2];
+		A[ 8] = ~A[ 8];
+		A[12] = ~A[12];
+		A[17] = ~A[17];
+		A[20] = ~A[20];
+	}
+
 	/** @see org.ethereum.crypto.cryptohash.DigestEngine */
 	protected Digest copyState(KeccakCore dst)
 	{
@@ -1,51 +1,257 @@
 package org.ethereum.datasource;
 
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
+ * Write-back cache on top of a {@link KeyValueDataSource}.
+ *
+ * Writes are collected in memory until {@link #flush()} is called. If the
+ * cache is created with a size limit, the pending writes are also flushed
+ * in the background once their size crosses the limit. While that
+ * flush is running, its records are still served from memory and new
+ * writes go to a fresh cache. The writer which crosses the limit again
+ * before that flush completes waits for it without holding the lock, so
+ * the reads never wait for the disk. Deletions are cached too and are written
+ * to the source as null values in the batch.
+ *
  * Created by Anton Nashatyrev on 18.02.2016.
  */
 public class CachingDataSource implements KeyValueDataSource, Flushable {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    /* rough per entry overhead: map entry, wrapper, two arrays headers */
+    private static final int ENTRY_OVERHEAD = 96;
+
     KeyValueDataSource source;
 
     Map<ByteArrayWrapper, byte[]> cache = new HashMap<>();
 
+    /* the records being written by the background flush */
+    private Map<ByteArrayWrapper, byte[]> flushing = null;
+    private Future<?> flushFuture = null;
+
+    private final long maxSize;
+    private long size = 0;
+    private long flushingSize = 0;
+
+    private ExecutorService flushExecutor;
+
     public CachingDataSource(KeyValueDataSource source) {
+        this(source, 0);
+    }
+
+    /**
+     * @param maxSize size in bytes of the pending writes which triggers
+     *                the background flush, 0 to flush only explicitly
+     */
+    public CachingDataSource(KeyValueDataSource source, long maxSize) {
         this.source = source;
+        this.maxSize = maxSize;
     }
 
+    /**
+     * Writes all the pending records to the source, returns
+     * when the records (including the background flush ones) are written
+     */
     public void flush() {
-        Map<byte[], byte[]> records = new HashMap<>();
-        for (Map.Entry<ByteArrayWrapper, byte[]> entry : cache.entrySet()) {
-            records.put(entry.getKey().getData(), entry.getValue());
+        Future<?> flushed = startFlush(true);
+        if (flushed == null) return;
+
+        try {
+            flushed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            // the records are restored below
+        }
+
+        Throwable failure;
+        synchronized (this) {
+            // might be already released by a writer which started the next flush
+            failure = flushFuture == flushed ? releaseFlushing() : failureOf(flushed);
+        }
+        if (failure != null) {
+            throw new RuntimeException("Flush failed: " + getName(), failure);
         }
-        source.updateBatch(records);
-        cache.clear();
+    }
+
+    private void flushAsync() {
+        startFlush(false);
+    }
+
+    /**
+     * Swaps the pending records out and submits them to the flush thread.
+     * The previous flush is awaited without holding the lock,
+     * so the reads are served from the snapshot in the meantime
+     *
+     * @param force flush even if the pending records are below the limit
+     * @return the submitted flush or null if there was nothing to flush
+     */
+    private Future<?> startFlush(boolean force) {
+        while (true) {
+            Future<?> running;
+            synchronized (this) {
+                // could be flushed by another thread in the meantime
+                if (!force && size < maxSize) return null;
+
+                if (flushFuture == null || flushFuture.isDone()) {
+                    Throwable failure = releaseFlushing();
+                    if (failure != null) {
+                        throw new RuntimeException("Background flush failed: " + getName(), failure);
+                    }
+                    if (cache.isEmpty()) return null;
+                    return submitFlush();
+                }
+                running = flushFuture;
+            }
+
+            try {
+                running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // reported once the flush is released
+            }
+        }
+    }
+
+    private Future<?> submitFlush() {
+        final Map<ByteArrayWrapper, byte[]> records = cache;
+        cache = new HashMap<>();
+        flushing = records;
+        flushingSize = size;
+        size = 0;
+
+        if (flushExecutor == null) {
+            flushExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true).setNameFormat("caching-ds-" + getName() + "-%d").build());
+        }
+        flushFuture = flushExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                long s = System.currentTimeMillis();
+                writeToSource(records);
+                logger.debug("CachingDataSource {}: {} records flushed in {} ms",
+                        getName(), records.size(), System.currentTimeMillis() - s);
+            }
+        });
+        return flushFuture;
+    }
+
+    /**
+     * Releases the snapshot of the completed flush. If the flush failed
+     * its records not overwritten since are kept for the next flush
+     *
+     * @return the failure of the flush or null
+     */
+    private Throwable releaseFlushing() {
+        if (flushFuture == null) return null;
+
+        Throwable failure = failureOf(flushFuture);
+        if (failure != null) {
+            for (Map.Entry<ByteArrayWrapper, byte[]> entry : flushing.entrySet()) {
+                if (!cache.containsKey(entry.getKey())) {
+                    putInternal(entry.getKey().getData(), entry.getValue());
+                }
+            }
+        }
+        flushFuture = null;
+        flushing = null;
+        flushingSize = 0;
+        return failure;
+    }
+
+    private static Throwable failureOf(Future<?> done) {
+        try {
+            done.get();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    private void writeToSource(Map<ByteArrayWrapper, byte[]> records) {
+        if (records.isEmpty()) return;
+
+        Map<byte[], byte[]> batch = new HashMap<>();
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : records.entrySet()) {
+            batch.put(entry.getKey().getData(), entry.getValue());
+        }
+        source.updateBatch(batch);
+    }
+
+    /**
+     * @return approximate memory size in bytes of the records
+     * not yet written to the source (including the background flush ones)
+     */
+    public synchronized long getSize() {
+        return size + flushingSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
     }
 
     @Override
     public synchronized byte[] get(byte[] key) {
-        byte[] bb = cache.get(new ByteArrayWrapper(key));
-        if (bb == null) {
-            return source.get(key);
+        ByteArrayWrapper wrappedKey = new ByteArrayWrapper(key);
+        // null value is a pending deletion
+        if (cache.containsKey(wrappedKey)) {
+            return cache.get(wrappedKey);
+        } else if (flushing != null && flushing.containsKey(wrappedKey)) {
+            return flushing.get(wrappedKey);
         } else {
-            return bb;
+            return source.get(key);
         }
     }
 
     @Override
-    public synchronized byte[] put(byte[] key, byte[] value) {
-        return cache.put(new ByteArrayWrapper(key), value);
+    public byte[] put(byte[] key, byte[] value) {
+        synchronized (this) {
+            putInternal(key, value);
+            if (maxSize <= 0 || size < maxSize) return value;
+        }
+
+        flushAsync();
+        return value;
+    }
+
+    private void putInternal(byte[] key, byte[] value) {
+        byte[] old = cache.put(new ByteArrayWrapper(key), value);
+        if (old != null) {
+            size -= entrySize(key, old);
+        }
+        size += entrySize(key, value);
+    }
+
+    private static long entrySize(byte[] key, byte[] value) {
+        return key.length + (value == null ? 0 : value.length) + ENTRY_OVERHEAD;
     }
 
     @Override
-    public synchronized void delete(byte[] key) {
-        cache.remove(new ByteArrayWrapper(key));
-        source.delete(key);
+    public void delete(byte[] key) {
+        put(key, null);
     }
 
     @Override
@@ -53,11 +259,43 @@ public class CachingDataSource implements KeyValueDataSource, Flushable {
         return source.keys(); // TODO correctly
     }
 
+    /**
+     * Pending records are returned first (in no particular order)
+     * followed by the source keys which are not overwritten or deleted by them
+     */
+    @Override
+    public synchronized KeyIterator keyIterator(final byte[] from, final byte[] to) {
+        final Map<ByteArrayWrapper, byte[]> pending = new HashMap<>();
+        if (flushing != null) pending.putAll(flushing);
+        pending.putAll(cache);
+
+        List<byte[]> added = new ArrayList<>();
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : pending.entrySet()) {
+            if (entry.getValue() != null && KeyIterators.inRange(entry.getKey().getData(), from, to)) {
+                added.add(entry.getKey().getData());
+            }
+        }
+
+        final KeyIterator sourceKeys = source.keyIterator(from, to);
+        Iterator<byte[]> sourceNotPending = new KeyIterators.FilteringIterator(sourceKeys) {
+            @Override
+            protected boolean accept(byte[] key) {
+                return !pending.containsKey(new ByteArrayWrapper(key));
+            }
+        };
+        return KeyIterators.wrap(Iterators.concat(added.iterator(), sourceNotPending), null, null, sourceKeys);
+    }
+
     @Override
-    public synchronized void updateBatch(Map<byte[], byte[]> rows) {
-        for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+    public void updateBatch(Map<byte[], byte[]> rows) {
+        synchronized (this) {
+            for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
+                putInternal(entry.getKey(), entry.getValue());
+            }
+            if (maxSize <= 0 || size < maxSize) return;
         }
+
+        flushAsync();
     }
 
     @Override
@@ -82,6 +320,20 @@ public class CachingDataSource implements KeyValueDataSource, Flushable {
 
     @Override
     public void close() {
+        Future<?> running;
+        synchronized (this) {
+            running = flushFuture;
+        }
+        if (running != null) {
+            try {
+                running.get();
+            } catch (Exception e) {
+                logger.warn("CachingDataSource {}: background flush failed", getName(), e);
+            }
+        }
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
         source.close();
     }
 }
@@ -11,7 +11,7 @@ import java.util.AbstractList;
 public class DataSourceArray<V> extends AbstractList<V> implements Flushable {
     private ObjectDataSource<V> src;
     private static final byte[] sizeKey = Hex.decode("FFFFFFFFFFFFFFFF");
-    private int size = -1;
+    private volatile int size = -1;
 
     public DataSourceArray(ObjectDataSource<V> src) {
         this.src = src;
@@ -67,10 +67,20 @@ public class HashMapDB implements KeyValueDataSource {
         return keys;
     }
 
+    @Override
+    public synchronized KeyIterator keyIterator(byte[] from, byte[] to) {
+        return KeyIterators.sorted(keys(), from, to);
+    }
+
     @Override
     public synchronized void updateBatch(Map<byte[], byte[]> rows) {
         for (byte[] key :  rows.keySet()){
-            storage.put(wrap(key), rows.get(key));
+            byte[] value = rows.get(key);
+            if (value == null) {
+                storage.remove(wrap(key));
+            } else {
+                storage.put(wrap(key), value);
+            }
         }
     }
 
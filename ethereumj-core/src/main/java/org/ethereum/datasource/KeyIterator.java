@@ -0,0 +1,17 @@
+package org.ethereum.datasource;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Cursor over the keys of a {@link KeyValueDataSource}.
+ *
+ * The keys are read from the source while iterating, the iterator holds
+ * the underlying DB resources and must be closed (e.g. by try-with-resources)
+ * in the thread which has created it
+ */
+public interface KeyIterator extends Iterator<byte[]>, Closeable {
+
+    @Override
+    void close();
+}
@@ -0,0 +1,142 @@
+package org.ethereum.datasource;
+
+import org.ethereum.util.FastByteComparisons;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Helpers for the {@link KeyIterator} implementations and clients
+ */
+public class KeyIterators {
+
+    public static final Comparator<byte[]> KEY_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] o1, byte[] o2) {
+            return FastByteComparisons.compareTo(o1, 0, o1.length, o2, 0, o2.length);
+        }
+    };
+
+    /**
+     * @return the first key which follows all the keys with the prefix,
+     * or null if there is no such key (the prefix consists of 0xFF bytes only)
+     */
+    public static byte[] prefixEnd(byte[] prefix) {
+        byte[] end = prefix.clone();
+        for (int i = end.length - 1; i >= 0; i--) {
+            if (end[i] != (byte) 0xFF) {
+                ++end[i];
+                byte[] ret = new byte[i + 1];
+                System.arraycopy(end, 0, ret, 0, ret.length);
+                return ret;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Iterates over all the keys with the specified prefix
+     */
+    public static KeyIterator prefix(KeyValueDataSource ds, byte[] prefix) {
+        return ds.keyIterator(prefix, prefixEnd(prefix));
+    }
+
+    public static KeyIterator all(KeyValueDataSource ds) {
+        return ds.keyIterator(null, null);
+    }
+
+    /**
+     * @return true if the key is within [from, to) range, null boundary is unbounded
+     */
+    public static boolean inRange(byte[] key, byte[] from, byte[] to) {
+        return (from == null || KEY_COMPARATOR.compare(key, from) >= 0) &&
+                (to == null || KEY_COMPARATOR.compare(key, to) < 0);
+    }
+
+    /**
+     * Iterator over the in-memory collection of keys, the keys within the range are
+     * copied and sorted, so this is supposed to be used by the in-memory sources only
+     */
+    public static KeyIterator sorted(Collection<byte[]> keys, byte[] from, byte[] to) {
+        List<byte[]> ret = new ArrayList<>();
+        for (byte[] key : keys) {
+            if (inRange(key, from, to)) ret.add(key);
+        }
+        Collections.sort(ret, KEY_COMPARATOR);
+        return wrap(ret.iterator(), null, null);
+    }
+
+    /**
+     * Wraps the iterator skipping the keys out of the [from, to) range
+     */
+    public static KeyIterator wrap(Iterator<byte[]> keys, byte[] from, byte[] to) {
+        return wrap(keys, from, to, keys instanceof KeyIterator ? (KeyIterator) keys : null);
+    }
+
+    /**
+     * Same as {@link #wrap(Iterator, byte[], byte[])},
+     * closing the iterator closes the specified source cursor
+     */
+    public static KeyIterator wrap(Iterator<byte[]> keys, final byte[] from, final byte[] to, KeyIterator source) {
+        return new FilteringIterator(keys, source) {
+            @Override
+            protected boolean accept(byte[] key) {
+                return inRange(key, from, to);
+            }
+        };
+    }
+
+    /**
+     * Base for the iterators which skip some keys of the underlying one
+     */
+    public abstract static class FilteringIterator implements KeyIterator {
+        private final Iterator<byte[]> keys;
+        private final KeyIterator source;
+        private byte[] next;
+
+        public FilteringIterator(Iterator<byte[]> keys) {
+            this(keys, keys instanceof KeyIterator ? (KeyIterator) keys : null);
+        }
+
+        public FilteringIterator(Iterator<byte[]> keys, KeyIterator source) {
+            this.keys = keys;
+            this.source = source;
+        }
+
+        protected abstract boolean accept(byte[] key);
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && keys.hasNext()) {
+                byte[] key = keys.next();
+                if (accept(key)) next = key;
+            }
+            return next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            byte[] ret = next;
+            next = null;
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (source != null) {
+                source.close();
+            }
+        }
+    }
+}
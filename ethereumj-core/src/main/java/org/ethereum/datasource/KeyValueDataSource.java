@@ -15,7 +15,23 @@ public interface KeyValueDataSource extends DataSource {
 
     void delete(byte[] key);
 
+    /**
+     * Loads all the keys into memory, use {@link #keyIterator} for the large DBs
+     */
     Set<byte[]> keys();
 
+    /**
+     * Iterates over the keys within [from, to) range reading them from the source
+     * on demand. The keys are returned in the lexicographical (unsigned bytes) order
+     * unless the source is unordered (MapDB)
+     *
+     * @param from the first key (inclusive) or null to start from the first key of the source
+     * @param to the key (exclusive) to stop at or null to iterate up to the last key
+     */
+    KeyIterator keyIterator(byte[] from, byte[] to);
+
+    /**
+     * Writes all the rows at once, the row with null value deletes the key
+     */
     void updateBatch(Map<byte[], byte[]> rows);
 }
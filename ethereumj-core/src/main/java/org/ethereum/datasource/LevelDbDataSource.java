@@ -1,5 +1,6 @@
 package org.ethereum.datasource;
 
+import com.typesafe.config.Config;
 import org.ethereum.config.SystemProperties;
 import org.iq80.leveldb.*;
 import org.slf4j.Logger;
@@ -16,6 +17,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -64,15 +66,7 @@ public class LevelDbDataSource implements KeyValueDataSource {
 
             if (name == null) throw new NullPointerException("no name set to the db");
 
-            Options options = new Options();
-            options.createIfMissing(true);
-            options.compressionType(CompressionType.NONE);
-            options.blockSize(10 * 1024 * 1024);
-            options.writeBufferSize(10 * 1024 * 1024);
-            options.cacheSize(0);
-            options.paranoidChecks(true);
-            options.verifyChecksums(true);
-            options.maxOpenFiles(32);
+            Options options = createOptions(config.levelDbOptions(name));
 
             try {
                 logger.debug("Opening database");
@@ -93,6 +87,24 @@ public class LevelDbDataSource implements KeyValueDataSource {
         }
     }
 
+    private Options createOptions(Config dbConfig) {
+        Options options = new Options();
+        options.createIfMissing(true);
+        options.cacheSize(dbConfig.getLong("cacheSize") * 1024 * 1024);
+        options.blockSize(dbConfig.getInt("blockSize") * 1024);
+        options.writeBufferSize(dbConfig.getInt("writeBufferSize") * 1024 * 1024);
+        options.compressionType("snappy".equalsIgnoreCase(dbConfig.getString("compression")) ?
+                CompressionType.SNAPPY : CompressionType.NONE);
+        options.maxOpenFiles(dbConfig.getInt("maxOpenFiles"));
+        options.verifyChecksums(dbConfig.getBoolean("verifyChecksums"));
+        options.paranoidChecks(dbConfig.getBoolean("paranoidChecks"));
+
+        logger.debug("LevelDB '{}' options: cache {} Mb, block {} Kb, write buffer {} Mb, {} compression, " +
+                "{} open files", name, dbConfig.getLong("cacheSize"), dbConfig.getInt("blockSize"),
+                dbConfig.getInt("writeBufferSize"), options.compressionType(), options.maxOpenFiles());
+        return options;
+    }
+
     @Override
     public boolean isAlive() {
         return alive;
@@ -202,6 +214,59 @@ public class LevelDbDataSource implements KeyValueDataSource {
         }
     }
 
+    @Override
+    public KeyIterator keyIterator(byte[] from, final byte[] to) {
+        // the lock is held until the iterator is closed
+        // so that the DB can't be closed in the meantime
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) logger.trace("~> LevelDbDataSource.keyIterator(): " + name);
+            final DBIterator iterator = db.iterator();
+            if (from == null) {
+                iterator.seekToFirst();
+            } else {
+                iterator.seek(from);
+            }
+
+            return new KeyIterator() {
+                boolean closed = false;
+
+                @Override
+                public boolean hasNext() {
+                    return !closed && iterator.hasNext() &&
+                            (to == null || KeyIterators.KEY_COMPARATOR.compare(iterator.peekNext().getKey(), to) < 0);
+                }
+
+                @Override
+                public byte[] next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return iterator.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void close() {
+                    if (closed) return;
+                    closed = true;
+                    try {
+                        iterator.close();
+                    } catch (IOException e) {
+                        logger.error("Unexpected", e);
+                    } finally {
+                        resetDbLock.readLock().unlock();
+                    }
+                }
+            };
+        } catch (RuntimeException e) {
+            resetDbLock.readLock().unlock();
+            throw e;
+        }
+    }
+
     @Override
     public void updateBatch(Map<byte[], byte[]> rows) {
         resetDbLock.readLock().lock();
@@ -0,0 +1,88 @@
+package org.ethereum.datasource;
+
+import org.ethereum.config.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies the LevelDB databases found under [database.dir] into the column
+ * families of the RocksDB storage, so the existing DB can be used with
+ * keyvalue.datasource = rocksdb. The LevelDB files are left untouched.
+ *
+ * Usage: run with the same config as the node (the node must be stopped)
+ */
+public class LevelDbToRocksDb {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    private static final int BATCH_SIZE = 10000;
+
+    public static void main(String[] args) {
+        SystemProperties config = SystemProperties.getDefault();
+        RocksDbStorage storage = new RocksDbStorage(config);
+        try {
+            migrate(config, storage);
+        } finally {
+            storage.close();
+        }
+    }
+
+    public static void migrate(SystemProperties config, RocksDbStorage storage) {
+        List<String> names = new ArrayList<>();
+        findLevelDbs(new File(config.databaseDir()), "", names);
+        names.remove(storage.getPath().getFileName().toString());
+
+        logger.info("Migrating {} LevelDB databases into '{}'", names.size(), storage.getPath());
+        for (String name : names) {
+            LevelDbDataSource src = new LevelDbDataSource(name);
+            src.config = config;
+            src.init();
+            RocksDbDataSource dst = new RocksDbDataSource(name, storage);
+            dst.init();
+
+            long count = 0;
+            try (KeyIterator keys = src.keyIterator(null, null)) {
+                Map<byte[], byte[]> batch = new HashMap<>();
+                while (keys.hasNext()) {
+                    byte[] key = keys.next();
+                    batch.put(key, src.get(key));
+                    if (batch.size() >= BATCH_SIZE) {
+                        dst.updateBatch(batch);
+                        count += batch.size();
+                        batch = new HashMap<>();
+                    }
+                }
+                dst.updateBatch(batch);
+                count += batch.size();
+            } finally {
+                src.close();
+                dst.close();
+            }
+            logger.info("{}: {} records copied", name, count);
+        }
+    }
+
+    /**
+     * LevelDB directory is recognized by its CURRENT file
+     */
+    private static void findLevelDbs(File dir, String name, List<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        if (!name.isEmpty() && new File(dir, "CURRENT").isFile()) {
+            result.add(name);
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                findLevelDbs(file, name.isEmpty() ? file.getName() : name + "/" + file.getName(), result);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.ethereum.datasource;
+
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.RocksIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * {@link KeyValueDataSource} backed by a column family of the shared {@link RocksDbStorage}.
+ *
+ * The data sources with the same first part of the name share the column family,
+ * e.g. all the details-storage/[address] ones. {@link #keys()} and {@link #keyIterator}
+ * of any of them return the keys of all the data sources of the family.
+ *
+ * Closing the data source doesn't close the storage, it is closed on the application shutdown
+ */
+public class RocksDbDataSource implements KeyValueDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    @Autowired
+    RocksDbStorage storage;
+
+    String name;
+    ColumnFamilyHandle family;
+    boolean alive;
+
+    public RocksDbDataSource() {
+    }
+
+    public RocksDbDataSource(String name) {
+        this.name = name;
+        logger.debug("New RocksDbDataSource: " + name);
+    }
+
+    public RocksDbDataSource(String name, RocksDbStorage storage) {
+        this(name);
+        this.storage = storage;
+    }
+
+    @Override
+    public synchronized void init() {
+        if (isAlive()) return;
+
+        if (name == null) throw new NullPointerException("no name set to the db");
+        if (storage == null) storage = RocksDbStorage.getDefault();
+
+        family = storage.getColumnFamily(name);
+        alive = true;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return alive;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.get(): " + name + ", key: " + Hex.toHexString(key));
+        return storage.get(family, key);
+    }
+
+    @Override
+    public byte[] put(byte[] key, byte[] value) {
+        if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.put(): " + name + ", key: " + Hex.toHexString(key) + ", " + (value == null ? "null" : value.length));
+        storage.write(family, Collections.singletonMap(key, value));
+        return value;
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.delete(): " + name + ", key: " + Hex.toHexString(key));
+        storage.write(family, Collections.<byte[], byte[]>singletonMap(key, null));
+    }
+
+    @Override
+    public void updateBatch(Map<byte[], byte[]> rows) {
+        if (logger.isTraceEnabled()) logger.trace("~> RocksDbDataSource.updateBatch(): " + name + ", " + rows.size());
+        storage.write(family, rows);
+    }
+
+    /**
+     * @return the keys of the whole column family, see the class doc
+     */
+    @Override
+    public Set<byte[]> keys() {
+        Set<byte[]> result = new HashSet<>();
+        try (KeyIterator it = keyIterator(null, null)) {
+            while (it.hasNext()) {
+                result.add(it.next());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the keys of the whole column family, see the class doc
+     */
+    @Override
+    public KeyIterator keyIterator(byte[] from, final byte[] to) {
+        final RocksIterator iterator = storage.newIterator(family);
+        if (from == null) {
+            iterator.seekToFirst();
+        } else {
+            iterator.seek(from);
+        }
+
+        return new KeyIterator() {
+            boolean closed = false;
+
+            @Override
+            public boolean hasNext() {
+                return !closed && iterator.isValid() &&
+                        (to == null || KeyIterators.KEY_COMPARATOR.compare(iterator.key(), to) < 0);
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                byte[] key = iterator.key();
+                iterator.next();
+                return key;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                if (closed) return;
+                closed = true;
+                iterator.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        logger.debug("Close db: {}", name);
+        alive = false;
+    }
+}
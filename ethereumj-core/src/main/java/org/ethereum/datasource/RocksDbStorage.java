@@ -0,0 +1,323 @@
+package org.ethereum.datasource;
+
+import com.typesafe.config.Config;
+import org.ethereum.config.SystemProperties;
+import org.rocksdb.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single RocksDB database shared by all the {@link RocksDbDataSource}s.
+ *
+ * Every data source is a column family named after the first part of the
+ * data source name, so all the contract storage DBs (details-storage/[address])
+ * share one family: trie nodes are addressed by their hash so they can't clash.
+ *
+ * Between {@link #startBatch()} and {@link #commitBatch()} all the writes to any of the
+ * column families are collected into one batch which is then written atomically
+ * with a single fsync. The batch content is visible to the {@link #get} calls
+ * but not to the iterators, which see the committed data only.
+ *
+ * The database is opened on the first column family request
+ */
+@Component
+public class RocksDbStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    private static RocksDbStorage inst;
+
+    public static synchronized RocksDbStorage getDefault() {
+        if (inst == null && SystemProperties.getDefault() != null) {
+            inst = new RocksDbStorage(SystemProperties.getDefault());
+        }
+        return inst;
+    }
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    private final SystemProperties config;
+
+    private RocksDB db;
+    private DBOptions dbOptions;
+    private RateLimiter rateLimiter;
+    private final Map<String, ColumnFamilyHandle> families = new HashMap<>();
+    private final List<ColumnFamilyOptions> familyOptions = new ArrayList<>();
+
+    private final ReadOptions readOptions = new ReadOptions();
+    private final WriteOptions writeOptions = new WriteOptions();
+    private final WriteOptions syncWriteOptions = new WriteOptions().setSync(true);
+
+    private final Object batchLock = new Object();
+    private volatile WriteBatchWithIndex batch;
+
+    @Autowired
+    public RocksDbStorage(SystemProperties config) {
+        this.config = config;
+    }
+
+    public synchronized boolean isOpen() {
+        return db != null;
+    }
+
+    private synchronized void open() {
+        if (db != null) return;
+
+        Config options = config.rocksDbOptions();
+        dbOptions = new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setMaxOpenFiles(options.getInt("maxOpenFiles"))
+                .setIncreaseParallelism(Math.max(2, Runtime.getRuntime().availableProcessors() / 2))
+                .setKeepLogFileNum(4);
+        long rateLimit = options.getLong("compactionRateLimit") * 1024 * 1024;
+        if (rateLimit > 0) {
+            rateLimiter = new RateLimiter(rateLimit);
+            dbOptions.setRateLimiter(rateLimiter);
+        }
+        if (options.getBoolean("statistics")) {
+            dbOptions.createStatistics();
+        }
+
+        try {
+            Path dbPath = getPath();
+            Files.createDirectories(dbPath);
+
+            List<byte[]> names;
+            try (Options listOptions = new Options()) {
+                names = RocksDB.listColumnFamilies(listOptions, dbPath.toString());
+            }
+            if (names.isEmpty()) names = Arrays.asList(RocksDB.DEFAULT_COLUMN_FAMILY);
+
+            List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+            for (byte[] name : names) {
+                descriptors.add(new ColumnFamilyDescriptor(name, createFamilyOptions(new String(name))));
+            }
+            List<ColumnFamilyHandle> handles = new ArrayList<>();
+
+            logger.info("Opening RocksDB '{}' with {} column families", dbPath, names.size());
+            db = RocksDB.open(dbOptions, dbPath.toString(), descriptors, handles);
+            for (int i = 0; i < names.size(); i++) {
+                families.put(new String(names.get(i)), handles.get(i));
+            }
+        } catch (IOException | RocksDBException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException("Can't initialize database", e);
+        }
+    }
+
+    Path getPath() {
+        return Paths.get(config.databaseDir(), "rocksdb");
+    }
+
+    /**
+     * The LevelDB profile of the same name (database.leveldb) is used
+     * for the family block size, cache, write buffer and compression
+     */
+    private ColumnFamilyOptions createFamilyOptions(String family) {
+        Config dbConfig = config.levelDbOptions(family);
+
+        BlockBasedTableConfig tableConfig = new BlockBasedTableConfig()
+                .setBlockSize(dbConfig.getInt("blockSize") * 1024)
+                .setFilter(new BloomFilter(10, false));
+        long cacheSize = dbConfig.getLong("cacheSize") * 1024 * 1024;
+        if (cacheSize > 0) {
+            tableConfig.setBlockCacheSize(cacheSize);
+        } else {
+            tableConfig.setNoBlockCache(true);
+        }
+
+        ColumnFamilyOptions options = new ColumnFamilyOptions()
+                .setWriteBufferSize(dbConfig.getLong("writeBufferSize") * 1024 * 1024)
+                .setCompressionType("snappy".equalsIgnoreCase(dbConfig.getString("compression")) ?
+                        CompressionType.SNAPPY_COMPRESSION : CompressionType.NO_COMPRESSION)
+                .setTableFormatConfig(tableConfig);
+        familyOptions.add(options);
+        return options;
+    }
+
+    /**
+     * @return the column family for the data source name, created if missing
+     */
+    public synchronized ColumnFamilyHandle getColumnFamily(String dataSourceName) {
+        open();
+
+        String family = dataSourceName.split("/")[0];
+        ColumnFamilyHandle handle = families.get(family);
+        if (handle == null) {
+            try {
+                logger.debug("Creating RocksDB column family: {}", family);
+                handle = db.createColumnFamily(new ColumnFamilyDescriptor(family.getBytes(),
+                        createFamilyOptions(family)));
+                families.put(family, handle);
+            } catch (RocksDBException e) {
+                throw new RuntimeException("Can't create column family " + family, e);
+            }
+        }
+        return handle;
+    }
+
+    public byte[] get(ColumnFamilyHandle family, byte[] key) {
+        try {
+            if (batch != null) {
+                synchronized (batchLock) {
+                    if (batch != null) return batch.getFromBatchAndDB(db, family, readOptions, key);
+                }
+            }
+            return db.get(family, readOptions, key);
+        } catch (RocksDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the rows atomically (or adds them to the running batch),
+     * null value is a deletion
+     */
+    public void write(ColumnFamilyHandle family, Map<byte[], byte[]> rows) {
+        synchronized (batchLock) {
+            if (batch != null) {
+                addRows(batch, family, rows);
+                return;
+            }
+        }
+
+        try (WriteBatch writeBatch = new WriteBatch()) {
+            addRows(writeBatch, family, rows);
+            db.write(writeOptions, writeBatch);
+        } catch (RocksDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void addRows(AbstractWriteBatch writeBatch, ColumnFamilyHandle family, Map<byte[], byte[]> rows) {
+        for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
+            if (entry.getValue() == null) {
+                writeBatch.remove(family, entry.getKey());
+            } else {
+                writeBatch.put(family, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public RocksIterator newIterator(ColumnFamilyHandle family) {
+        return db.newIterator(family);
+    }
+
+    /**
+     * Starts collecting the writes of all the column families into one batch
+     */
+    public void startBatch() {
+        synchronized (batchLock) {
+            if (batch != null) throw new IllegalStateException("RocksDB batch is already started");
+            batch = new WriteBatchWithIndex(true);
+        }
+    }
+
+    /**
+     * Writes the collected batch atomically and syncs it to the disk
+     */
+    public void commitBatch() {
+        synchronized (batchLock) {
+            if (batch == null) throw new IllegalStateException("RocksDB batch is not started");
+            try {
+                long s = System.currentTimeMillis();
+                int count = batch.count();
+                db.write(syncWriteOptions, batch);
+                logger.debug("RocksDB batch of {} records written in {} ms", count, System.currentTimeMillis() - s);
+            } catch (RocksDBException e) {
+                throw new RuntimeException(e);
+            } finally {
+                batch.close();
+                batch = null;
+            }
+        }
+    }
+
+    /**
+     * Drops the collected batch, nothing from it is written
+     */
+    public void abortBatch() {
+        synchronized (batchLock) {
+            if (batch == null) return;
+            logger.warn("RocksDB batch of {} records dropped", batch.count());
+            batch.close();
+            batch = null;
+        }
+    }
+
+    /**
+     * Human readable database and column families statistics
+     */
+    public synchronized String getStats() {
+        if (db == null) return "RocksDB is not open";
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (Map.Entry<String, ColumnFamilyHandle> entry : families.entrySet()) {
+                sb.append(entry.getKey()).append(": ~")
+                        .append(db.getProperty(entry.getValue(), "rocksdb.estimate-num-keys")).append(" keys, ")
+                        .append(db.getProperty(entry.getValue(), "rocksdb.total-sst-files-size")).append(" bytes in files\n");
+            }
+            Statistics statistics = dbOptions.statisticsPtr();
+            if (statistics != null) {
+                sb.append("block cache hit/miss: ")
+                        .append(statistics.getTickerCount(TickerType.BLOCK_CACHE_HIT)).append('/')
+                        .append(statistics.getTickerCount(TickerType.BLOCK_CACHE_MISS))
+                        .append(", bytes read/written: ")
+                        .append(statistics.getTickerCount(TickerType.BYTES_READ)).append('/')
+                        .append(statistics.getTickerCount(TickerType.BYTES_WRITTEN))
+                        .append(", compaction bytes written: ")
+                        .append(statistics.getTickerCount(TickerType.COMPACT_WRITE_BYTES))
+                        .append(", stall micros: ")
+                        .append(statistics.getTickerCount(TickerType.STALL_MICROS)).append('\n');
+                sb.append(db.getProperty("rocksdb.stats"));
+            }
+        } catch (RocksDBException e) {
+            logger.error("Can't read RocksDB statistics", e);
+        }
+        return sb.toString();
+    }
+
+    public boolean isStatisticsEnabled() {
+        return config.rocksDbOptions().getBoolean("statistics");
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (db == null) return;
+
+        logger.info("Closing RocksDB '{}'", getPath());
+        abortBatch();
+        for (ColumnFamilyHandle handle : families.values()) {
+            handle.close();
+        }
+        families.clear();
+        db.close();
+        db = null;
+        for (ColumnFamilyOptions options : familyOptions) {
+            options.close();
+        }
+        familyOptions.clear();
+        dbOptions.close();
+        if (rateLimiter != null) {
+            rateLimiter.close();
+            rateLimiter = null;
+        }
+    }
+}
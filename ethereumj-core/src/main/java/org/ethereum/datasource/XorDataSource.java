@@ -4,6 +4,7 @@ import org.ethereum.util.ByteUtil;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,6 +49,28 @@ public class XorDataSource implements KeyValueDataSource {
         return ret;
     }
 
+    @Override
+    public KeyIterator keyIterator(byte[] from, byte[] to) {
+        // converted keys don't preserve the source order
+        final KeyIterator keys = source.keyIterator(null, null);
+        return KeyIterators.wrap(new Iterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                return convertKey(keys.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }, from, to, keys);
+    }
+
     @Override
     public void updateBatch(Map<byte[], byte[]> rows) {
         Map<byte[], byte[]> converted = new HashMap<>(rows.size());
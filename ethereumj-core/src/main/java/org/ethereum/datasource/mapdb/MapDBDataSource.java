@@ -1,6 +1,8 @@
 package org.ethereum.datasource.mapdb;
 
 import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.KeyIterator;
+import org.ethereum.datasource.KeyIterators;
 import org.ethereum.datasource.KeyValueDataSource;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
@@ -89,12 +91,22 @@ public class MapDBDataSource implements KeyValueDataSource {
         return map.keySet();
     }
 
+    @Override
+    public KeyIterator keyIterator(byte[] from, byte[] to) {
+        // the hash map has no order, the whole key set is scanned lazily
+        return KeyIterators.wrap(map.keySet().iterator(), from, to);
+    }
+
     @Override
     public void updateBatch(Map<byte[], byte[]> rows) {
         int savedSize = 0;
         try {
             for (byte[] key : rows.keySet()) {
                 byte[] value = rows.get(key);
+                if (value == null) {
+                    map.remove(key);
+                    continue;
+                }
                 savedSize += value.length;
 
                 map.put(key, value);
@@ -26,6 +26,11 @@ public interface BlockStore {
     Block getBlockByHash(byte[] hash);
     boolean isBlockExist(byte[] hash);
 
+    /**
+     * @return the number of the stored block, -1 for unknown hash
+     */
+    long getBlockNumberByHash(byte[] hash);
+
     List<byte[]> getListHashesEndWith(byte[] hash, long qty);
 
     List<BlockHeader> getListHeadersEndWith(byte[] hash, long qty);
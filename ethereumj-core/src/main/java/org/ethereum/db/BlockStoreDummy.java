@@ -41,6 +41,11 @@ public class BlockStoreDummy implements BlockStore {
         return false;
     }
 
+    @Override
+    public long getBlockNumberByHash(byte[] hash) {
+        return -1;
+    }
+
     @Override
     public List<byte[]> getListHashesEndWith(byte[] hash, long qty) {
         return null;
@@ -1,12 +1,14 @@
 package org.ethereum.db;
 
-import org.ethereum.trie.SecureTrie;
+import org.ethereum.trie.PatriciaTrie;
+import org.ethereum.trie.Trie;
 import org.ethereum.util.RLP;
 import org.ethereum.vm.DataWord;
 
 import java.util.*;
 
 import static java.util.Collections.unmodifiableMap;
+import static org.ethereum.crypto.HashUtil.sha3;
 
 /**
  * @author Roman Mandeleil
@@ -56,13 +58,14 @@ public class ContractDetailsCacheImpl extends AbstractContractDetails {
     @Override
     public byte[] getStorageHash() { // todo: unsupported
 
-        SecureTrie storageTrie = new SecureTrie(null);
+        // keys hashed as in the SecureTrie of the stored details, so the root is the same
+        Trie storageTrie = new PatriciaTrie();
 
         for (DataWord key : storage.keySet()) {
 
             DataWord value = storage.get(key);
 
-            storageTrie.update(key.getData(),
+            storageTrie.update(sha3(key.getData()),
                     RLP.encodeElement(value.getNoLeadZeroesData()));
         }
 
@@ -155,6 +158,13 @@ public class ContractDetailsCacheImpl extends AbstractContractDetails {
         if (origContract != null) origContract.syncStorage();
     }
 
+    /**
+     * @return number of the storage rows changed and not committed yet
+     */
+    int getChangedStorageSize() {
+        return storage.size();
+    }
+
     public void commit(){
 
         if (origContract == null) return;
@@ -5,6 +5,7 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.datasource.DataSourcePool;
 import org.ethereum.datasource.KeyValueDataSource;
 import org.ethereum.trie.SecureTrie;
+import org.ethereum.trie.TrieNodeCache;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPItem;
@@ -38,6 +39,9 @@ public class ContractDetailsImpl extends AbstractContractDetails {
     @Autowired
     DataSourcePool dataSourcePool = DataSourcePool.getDefault();
 
+    @Autowired
+    TrieNodeCache trieNodeCache = TrieNodeCache.getDefault();
+
     private byte[] rlpEncoded;
 
     private byte[] address = EMPTY_BYTE_ARRAY;
@@ -130,6 +134,7 @@ public class ContractDetailsImpl extends AbstractContractDetails {
         if (externalStorage) {
             storageTrie.setRoot(storageRoot.getRLPData());
             storageTrie.getCache().setDB(getExternalStorageDataSource());
+            storageTrie.getCache().setReadCache(trieNodeCache);
         }
 
         externalStorage = (storage.getRLPData().length > config.detailsInMemoryStorageLimit())
@@ -235,11 +240,19 @@ public class ContractDetailsImpl extends AbstractContractDetails {
     public void syncStorage() {
         if (externalStorage) {
             storageTrie.getCache().setDB(getExternalStorageDataSource());
+            storageTrie.getCache().setReadCache(trieNodeCache);
             storageTrie.sync();
             dataSourcePool.closeDataSource("details-storage/" + toHexString(address));
         }
     }
 
+    /**
+     * @return approximate size in bytes of the storage nodes not written yet
+     */
+    public long getPendingStorageSize() {
+        return storageTrie.getCache().getDirtySize();
+    }
+
     private KeyValueDataSource getExternalStorageDataSource() {
         if (externalStorageDataSource == null) {
             externalStorageDataSource = dataSourcePool.dbByName(commonConfig, "details-storage/" + toHexString(address));
@@ -281,6 +294,7 @@ public class ContractDetailsImpl extends AbstractContractDetails {
         details.config = config;
         details.commonConfig = commonConfig;
         details.dataSourcePool = dataSourcePool;
+        details.trieNodeCache = trieNodeCache;
 
         return details;
     }
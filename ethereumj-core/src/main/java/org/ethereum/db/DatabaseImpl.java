@@ -1,15 +1,12 @@
 package org.ethereum.db;
 
+import org.ethereum.datasource.KeyIterator;
+import org.ethereum.datasource.KeyIterators;
 import org.ethereum.datasource.KeyValueDataSource;
-import org.ethereum.util.ByteUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * Generic interface for Ethereum database
  *
@@ -75,14 +72,7 @@ public class DatabaseImpl implements Database {
         keyValueDataSource.close();
     }
 
-    public List<ByteArrayWrapper> dumpKeys() {
-
-        ArrayList<ByteArrayWrapper> keys = new ArrayList<>();
-
-        for (byte[] key : keyValueDataSource.keys()) {
-            keys.add(ByteUtil.wrap(key));
-        }
-        Collections.sort(keys);
-        return keys;
+    public KeyIterator keyIterator() {
+        return KeyIterators.all(keyValueDataSource);
     }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package org.ethereum.db;
 
+import com.google.common.collect.Iterators;
 import org.ethereum.config.CommonConfig;
+import org.ethereum.datasource.KeyIterator;
+import org.ethereum.datasource.KeyIterators;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -10,11 +13,16 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PreDestroy;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.lang.String.format;
 import static org.ethereum.util.ByteUtil.wrap;
@@ -27,9 +35,15 @@ public class DetailsDataStore {
 
     private static final Logger gLogger = LoggerFactory.getLogger("general");
 
+    /* rough size of the encoded details apart from the code and the storage */
+    private static final int DETAILS_OVERHEAD = 128;
+
     private DatabaseImpl db = null;
-    private Map<ByteArrayWrapper, ContractDetails> cache = new ConcurrentHashMap<>();
-    private Set<ByteArrayWrapper> removes = new HashSet<>();
+    private ConcurrentMap<ByteArrayWrapper, ContractDetails> cache = new ConcurrentHashMap<>();
+    private Set<ByteArrayWrapper> removes = Collections.newSetFromMap(new ConcurrentHashMap<ByteArrayWrapper, Boolean>());
+
+    /* bumped whenever the cache entries may be dropped, see get() */
+    private volatile long generation = 0;
 
     public DetailsDataStore() {
     }
@@ -38,13 +52,19 @@ public class DetailsDataStore {
         this.db = db;
     }
 
+    /**
+     * Can be called concurrently with the other methods, e.g. by the state prefetch threads.
+     * The details loaded from the DB never replace the ones put by {@link #update},
+     * and are dropped when the entry was removed or flushed while they were being decoded
+     */
     public ContractDetails get(byte[] key) {
 
         ByteArrayWrapper wrappedKey = wrap(key);
         ContractDetails details = cache.get(wrappedKey);
 
-        if (details == null) {
+        while (details == null) {
 
+            long gen = generation;
             if (removes.contains(wrappedKey)) return null;
             byte[] data = db.get(key);
             if (data == null) return null;
@@ -52,7 +72,15 @@ public class DetailsDataStore {
             details = commonConfig.contractDetailsImpl();
             details.decode(data);
 
-            cache.put(wrappedKey, details);
+            synchronized (this) {
+                if (gen != generation) {
+                    // the DB copy may be older than the flushed or removed entry
+                    details = cache.get(wrappedKey);
+                    continue;
+                }
+                ContractDetails existing = cache.putIfAbsent(wrappedKey, details);
+                if (existing != null) return existing;
+            }
 
             float out = ((float) data.length) / 1048576;
             if (out > 10) {
@@ -65,7 +93,7 @@ public class DetailsDataStore {
         return details;
     }
 
-    public void update(byte[] key, ContractDetails contractDetails) {
+    public synchronized void update(byte[] key, ContractDetails contractDetails) {
         contractDetails.setAddress(key);
 
         ByteArrayWrapper wrappedKey = wrap(key);
@@ -73,13 +101,29 @@ public class DetailsDataStore {
         removes.remove(wrappedKey);
     }
 
-    public void remove(byte[] key) {
+    public synchronized void remove(byte[] key) {
+        ++generation;
         ByteArrayWrapper wrappedKey = wrap(key);
         cache.remove(wrappedKey);
         removes.add(wrappedKey);
     }
 
-    public void flush() {
+    /**
+     * @return approximate memory size in bytes of the details written on the next flush,
+     * including the storage nodes not written yet
+     */
+    public long getPendingSize() {
+        long size = 0;
+        for (ContractDetails details : cache.values()) {
+            size += DETAILS_OVERHEAD + details.getCode().length;
+            if (details instanceof ContractDetailsImpl) {
+                size += ((ContractDetailsImpl) details).getPendingStorageSize();
+            }
+        }
+        return size;
+    }
+
+    public synchronized void flush() {
         long keys = cache.size();
 
         long start = System.nanoTime();
@@ -112,6 +156,7 @@ public class DetailsDataStore {
             db.delete(key.getData());
         }
 
+        ++generation;
         cache.clear();
         removes.clear();
 
@@ -119,12 +164,28 @@ public class DetailsDataStore {
     }
 
 
-    public Set<ByteArrayWrapper> keys() {
-        Set<ByteArrayWrapper> keys = new HashSet<>();
-        keys.addAll(cache.keySet());
-        keys.addAll(db.dumpKeys());
+    /**
+     * Iterates over the addresses of the stored contract details
+     * including the not flushed ones
+     */
+    public KeyIterator keyIterator() {
+        final Set<ByteArrayWrapper> cached = new HashSet<>(cache.keySet());
+        final Set<ByteArrayWrapper> removed = new HashSet<>(removes);
 
-        return keys;
+        List<byte[]> cachedKeys = new ArrayList<>(cached.size());
+        for (ByteArrayWrapper key : cached) {
+            cachedKeys.add(key.getData());
+        }
+
+        KeyIterator dbKeys = db.keyIterator();
+        Iterator<byte[]> notCached = new KeyIterators.FilteringIterator(dbKeys) {
+            @Override
+            protected boolean accept(byte[] key) {
+                ByteArrayWrapper wrappedKey = wrap(key);
+                return !cached.contains(wrappedKey) && !removed.contains(wrappedKey);
+            }
+        };
+        return KeyIterators.wrap(Iterators.concat(cachedKeys.iterator(), notCached), null, null, dbKeys);
     }
 
 
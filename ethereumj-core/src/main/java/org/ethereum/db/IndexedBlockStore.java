@@ -4,12 +4,16 @@ import org.ethereum.core.Block;
 import org.ethereum.core.BlockHeader;
 import org.ethereum.datasource.*;
 import org.ethereum.datasource.Flushable;
+import org.ethereum.util.ByteUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
 
 import java.io.*;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,11 +25,24 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
     private static final Logger logger = LoggerFactory.getLogger("general");
 
+    private static final byte RECORD_VERSION = 1;
+    // 1 - compact level records, 2 - hash to (number, offset) records
+    private static final byte INDEX_VERSION = 2;
+    // the meta keys don't clash with the 4 bytes level keys, the 32 bytes hash keys and the size key
+    private static final byte[] INDEX_VERSION_KEY = Hex.decode("FFFFFFFFFFFFFFFE");
+    private static final byte[] HASH_BLOOM_KEY = Hex.decode("FFFFFFFFFFFFFFFD");
+
+    private static final int MIN_BLOOM_CAPACITY = 1 << 20;
+
     KeyValueDataSource indexDS;
     DataSourceArray<List<BlockInfo>> index;
     KeyValueDataSource blocksDS;
     ObjectDataSource<Block> blocks;
 
+    // filters out the unknown hashes before the hash index lookup
+    private volatile HashBloom hashBloom;
+    private boolean hashBloomDirty;
+
     public IndexedBlockStore(){
     }
 
@@ -37,6 +54,8 @@ public class IndexedBlockStore extends AbstractBlockstore{
         indexDS = index;
         this.index = new DataSourceArray<>(
                 new ObjectDataSource<>(index, BLOCK_INFO_SERIALIZER).withCacheSize(256));
+        migrateIndex();
+        loadHashBloom();
         this.blocksDS = blocks;
         this.blocks = new ObjectDataSource<>(blocks, new Serializer<Block, byte[]>() {
             @Override
@@ -72,13 +91,33 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
     public byte[] getBlockHashByNumber(long blockNumber){
-        Block chainBlock = getChainBlockByNumber(blockNumber);
-        return chainBlock == null ? null : chainBlock.getHash(); // FIXME: can be improved by accessing the hash directly in the index
+        if (blockNumber < 0 || blockNumber >= index.size()) return null;
+
+        for (BlockInfo blockInfo : index.get((int) blockNumber)) {
+            if (blockInfo.isMainChain()) return blockInfo.getHash();
+        }
+        return null;
     }
 
 
+    /**
+     * @return approximate memory size in bytes of the index
+     * and blocks records not yet written to the DB
+     */
+    public long getPendingSize() {
+        long size = 0;
+        if (indexDS instanceof CachingDataSource) {
+            size += ((CachingDataSource) indexDS).getSize();
+        }
+        if (blocksDS instanceof CachingDataSource) {
+            size += ((CachingDataSource) blocksDS).getSize();
+        }
+        return size;
+    }
+
     @Override
     public void flush(){
+        saveHashBloom();
         blocks.flush();
         index.flush();
         if (blocksDS instanceof Flushable) {
@@ -97,8 +136,9 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
     private void addInternalBlock(Block block, BigInteger cummDifficulty, boolean mainChain){
 
+        // the level is copied since the cached one might be read concurrently
         List<BlockInfo> blockInfos = block.getNumber() >= index.size() ?  new ArrayList<BlockInfo>() :
-                index.get((int) block.getNumber());
+                new ArrayList<>(index.get((int) block.getNumber()));
 
         BlockInfo blockInfo = new BlockInfo();
         blockInfo.setCummDifficulty(cummDifficulty);
@@ -107,6 +147,8 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
         blockInfos.add(blockInfo);
         index.set((int) block.getNumber(), blockInfos);
+        indexDS.put(block.getHash(), encodeHashIndex(block.getNumber(), blockInfos.size() - 1));
+        addToHashBloom(block.getHash());
 
         blocks.put(block.getHash(), block);
     }
@@ -154,22 +196,32 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
     @Override
     public Block getBlockByHash(byte[] hash) {
+        if (!hashBloom.mightContain(hash)) return null;
         return blocks.get(hash);
     }
 
     @Override
     public boolean isBlockExist(byte[] hash) {
-        return blocks.get(hash) != null;
+        return getBlockNumberByHash(hash) >= 0;
     }
 
+    @Override
+    public long getBlockNumberByHash(byte[] hash) {
+        byte[] record = getHashIndex(hash);
+        return record == null ? -1 : ByteUtil.byteArrayToLong(Arrays.copyOfRange(record, 0, 8));
+    }
 
     @Override
     public BigInteger getTotalDifficultyForHash(byte[] hash){
-        Block block = this.getBlockByHash(hash);
-        if (block == null) return ZERO;
-
-        Long level  =  block.getNumber();
-        List<BlockInfo> blockInfos =  index.get(level.intValue());
+        byte[] record = getHashIndex(hash);
+        if (record == null) return ZERO;
+
+        long level = ByteUtil.byteArrayToLong(Arrays.copyOfRange(record, 0, 8));
+        int offset = ByteUtil.byteArrayToInt(Arrays.copyOfRange(record, 8, 12));
+        List<BlockInfo> blockInfos =  index.get((int) level);
+        if (offset < blockInfos.size() && areEqual(blockInfos.get(offset).getHash(), hash)) {
+            return blockInfos.get(offset).getCummDifficulty();
+        }
         for (BlockInfo blockInfo : blockInfos)
                  if (areEqual(blockInfo.getHash(), hash)) {
                      return blockInfo.cummDifficulty;
@@ -178,6 +230,22 @@ public class IndexedBlockStore extends AbstractBlockstore{
         return ZERO;
     }
 
+    /**
+     * The level records are only appended to, so the offset of a block
+     * within its level doesn't change, also on {@link #reBranch}
+     */
+    private static byte[] encodeHashIndex(long number, int offset) {
+        return ByteUtil.merge(ByteUtil.longToBytes(number), ByteUtil.intToBytes(offset));
+    }
+
+    /**
+     * @return [number (8 bytes)] [offset within the level (4 bytes)] or null for unknown hash
+     */
+    private byte[] getHashIndex(byte[] hash) {
+        if (!hashBloom.mightContain(hash)) return null;
+        return indexDS.get(hash);
+    }
+
 
         @Override
     public BigInteger getTotalDifficulty(){
@@ -275,12 +343,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
         if (forkBlock.getNumber() > bestBlock.getNumber()){
 
             while(currentLevel > bestBlock.getNumber()){
-                List<BlockInfo> blocks =  getBlockInfoForLevel(currentLevel);
-                BlockInfo blockInfo = getBlockInfoForHash(blocks, forkLine.getHash());
-                if (blockInfo != null)  {
-                    blockInfo.setMainChain(true);
-                    setBlockInfoForLevel(currentLevel, blocks);
-                }
+                switchMainChain(currentLevel, forkLine.getHash(), null);
                 forkLine = getBlockByHash(forkLine.getParentHash());
                 --currentLevel;
             }
@@ -291,12 +354,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
 
             while(currentLevel > forkBlock.getNumber()){
 
-                List<BlockInfo> blocks =  getBlockInfoForLevel(currentLevel);
-                BlockInfo blockInfo = getBlockInfoForHash(blocks, bestLine.getHash());
-                if (blockInfo != null)  {
-                    blockInfo.setMainChain(false);
-                    setBlockInfoForLevel(currentLevel, blocks);
-                }
+                switchMainChain(currentLevel, null, bestLine.getHash());
                 bestLine = getBlockByHash(bestLine.getParentHash());
                 --currentLevel;
             }
@@ -306,18 +364,8 @@ public class IndexedBlockStore extends AbstractBlockstore{
         // 2. Loop back on each level until common block
         while( !bestLine.isEqual(forkLine) ) {
 
-            List<BlockInfo> levelBlocks = getBlockInfoForLevel(currentLevel);
-            BlockInfo bestInfo = getBlockInfoForHash(levelBlocks, bestLine.getHash());
-            if (bestInfo != null) {
-                bestInfo.setMainChain(false);
-                setBlockInfoForLevel(currentLevel, levelBlocks);
-            }
-
-            BlockInfo forkInfo = getBlockInfoForHash(levelBlocks, forkLine.getHash());
-            if (forkInfo != null) {
-                forkInfo.setMainChain(true);
-                setBlockInfoForLevel(currentLevel, levelBlocks);
-            }
+            // both flags are switched in one level copy, so the level always has a main block
+            switchMainChain(currentLevel, forkLine.getHash(), bestLine.getHash());
 
 
             bestLine = getBlockByHash(bestLine.getParentHash());
@@ -355,7 +403,7 @@ public class IndexedBlockStore extends AbstractBlockstore{
     public static class BlockInfo implements Serializable {
         byte[] hash;
         BigInteger cummDifficulty;
-        boolean mainChain;
+        volatile boolean mainChain;
 
         public byte[] getHash() {
             return hash;
@@ -383,34 +431,245 @@ public class IndexedBlockStore extends AbstractBlockstore{
     }
 
 
+    /**
+     * Level record: [version] followed by the level blocks, each one is
+     * [flags (bit 0 - main chain)] [hash length] [hash] [TD length] [TD].
+     * The Java serialized records written before the versioning are still readable
+     */
     public static final Serializer<List<BlockInfo>, byte[]> BLOCK_INFO_SERIALIZER = new Serializer<List<BlockInfo>, byte[]>(){
 
         @Override
         public byte[] serialize(List<BlockInfo> value) {
-            try {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(bos);
-                oos.writeObject(value);
-
-                byte[] data = bos.toByteArray();
-                return data;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            int size = 1;
+            byte[][] difficulties = new byte[value.size()][];
+            for (int i = 0; i < value.size(); i++) {
+                difficulties[i] = ByteUtil.bigIntegerToBytes(value.get(i).getCummDifficulty());
+                size += 3 + value.get(i).getHash().length + difficulties[i].length;
             }
+
+            byte[] data = new byte[size];
+            data[0] = RECORD_VERSION;
+            int pos = 1;
+            for (int i = 0; i < value.size(); i++) {
+                BlockInfo blockInfo = value.get(i);
+                data[pos++] = (byte) (blockInfo.isMainChain() ? 1 : 0);
+                data[pos++] = (byte) blockInfo.getHash().length;
+                System.arraycopy(blockInfo.getHash(), 0, data, pos, blockInfo.getHash().length);
+                pos += blockInfo.getHash().length;
+                data[pos++] = (byte) difficulties[i].length;
+                System.arraycopy(difficulties[i], 0, data, pos, difficulties[i].length);
+                pos += difficulties[i].length;
+            }
+            return data;
         }
 
         @Override
         public List<BlockInfo> deserialize(byte[] bytes) {
-            try {
-                ByteArrayInputStream bis = new ByteArrayInputStream(bytes, 0, bytes.length);
-                ObjectInputStream ois = new ObjectInputStream(bis);
-                return (List<BlockInfo>)ois.readObject();
-            } catch (IOException|ClassNotFoundException e) {
-                throw new RuntimeException(e);
+            if (isJavaSerialized(bytes)) return deserializeJava(bytes);
+            if (bytes[0] != RECORD_VERSION) {
+                throw new RuntimeException("Unknown block index record version: " + bytes[0]);
+            }
+
+            List<BlockInfo> result = new ArrayList<>(2);
+            int pos = 1;
+            while (pos < bytes.length) {
+                BlockInfo blockInfo = new BlockInfo();
+                blockInfo.setMainChain((bytes[pos++] & 1) != 0);
+                int hashLength = bytes[pos++] & 0xFF;
+                blockInfo.setHash(Arrays.copyOfRange(bytes, pos, pos + hashLength));
+                pos += hashLength;
+                int difficultyLength = bytes[pos++] & 0xFF;
+                blockInfo.setCummDifficulty(new BigInteger(1, Arrays.copyOfRange(bytes, pos, pos + difficultyLength)));
+                pos += difficultyLength;
+                result.add(blockInfo);
             }
+            return result;
         }
     };
 
+    private static boolean isJavaSerialized(byte[] bytes) {
+        return bytes.length > 1 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED;
+    }
+
+    private static List<BlockInfo> deserializeJava(byte[] bytes) {
+        try {
+            ByteArrayInputStream bis = new ByteArrayInputStream(bytes, 0, bytes.length);
+            ObjectInputStream ois = new ObjectInputStream(bis);
+            return (List<BlockInfo>)ois.readObject();
+        } catch (IOException|ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rewrites the Java serialized level records in the compact format
+     * and adds the hash index records, runs once: the index version
+     * is stored when the records are converted
+     */
+    private void migrateIndex() {
+        byte[] version = indexDS.get(INDEX_VERSION_KEY);
+        if (version != null && version[0] >= INDEX_VERSION) return;
+
+        int size = index.size();
+        if (size > 0) {
+            logger.info("Converting the block index of {} levels to the version {}...", size, INDEX_VERSION);
+            long s = System.currentTimeMillis();
+            Map<byte[], byte[]> batch = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                byte[] key = ByteUtil.intToBytes(i);
+                byte[] bytes = indexDS.get(key);
+                if (bytes == null) continue;
+
+                List<BlockInfo> blockInfos = BLOCK_INFO_SERIALIZER.deserialize(bytes);
+                if (isJavaSerialized(bytes)) {
+                    batch.put(key, BLOCK_INFO_SERIALIZER.serialize(blockInfos));
+                }
+                for (int j = 0; j < blockInfos.size(); j++) {
+                    batch.put(blockInfos.get(j).getHash(), encodeHashIndex(i, j));
+                }
+                if (batch.size() >= 10000) {
+                    indexDS.updateBatch(batch);
+                    batch = new HashMap<>();
+                    logger.info("Block index levels converted: {} of {}", i + 1, size);
+                }
+            }
+            indexDS.updateBatch(batch);
+            logger.info("Block index converted in {} ms", System.currentTimeMillis() - s);
+        }
+        indexDS.put(INDEX_VERSION_KEY, new byte[] {INDEX_VERSION});
+        // the stored filter may miss the converted hashes
+        indexDS.delete(HASH_BLOOM_KEY);
+    }
+
+    /**
+     * The filter is rebuilt from the index when missing or filled up to the half of its capacity.
+     * The index levels could be written after the filter was stored, the hashes of the levels
+     * above the stored ones are added to it
+     */
+    private void loadHashBloom() {
+        byte[] bytes = indexDS.get(HASH_BLOOM_KEY);
+        HashBloom bloom = bytes == null ? null : HashBloom.decode(bytes);
+        int size = index.size();
+        if (bloom != null && size < bloom.capacity / 2 && bloom.levels <= size) {
+            for (int i = bloom.levels; i < size; i++) {
+                addLevelToHashBloom(bloom, i);
+            }
+            if (bloom.levels < size) {
+                logger.info("Block hash bloom filter updated with levels {} to {}", bloom.levels, size - 1);
+                bloom.levels = size;
+                hashBloomDirty = true;
+            }
+            hashBloom = bloom;
+            return;
+        }
+        rebuildHashBloom();
+    }
+
+    private void rebuildHashBloom() {
+        int size = index.size();
+        long s = System.currentTimeMillis();
+        HashBloom bloom = new HashBloom(Math.max(MIN_BLOOM_CAPACITY, size * 4));
+        for (int i = 0; i < size; i++) {
+            addLevelToHashBloom(bloom, i);
+        }
+        bloom.levels = size;
+        hashBloom = bloom;
+        hashBloomDirty = true;
+        if (size > 0) {
+            logger.info("Block hash bloom filter of {} levels built in {} ms", size, System.currentTimeMillis() - s);
+        }
+    }
+
+    private void addLevelToHashBloom(HashBloom bloom, int level) {
+        byte[] bytes = indexDS.get(ByteUtil.intToBytes(level));
+        if (bytes == null) return;
+        for (BlockInfo blockInfo : BLOCK_INFO_SERIALIZER.deserialize(bytes)) {
+            bloom.add(blockInfo.getHash());
+        }
+    }
+
+    private void addToHashBloom(byte[] hash) {
+        if (index.size() >= hashBloom.capacity / 2) {
+            rebuildHashBloom();
+        }
+        hashBloom.add(hash);
+        hashBloomDirty = true;
+    }
+
+    private void saveHashBloom() {
+        if (!hashBloomDirty) return;
+        hashBloom.levels = index.size();
+        indexDS.put(HASH_BLOOM_KEY, hashBloom.encode());
+        hashBloomDirty = false;
+    }
+
+    /**
+     * Bloom filter of the block hashes with ~1% false positives at its capacity.
+     * The hashes are uniformly distributed already, so the bit positions
+     * are just taken from the consecutive 4 bytes slices of the hash
+     */
+    static class HashBloom {
+        private static final int BITS_PER_ENTRY = 10;
+        private static final int HASHES = 7;
+
+        final int capacity;
+        final byte[] bits;
+        // the number of the index levels the filter covers
+        int levels;
+
+        HashBloom(int capacity) {
+            this.capacity = capacity;
+            this.bits = new byte[capacity * BITS_PER_ENTRY / 8];
+        }
+
+        private HashBloom(int capacity, byte[] bits) {
+            this.capacity = capacity;
+            this.bits = bits;
+        }
+
+        private int bitIndex(byte[] hash, int i) {
+            int pos = (i * 4) % (hash.length - 3);
+            int h = ((hash[pos] & 0xFF) << 24) | ((hash[pos + 1] & 0xFF) << 16) |
+                    ((hash[pos + 2] & 0xFF) << 8) | (hash[pos + 3] & 0xFF);
+            return (int) ((h & 0xFFFFFFFFL) % (bits.length * 8L));
+        }
+
+        void add(byte[] hash) {
+            for (int i = 0; i < HASHES; i++) {
+                int idx = bitIndex(hash, i);
+                bits[idx >> 3] |= 1 << (idx & 7);
+            }
+        }
+
+        boolean mightContain(byte[] hash) {
+            if (hash.length < 4) return true;
+            for (int i = 0; i < HASHES; i++) {
+                int idx = bitIndex(hash, i);
+                if ((bits[idx >> 3] & (1 << (idx & 7))) == 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * [capacity (4 bytes)] [levels (4 bytes)] [bits]
+         */
+        byte[] encode() {
+            return ByteUtil.merge(ByteUtil.intToBytes(capacity), ByteUtil.intToBytes(levels), bits);
+        }
+
+        /**
+         * @return the filter or null if it was stored without the number of levels
+         */
+        static HashBloom decode(byte[] bytes) {
+            int capacity = ByteUtil.byteArrayToInt(Arrays.copyOfRange(bytes, 0, 4));
+            if (bytes.length != 8 + capacity * BITS_PER_ENTRY / 8) return null;
+
+            HashBloom bloom = new HashBloom(capacity, Arrays.copyOfRange(bytes, 8, bytes.length));
+            bloom.levels = ByteUtil.byteArrayToInt(Arrays.copyOfRange(bytes, 4, 8));
+            return bloom;
+        }
+    }
+
 
     public void printChain(){
 
@@ -442,12 +701,32 @@ public class IndexedBlockStore extends AbstractBlockstore{
         index.set((int) level, infos);
     }
 
-    private static BlockInfo getBlockInfoForHash(List<BlockInfo> blocks, byte[] hash){
-
-        for (BlockInfo blockInfo : blocks)
-            if (areEqual(hash, blockInfo.getHash())) return blockInfo;
-
-        return null;
+    /**
+     * Switches the main chain flags on the copies of the level and its infos,
+     * since the cached ones might be read concurrently
+     *
+     * @param mainHash the block becoming the main one, or null
+     * @param sideHash the block leaving the main chain, or null
+     */
+    private void switchMainChain(long level, byte[] mainHash, byte[] sideHash) {
+        List<BlockInfo> infos = getBlockInfoForLevel(level);
+        List<BlockInfo> copy = new ArrayList<>(infos.size());
+        boolean changed = false;
+        for (BlockInfo info : infos) {
+            BlockInfo infoCopy = new BlockInfo();
+            infoCopy.setHash(info.getHash());
+            infoCopy.setCummDifficulty(info.getCummDifficulty());
+            infoCopy.setMainChain(info.isMainChain());
+            if (mainHash != null && areEqual(mainHash, info.getHash())) {
+                infoCopy.setMainChain(true);
+                changed = true;
+            } else if (sideHash != null && areEqual(sideHash, info.getHash())) {
+                infoCopy.setMainChain(false);
+                changed = true;
+            }
+            copy.add(infoCopy);
+        }
+        if (changed) setBlockInfoForLevel(level, copy);
     }
 
     @Override
@@ -0,0 +1,225 @@
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Repository;
+import org.ethereum.vm.DataWord;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Track of a single transaction executed speculatively, i.e. over a snapshot of the state
+ * which may be older than the one the transaction is applied to.
+ *
+ * The track remembers the accounts and the storage rows the transaction has read, including
+ * the reads of the nested calls rolled back later: every read missing in the nested tracks
+ * ends up in this track caches. The changes are not committed to the parent but applied
+ * to the target track with {@link #applyTo}, which also reports them, so the following
+ * transactions read nothing that was changed after they were executed.
+ *
+ * The fees paid to the coinbase which the transaction didn't read otherwise are accumulated
+ * and added to the target balance, so the coinbase doesn't make all the block transactions dependent
+ */
+public class RecordingTrack extends RepositoryTrack {
+
+    private final byte[] coinbase;
+    private final Lock parentLock;
+
+    /* accounts checked for existence without loading them */
+    private final Set<ByteArrayWrapper> checkedAccounts = new HashSet<>();
+    private BigInteger coinbaseFee;
+
+    /**
+     * @param repository snapshot of the state the transaction is executed on
+     * @param parentLock held while reading the snapshot, it shares the contract details with the
+     *                   repository the changes are applied to; null if there is no concurrent access
+     */
+    public RecordingTrack(Repository repository, byte[] coinbase, Lock parentLock) {
+        super(repository);
+        this.coinbase = coinbase;
+        this.parentLock = parentLock;
+    }
+
+    @Override
+    public AccountState getAccountState(byte[] addr) {
+        lockParent();
+        try {
+            return super.getAccountState(addr);
+        } finally {
+            unlockParent();
+        }
+    }
+
+    @Override
+    public ContractDetails getContractDetails(byte[] addr) {
+        lockParent();
+        try {
+            return super.getContractDetails(addr);
+        } finally {
+            unlockParent();
+        }
+    }
+
+    @Override
+    public void loadAccount(byte[] addr, HashMap<ByteArrayWrapper, AccountState> cacheAccounts,
+                            HashMap<ByteArrayWrapper, ContractDetails> cacheDetails) {
+        lockParent();
+        try {
+            super.loadAccount(addr, cacheAccounts, cacheDetails);
+        } finally {
+            unlockParent();
+        }
+    }
+
+    @Override
+    public boolean isExist(byte[] addr) {
+        lockParent();
+        try {
+            synchronized (repository) {
+                checkedAccounts.add(wrap(addr));
+            }
+            return super.isExist(addr);
+        } finally {
+            unlockParent();
+        }
+    }
+
+    @Override
+    public boolean hasContractDetails(byte[] addr) {
+        lockParent();
+        try {
+            synchronized (repository) {
+                checkedAccounts.add(wrap(addr));
+            }
+            return super.hasContractDetails(addr);
+        } finally {
+            unlockParent();
+        }
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] addr, BigInteger value) {
+        synchronized (repository) {
+            if (Arrays.equals(addr, coinbase) && !isRead(wrap(addr))) {
+                coinbaseFee = coinbaseFee == null ? value : coinbaseFee.add(value);
+                return value;
+            }
+            return super.addBalance(addr, value);
+        }
+    }
+
+    private boolean isRead(ByteArrayWrapper addr) {
+        return cacheAccounts.containsKey(addr) || checkedAccounts.contains(addr);
+    }
+
+    /**
+     * @return true if the transaction has read any of the accounts or storage rows
+     */
+    public boolean hasRead(Set<ByteArrayWrapper> accounts, Map<ByteArrayWrapper, Set<DataWord>> storage) {
+        synchronized (repository) {
+            for (ByteArrayWrapper addr : accounts) {
+                if (isRead(addr)) return true;
+            }
+            for (Map.Entry<ByteArrayWrapper, Set<DataWord>> entry : storage.entrySet()) {
+                ContractDetails details = cacheDetails.get(entry.getKey());
+                if (details == null) continue;
+                for (DataWord key : details.getStorage().keySet()) {
+                    if (entry.getValue().contains(key)) return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Applies the changes made by the transaction to the target track and adds
+     * the changed accounts and storage rows to the given sets.
+     * The target must contain the same values the transaction has read
+     */
+    public void applyTo(RepositoryTrack target, Set<ByteArrayWrapper> changedAccounts,
+                        Map<ByteArrayWrapper, Set<DataWord>> changedStorage) {
+        synchronized (repository) {
+            for (Map.Entry<ByteArrayWrapper, AccountState> entry : cacheAccounts.entrySet()) {
+                byte[] addr = entry.getKey().getData();
+                AccountState state = entry.getValue();
+                ContractDetailsCacheImpl details = (ContractDetailsCacheImpl) cacheDetails.get(entry.getKey());
+
+                ContractDetails origDetails = details.origContract != null ?
+                        details.origContract : getParentDetails(addr);
+                for (Map.Entry<DataWord, DataWord> row : details.getStorage().entrySet()) {
+                    DataWord value = row.getValue() == null ? DataWord.ZERO : row.getValue();
+                    DataWord origValue = origDetails == null ? null : origDetails.get(row.getKey());
+                    if (value.equals(origValue == null ? DataWord.ZERO : origValue)) continue;
+
+                    target.addStorageRow(addr, row.getKey(), value);
+                    Set<DataWord> keys = changedStorage.get(entry.getKey());
+                    if (keys == null) {
+                        keys = new HashSet<>();
+                        changedStorage.put(entry.getKey(), keys);
+                    }
+                    keys.add(row.getKey());
+                }
+
+                AccountState origState = getParentState(addr);
+                if (state.isDeleted()) {
+                    target.delete(addr);
+                } else if (origState == null ? details.isDirty() : isChanged(origState, state)) {
+                    AccountState targetState = target.getAccountState(addr);
+                    target.addBalance(addr, state.getBalance().subtract(targetState.getBalance()));
+                    if (!state.getNonce().equals(targetState.getNonce())) {
+                        target.setNonce(addr, state.getNonce());
+                    }
+                    if (!Arrays.equals(state.getCodeHash(), targetState.getCodeHash())) {
+                        target.saveCode(addr, details.getCode(state.getCodeHash()));
+                    }
+                } else {
+                    continue;
+                }
+                changedAccounts.add(entry.getKey());
+            }
+
+            if (coinbaseFee != null) {
+                target.addBalance(coinbase, coinbaseFee);
+                changedAccounts.add(wrap(coinbase));
+            }
+        }
+    }
+
+    private ContractDetails getParentDetails(byte[] addr) {
+        lockParent();
+        try {
+            return repository.getContractDetails(addr);
+        } finally {
+            unlockParent();
+        }
+    }
+
+    private AccountState getParentState(byte[] addr) {
+        lockParent();
+        try {
+            return repository.getAccountState(addr);
+        } finally {
+            unlockParent();
+        }
+    }
+
+    private static boolean isChanged(AccountState orig, AccountState state) {
+        return !orig.getBalance().equals(state.getBalance()) || !orig.getNonce().equals(state.getNonce()) ||
+                !Arrays.equals(orig.getCodeHash(), state.getCodeHash());
+    }
+
+    private void lockParent() {
+        if (parentLock != null) parentLock.lock();
+    }
+
+    private void unlockParent() {
+        if (parentLock != null) parentLock.unlock();
+    }
+}
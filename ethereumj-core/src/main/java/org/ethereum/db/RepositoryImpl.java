@@ -7,12 +7,14 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.core.AccountState;
 import org.ethereum.core.Block;
 import org.ethereum.core.Repository;
+import org.ethereum.datasource.KeyIterator;
 import org.ethereum.datasource.KeyValueDataSource;
 import org.ethereum.json.EtherObjectMapper;
 import org.ethereum.json.JSONHelper;
 import org.ethereum.trie.SecureTrie;
 import org.ethereum.trie.Trie;
 import org.ethereum.trie.TrieImpl;
+import org.ethereum.trie.TrieNodeCache;
 import org.ethereum.vm.DataWord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +59,12 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
     @Autowired
     private DetailsDataStore dds = new DetailsDataStore();
 
+    @Autowired
+    TrieNodeCache trieNodeCache = TrieNodeCache.getDefault();
+
+    @Autowired
+    private StatePruner statePruner;
+
     private Trie worldState;
 
     private DatabaseImpl detailsDB = null;
@@ -93,7 +101,17 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
         dds.setDB(detailsDB);
 
         stateDB = new DatabaseImpl(stateDS);
-        worldState = new SecureTrie(stateDB.getDb());
+        worldState = createWorldState();
+    }
+
+    private Trie createWorldState() {
+        SecureTrie trie = new SecureTrie(stateDB.getDb());
+        trie.getCache().setReadCache(trieNodeCache);
+        if (statePruner != null && statePruner.isEnabled()) {
+            trie.getCache().setPruner(statePruner);
+            statePruner.setStateCache(trie.getCache());
+        }
+        return trie;
     }
 
     @Override
@@ -107,7 +125,8 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
 
             stateDS.init();
             stateDB = new DatabaseImpl(stateDS);
-            worldState = new SecureTrie(stateDB.getDb());
+            if (trieNodeCache != null) trieNodeCache.clear();
+            worldState = createWorldState();
         } finally {
             rwLock.writeLock().unlock();
         }
@@ -200,6 +219,18 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
         }
     }
 
+    /**
+     * @return approximate memory size in bytes of the state nodes
+     * and contract details written on the next flush
+     */
+    public long getPendingSize() {
+        long size = dds.getPendingSize();
+        if (worldState instanceof TrieImpl) {
+            size += ((TrieImpl) worldState).getCache().getDirtySize();
+        }
+        return size;
+    }
+
     @Override
     public void flushNoReconnect() {
         rwLock.writeLock().lock();
@@ -227,6 +258,7 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
                 worldState.sync();
 
                 gLogger.info("RepositoryImpl.flush took " + (System.currentTimeMillis() - s) + " ms");
+                if (trieNodeCache != null) gLogger.info(trieNodeCache.toString());
         } finally {
             rwLock.writeLock().unlock();
         }
@@ -288,7 +320,7 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
         File dumpFile = new File(System.getProperty("user.dir") + "/" + dir + fileName);
         FileWriter fw = null;
         BufferedWriter bw = null;
-        try {
+        try (KeyIterator keys = this.detailsDB.keyIterator()) {
 
             dumpFile.getParentFile().mkdirs();
             dumpFile.createNewFile();
@@ -296,8 +328,6 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
             fw = new FileWriter(dumpFile.getAbsoluteFile());
             bw = new BufferedWriter(fw);
 
-            List<ByteArrayWrapper> keys = this.detailsDB.dumpKeys();
-
             JsonNodeFactory jsonFactory = new JsonNodeFactory(false);
             ObjectNode blockNode = jsonFactory.objectNode();
 
@@ -370,10 +400,12 @@ public class RepositoryImpl implements Repository , org.ethereum.facade.Reposito
         rwLock.readLock().lock();
         try {
                 Set<byte[]> result = new HashSet<>();
-                for (ByteArrayWrapper key : dds.keys()) {
-
-                    if (isExist(key.getData()))
-                        result.add(key.getData());
+                try (KeyIterator keys = dds.keyIterator()) {
+                    while (keys.hasNext()) {
+                        byte[] key = keys.next();
+                        if (isExist(key))
+                            result.add(key);
+                    }
                 }
 
                 return result;
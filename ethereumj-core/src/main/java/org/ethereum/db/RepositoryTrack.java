@@ -4,6 +4,7 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.core.AccountState;
 import org.ethereum.core.Block;
 import org.ethereum.core.Repository;
+import org.ethereum.trie.TrieHashPool;
 import org.ethereum.vm.DataWord;
 
 import org.slf4j.Logger;
@@ -19,6 +20,7 @@ import javax.annotation.Nullable;
 import java.math.BigInteger;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
@@ -34,6 +36,9 @@ public class RepositoryTrack implements Repository, org.ethereum.facade.Reposito
 
     private static final Logger logger = LoggerFactory.getLogger("repository");
 
+    /* minimal number of the contracts with storage changes to commit them in parallel */
+    private static final int PARALLEL_STORAGE_COMMIT_THRESHOLD = 4;
+
     HashMap<ByteArrayWrapper, AccountState> cacheAccounts = new HashMap<>();
     HashMap<ByteArrayWrapper, ContractDetails> cacheDetails = new HashMap<>();
 
@@ -334,19 +339,27 @@ public class RepositoryTrack implements Repository, org.ethereum.facade.Reposito
     public void commit() {
 
         synchronized (repository) {
+            List<ContractDetailsCacheImpl> storageTries = new ArrayList<>();
             for (Map.Entry<ByteArrayWrapper, ContractDetails> entry : cacheDetails.entrySet()) {
                 ContractDetailsCacheImpl contractDetailsCache = (ContractDetailsCacheImpl) entry.getValue();
-                contractDetailsCache.commit();
 
                 if (contractDetailsCache.origContract == null && repository.hasContractDetails(entry.getKey().getData())) {
                     // in forked block the contract account might not exist thus it is created without
                     // origin, but on the main chain details can contain data which should be merged
                     // into a single storage trie so both branches with different stateRoots are valid
                     contractDetailsCache.origContract = repository.getContractDetails(entry.getKey().getData());
+                }
+
+                if (contractDetailsCache.origContract instanceof ContractDetailsImpl &&
+                        contractDetailsCache.getChangedStorageSize() > 0) {
+                    storageTries.add(contractDetailsCache);
+                } else {
                     contractDetailsCache.commit();
                 }
             }
 
+            commitStorage(storageTries);
+
             repository.updateBatch(cacheAccounts, cacheDetails);
             cacheAccounts.clear();
             cacheDetails.clear();
@@ -355,6 +368,33 @@ public class RepositoryTrack implements Repository, org.ethereum.facade.Reposito
     }
 
 
+    /**
+     * Applies the storage changes to the contract storage tries
+     * which encodes and hashes the changed storage nodes.
+     * The tries of different contracts are independent so the hashing
+     * is done in parallel when there are enough contracts touched
+     */
+    private void commitStorage(List<ContractDetailsCacheImpl> storageTries) {
+        if (storageTries.size() < PARALLEL_STORAGE_COMMIT_THRESHOLD) {
+            for (ContractDetailsCacheImpl contractDetailsCache : storageTries) {
+                contractDetailsCache.commit();
+            }
+            return;
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<>(storageTries.size());
+        for (final ContractDetailsCacheImpl contractDetailsCache : storageTries) {
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    contractDetailsCache.commit();
+                    return null;
+                }
+            });
+        }
+        TrieHashPool.invokeAll(tasks);
+    }
+
     @Override
     public void syncToRoot(byte[] root) {
         throw new UnsupportedOperationException();
@@ -0,0 +1,267 @@
+package org.ethereum.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.trie.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Online pruning of the world state trie.
+ *
+ * The world state {@link Cache} reports every stored node it creates
+ * and every stored node the trie stops referencing. Those reports are
+ * journaled per block and once a block leaves the configured history
+ * depth its journal is applied:
+ * - nodes the main chain block stopped referencing are deleted
+ * - nodes created by a fork block (or by a block which failed validation) are deleted
+ * unless a block which is still within the depth references them.
+ *
+ * The deletion runs in background via {@link Cache#deleteBatch}
+ * and only after the blocks have been flushed, so the state of the
+ * last flushed block is always complete on disk.
+ *
+ * Note: the state roots older than the depth are not available anymore
+ * and the reorgs deeper than the depth can't be handled.
+ * The journal is kept in memory, changes of the blocks imported before
+ * a restart are not pruned.
+ */
+@Component
+public class StatePruner {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    /* flags of the node changes within a block */
+    private static final int FIRST_INSERTED = 1;
+    private static final int LAST_INSERTED = 2;
+
+    private static class BlockChanges {
+        byte[] blockHash;
+        Map<ByteArrayWrapper, Integer> nodes;
+
+        BlockChanges(byte[] blockHash, Map<ByteArrayWrapper, Integer> nodes) {
+            this.blockHash = blockHash;
+            this.nodes = nodes;
+        }
+
+        boolean references(ByteArrayWrapper key) {
+            Integer flags = nodes.get(key);
+            return flags != null && (flags & LAST_INSERTED) != 0;
+        }
+    }
+
+    @Autowired
+    SystemProperties config = SystemProperties.getDefault();
+
+    @Autowired
+    private BlockStore blockStore;
+
+    private Cache stateCache;
+
+    /* changes of the block which is being imported */
+    private Map<ByteArrayWrapper, Integer> current = new HashMap<>();
+
+    /* block number -> changes of all blocks imported with that number */
+    private SortedMap<Long, List<BlockChanges>> journal = new TreeMap<>();
+
+    /* node -> number of journaled blocks which reference it */
+    private Map<ByteArrayWrapper, Integer> references = new HashMap<>();
+
+    private ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("state-pruner-%d").build());
+
+    private long prunedNodes = 0;
+
+    public StatePruner() {
+    }
+
+    public StatePruner(SystemProperties config, BlockStore blockStore) {
+        this.config = config;
+        this.blockStore = blockStore;
+    }
+
+    public boolean isEnabled() {
+        return config.databasePruneEnabled();
+    }
+
+    public synchronized void setStateCache(Cache stateCache) {
+        this.stateCache = stateCache;
+    }
+
+    public synchronized void nodeInserted(byte[] hash) {
+        ByteArrayWrapper key = wrap(hash);
+        Integer flags = current.get(key);
+        current.put(key, flags == null ? FIRST_INSERTED | LAST_INSERTED : flags | LAST_INSERTED);
+    }
+
+    public synchronized void nodeRemoved(byte[] hash) {
+        ByteArrayWrapper key = wrap(hash);
+        Integer flags = current.get(key);
+        current.put(key, flags == null ? 0 : flags & ~LAST_INSERTED);
+    }
+
+    /**
+     * Closes the journal of the block which has just been processed
+     * (either successfully or not). All the node changes reported since
+     * the previous call are attributed to this block
+     */
+    public synchronized void storeBlockChanges(byte[] blockHash, long blockNumber) {
+        BlockChanges changes = new BlockChanges(blockHash, current);
+        current = new HashMap<>();
+
+        for (ByteArrayWrapper key : changes.nodes.keySet()) {
+            if (changes.references(key)) {
+                incReferences(key, 1);
+            }
+        }
+
+        List<BlockChanges> level = journal.get(blockNumber);
+        if (level == null) {
+            level = new ArrayList<>();
+            journal.put(blockNumber, level);
+        }
+        level.add(changes);
+    }
+
+    /**
+     * Applies the journal of the blocks which are deeper than configured history depth
+     * Must be called right after the state is flushed
+     *
+     * @param bestNumber the number of the best block which state has been flushed
+     */
+    public void prune(long bestNumber) {
+        final List<byte[]> toDelete = new ArrayList<>();
+
+        synchronized (this) {
+            long maxPruned = bestNumber - config.databasePruneDepth();
+            Iterator<Map.Entry<Long, List<BlockChanges>>> it = journal.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, List<BlockChanges>> level = it.next();
+                if (level.getKey() > maxPruned) break;
+
+                pruneLevel(level.getKey(), level.getValue(), toDelete);
+                it.remove();
+            }
+        }
+
+        if (toDelete.isEmpty()) return;
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deleteNodes(toDelete);
+                } catch (Throwable t) {
+                    logger.error("Error pruning state nodes", t);
+                }
+            }
+        });
+    }
+
+    private void pruneLevel(long number, List<BlockChanges> level, List<byte[]> toDelete) {
+        for (BlockChanges changes : level) {
+            for (ByteArrayWrapper key : changes.nodes.keySet()) {
+                if (changes.references(key)) {
+                    incReferences(key, -1);
+                }
+            }
+        }
+
+        byte[] mainHash = blockStore.getBlockHashByNumber(number);
+        BlockChanges main = null;
+        for (BlockChanges changes : level) {
+            if (Arrays.equals(changes.blockHash, mainHash)) {
+                main = changes;
+            }
+        }
+
+        for (BlockChanges changes : level) {
+            for (Map.Entry<ByteArrayWrapper, Integer> entry : changes.nodes.entrySet()) {
+                ByteArrayWrapper key = entry.getKey();
+                int flags = entry.getValue();
+
+                boolean garbage;
+                if (changes == main) {
+                    // the main chain block doesn't reference the node anymore
+                    garbage = (flags & LAST_INSERTED) == 0;
+                } else {
+                    // the node was created by a block which is not on the main chain
+                    garbage = (flags & FIRST_INSERTED) != 0 && (main == null || !main.references(key));
+                }
+
+                if (garbage && !isReferenced(key)) {
+                    toDelete.add(key.getData());
+                }
+            }
+        }
+    }
+
+    private void deleteNodes(List<byte[]> keys) {
+        long s = System.currentTimeMillis();
+
+        // holding the lock while deleting so that a node
+        // can't be inserted back in the meantime
+        synchronized (this) {
+            List<byte[]> batch = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                if (!isReferenced(wrap(key))) {
+                    batch.add(key);
+                }
+            }
+
+            if (stateCache != null) {
+                stateCache.deleteBatch(batch);
+            }
+            prunedNodes += batch.size();
+
+            logger.info("StatePruner: {} nodes pruned in {} ms, {} nodes pruned total",
+                    batch.size(), System.currentTimeMillis() - s, prunedNodes);
+        }
+    }
+
+    private boolean isReferenced(ByteArrayWrapper key) {
+        return references.containsKey(key) || current.containsKey(key);
+    }
+
+    private void incReferences(ByteArrayWrapper key, int delta) {
+        Integer cnt = references.get(key);
+        int newCnt = (cnt == null ? 0 : cnt) + delta;
+        if (newCnt > 0) {
+            references.put(key, newCnt);
+        } else {
+            references.remove(key);
+        }
+    }
+
+    public synchronized long getPrunedNodes() {
+        return prunedNodes;
+    }
+
+    @PreDestroy
+    public void close() {
+        // let the running deletion complete before the DB is closed
+        executor.shutdown();
+        try {
+            executor.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
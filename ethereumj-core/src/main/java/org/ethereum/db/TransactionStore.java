@@ -111,6 +111,13 @@ public class TransactionStore extends ObjectDataSource<List<TransactionInfo>> {
         withCacheOnWrite(true);
     }
 
+    /**
+     * @return approximate memory size in bytes of the records not yet written to the DB
+     */
+    public long getPendingSize() {
+        return getSrc() instanceof CachingDataSource ? ((CachingDataSource) getSrc()).getSize() : 0;
+    }
+
     @Override
     public void flush() {
         if (getSrc() instanceof Flushable) {
@@ -3,7 +3,6 @@ package org.ethereum.json;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.AccountState;
 import org.ethereum.core.Block;
-import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.db.ContractDetails;
 import org.ethereum.core.Repository;
 import org.ethereum.util.ByteUtil;
@@ -17,6 +16,7 @@ import org.spongycastle.util.encoders.Hex;
 import java.math.BigInteger;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Collections;
 import java.util.List;
 
@@ -75,7 +75,7 @@ public class JSONHelper {
     }
 
     public static void dumpBlock(ObjectNode blockNode, Block block,
-                                 long gasUsed, byte[] state, List<ByteArrayWrapper> keys,
+                                 long gasUsed, byte[] state, Iterator<byte[]> keys,
                                  Repository repository) {
 
         blockNode.put("coinbase", Hex.toHexString(block.getCoinbase()));
@@ -87,8 +87,8 @@ public class JSONHelper {
         blockNode.put("prevhash", "0x" + Hex.toHexString(block.getParentHash()));
 
         ObjectNode statesNode = blockNode.objectNode();
-        for (ByteArrayWrapper key : keys) {
-            byte[] keyBytes = key.getData();
+        while (keys.hasNext()) {
+            byte[] keyBytes = keys.next();
             AccountState accountState = repository.getAccountState(keyBytes);
             ContractDetails details = repository.getContractDetails(keyBytes);
             dumpState(statesNode, Hex.toHexString(keyBytes), accountState, details);
@@ -18,6 +18,8 @@ public class AdminInfo {
     private long startupTimeStamp;
     private boolean consensus = true;
     private List<Long> blockExecTime = new LinkedList<>();
+    private List<Double> blockConflictRate = new LinkedList<>();
+    private List<Long> blockPrefetchTime = new LinkedList<>();
 
 
     @PostConstruct
@@ -59,4 +61,58 @@ public class AdminInfo {
     public List<Long> getBlockExecTime(){
         return blockExecTime;
     }
+
+    /**
+     * @param rate share of the block transactions executed again
+     *             after the parallel execution because of the conflicts
+     */
+    public void addBlockConflictRate(double rate){
+        while (blockConflictRate.size() > ExecTimeListLimit) {
+            blockConflictRate.remove(0);
+        }
+        blockConflictRate.add(rate);
+    }
+
+    public Double getConflictRateAvg(){
+
+        if (blockConflictRate.isEmpty()) return 0d;
+
+        double sum = 0;
+        for (int i = 0; i < blockConflictRate.size(); ++i){
+            sum += blockConflictRate.get(i);
+        }
+
+        return sum / blockConflictRate.size();
+    }
+
+    public List<Double> getBlockConflictRate(){
+        return blockConflictRate;
+    }
+
+    /**
+     * @param time time spent by the prefetching reading the state
+     *             of the block transactions before they were executed [nanos]
+     */
+    public void addBlockPrefetchTime(long time){
+        while (blockPrefetchTime.size() > ExecTimeListLimit) {
+            blockPrefetchTime.remove(0);
+        }
+        blockPrefetchTime.add(time);
+    }
+
+    public Long getPrefetchTimeAvg(){
+
+        if (blockPrefetchTime.isEmpty()) return 0L;
+
+        long sum = 0;
+        for (int i = 0; i < blockPrefetchTime.size(); ++i){
+            sum += blockPrefetchTime.get(i);
+        }
+
+        return sum / blockPrefetchTime.size();
+    }
+
+    public List<Long> getBlockPrefetchTime(){
+        return blockPrefetchTime;
+    }
 }
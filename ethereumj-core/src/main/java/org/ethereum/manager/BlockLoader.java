@@ -58,12 +58,10 @@ public class BlockLoader {
     ExecutorPipeline<Block, ?> exec2;
 
     public void loadBlocks() {
-        exec1 = new ExecutorPipeline(8, 1000, true, new Functional.Function<Block, Block>() {
+        exec1 = new ExecutorPipeline(1, 1000, true, new Functional.Function<Block, Block>() {
             @Override
             public Block apply(Block b) {
-                for (Transaction tx : b.getTransactionsList()) {
-                    tx.getSender();
-                }
+                SenderRecovery.getDefault().recover(b.getTransactionsList());
                 return b;
             }
         }, new Functional.Consumer<Throwable>() {
@@ -17,8 +17,8 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import java.util.Queue;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.ethereum.net.message.StaticMessages.DISCONNECT_MESSAGE;
 
@@ -35,6 +35,10 @@ import static org.ethereum.net.message.StaticMessages.DISCONNECT_MESSAGE;
  * The following messages will not be answered:
  *      PONG, PEERS, HELLO, STATUS, TRANSACTIONS, BLOCKS
  *
+ * The messages are sent on the channel event loop as soon as they are queued,
+ * all the queued answers are written at once with a single flush while the channel
+ * is writable, the next request is sent when the previous one is answered
+ *
  * @author Roman Mandeleil
  */
 @Component
@@ -43,38 +47,35 @@ public class MessageQueue {
 
     private static final Logger logger = LoggerFactory.getLogger("net");
 
-    private static final ScheduledExecutorService timer = Executors.newScheduledThreadPool(4, new ThreadFactory() {
-        private AtomicInteger cnt = new AtomicInteger(0);
-
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "MessageQueueTimer-" + cnt.getAndIncrement());
-        }
-    });
-
     private Queue<MessageRoundtrip> requestQueue = new ConcurrentLinkedQueue<>();
     private Queue<MessageRoundtrip> respondQueue = new ConcurrentLinkedQueue<>();
-    private ChannelHandlerContext ctx = null;
+    private volatile ChannelHandlerContext ctx = null;
 
     @Autowired
     EthereumListener ethereumListener;
     boolean hasPing = false;
-    private ScheduledFuture<?> timerTask;
     private Channel channel;
 
+    private final AtomicBoolean sendScheduled = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    private final Runnable sendTask = new Runnable() {
+        public void run() {
+            sendScheduled.set(false);
+            try {
+                nudgeQueue();
+            } catch (Throwable t) {
+                logger.error("Unhandled exception", t);
+            }
+        }
+    };
+
     public MessageQueue() {
     }
 
     public void activate(ChannelHandlerContext ctx) {
         this.ctx = ctx;
-        timerTask = timer.scheduleAtFixedRate(new Runnable() {
-            public void run() {
-                try {
-                    nudgeQueue();
-                } catch (Throwable t) {
-                    logger.error("Unhandled exception", t);
-                }
-            }
-        }, 10, 10, TimeUnit.MILLISECONDS);
+        scheduleSend();
     }
 
     public void setChannel(Channel channel) {
@@ -91,6 +92,15 @@ public class MessageQueue {
             requestQueue.add(new MessageRoundtrip(msg));
         else
             respondQueue.add(new MessageRoundtrip(msg));
+
+        scheduleSend();
+    }
+
+    /**
+     * Sends the queued messages once the channel can take them again
+     */
+    public void writabilityChanged() {
+        scheduleSend();
     }
 
     public void disconnect() {
@@ -123,6 +133,8 @@ public class MessageQueue {
                     channel.getPeerStats().pong(messageRoundtrip.lastTimestamp);
                 logger.trace("Message round trip covered: [{}] ",
                         messageRoundtrip.getMsg().getClass());
+                // the next request can be sent
+                scheduleSend();
             }
         }
     }
@@ -132,15 +144,34 @@ public class MessageQueue {
             requestQueue.remove();
     }
 
+    private void scheduleSend() {
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null || closed) return;
+
+        // a single task sends all the messages queued before it runs
+        if (sendScheduled.compareAndSet(false, true)) {
+            ctx.executor().execute(sendTask);
+        }
+    }
+
     private void nudgeQueue() {
+        if (closed) return;
         // remove last answered message on the queue
         removeAnsweredMessage(requestQueue.peek());
-        // Now send the next message
-        sendToWire(respondQueue.poll());
-        sendToWire(requestQueue.peek());
+        // Now send the answers and the next request
+        boolean written = false;
+        while (ctx.channel().isWritable() && !respondQueue.isEmpty()) {
+            written |= sendToWire(respondQueue.poll());
+        }
+        if (ctx.channel().isWritable()) {
+            written |= sendToWire(requestQueue.peek());
+        }
+        if (written) {
+            ctx.flush();
+        }
     }
 
-    private void sendToWire(MessageRoundtrip messageRoundtrip) {
+    private boolean sendToWire(MessageRoundtrip messageRoundtrip) {
 
         if (messageRoundtrip != null && messageRoundtrip.getRetryTimes() == 0) {
             // TODO: retry logic || messageRoundtrip.hasToRetry()){
@@ -149,18 +180,18 @@ public class MessageQueue {
 
             ethereumListener.onSendMessage(channel, msg);
 
-            ctx.writeAndFlush(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            ctx.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 
             if (msg.getAnswerMessage() != null) {
                 messageRoundtrip.incRetryTimes();
                 messageRoundtrip.saveTime();
             }
+            return true;
         }
+        return false;
     }
 
     public void close() {
-        if (timerTask != null) {
-            timerTask.cancel(false);
-        }
+        closed = true;
     }
 }
@@ -146,10 +146,9 @@ public class Eth62 extends EthHandler {
         byte protocolVersion = version.getCode();
         int networkId = config.networkId();
 
-        BigInteger totalDifficulty = blockchain.getTotalDifficulty();
-        byte[] bestHash = blockchain.getBestBlockHash();
+        ChainSnapshot chain = blockchain.getChainSnapshot();
         StatusMessage msg = new StatusMessage(protocolVersion, networkId,
-                ByteUtil.bigIntegerToBytes(totalDifficulty), bestHash, config.getGenesis().getHash());
+                ByteUtil.bigIntegerToBytes(chain.getTotalDifficulty()), chain.getBestHash(), config.getGenesis().getHash());
         sendMessage(msg);
 
         ethState = EthState.STATUS_SENT;
@@ -229,6 +228,7 @@ public class Eth62 extends EthHandler {
 
         GetBlockBodiesMessage msg = new GetBlockBodiesMessage(hashes);
 
+        syncStats.bodiesRequested(headers.size());
         sendMessage(msg);
     }
 
@@ -317,6 +317,7 @@ public class Eth62 extends EthHandler {
         }
 
         List<Transaction> txSet = msg.getTransactions();
+        SenderRecovery.getDefault().recover(txSet);
         pendingState.addPendingTransactions(txSet);
     }
 
@@ -384,6 +385,7 @@ public class Eth62 extends EthHandler {
 
         if (!isValid(msg)) {
 
+            syncStats.bodiesFailed();
             dropConnection();
             return;
         }
@@ -395,10 +397,14 @@ public class Eth62 extends EthHandler {
         if (blocks == null) {
 
             // headers will be returned by #onShutdown()
+            syncStats.bodiesFailed();
             dropConnection();
             return;
         }
 
+        // the empty answer is penalized
+        syncStats.bodiesReceived(blocks.size());
+
         syncManager.addList(blocks, channel.getNodeId());
 
         syncState = IDLE;
@@ -425,6 +431,7 @@ public class Eth62 extends EthHandler {
 
     @Override
     public synchronized void onShutdown() {
+        syncStats.bodiesCancelled();
     }
 
     @Override
@@ -756,11 +763,13 @@ public class Eth62 extends EthHandler {
     public String getSyncStats() {
 
         return String.format(
-                "Peer %s: [ %s, %16s, ping %6s ms, difficulty %s, best block %s ]",
+                "Peer %s: [ %s, %16s, ping %6s ms, bodies %6.1f/s, penalty %d, difficulty %s, best block %s ]",
                 version,
                 channel.getPeerIdShort(),
                 syncState,
                 (int)channel.getPeerStats().getAvgLatency(),
+                syncStats.getBodiesThroughput(),
+                syncStats.getPenalty(),
                 getTotalDifficulty(),
                 getBestKnownBlock().getNumber());
     }
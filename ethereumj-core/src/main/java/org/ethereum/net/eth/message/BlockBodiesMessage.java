@@ -2,10 +2,8 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.Block;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.spongycastle.util.encoders.Hex;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -29,14 +27,12 @@ public class BlockBodiesMessage extends EthMessage {
         parsed = true;
     }
 
+    /**
+     * The bodies are kept encoded, their transactions and uncles
+     * are decoded when the blocks are assembled
+     */
     private void parse() {
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
-
-        blockBodies = new ArrayList<>();
-        for (int i = 0; i < paramsList.size(); ++i) {
-            RLPList rlpData = ((RLPList) paramsList.get(i));
-            blockBodies.add(rlpData.getRLPData());
-        }
+        blockBodies = RLP.decodeListItems(encoded);
         parsed = true;
     }
 
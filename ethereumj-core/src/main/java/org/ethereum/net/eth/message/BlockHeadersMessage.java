@@ -2,7 +2,6 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.BlockHeader;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
@@ -33,12 +32,11 @@ public class BlockHeadersMessage extends EthMessage {
     }
 
     private void parse() {
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        List<byte[]> rlpHeaders = RLP.decodeListItems(encoded);
 
-        blockHeaders = new ArrayList<>();
-        for (int i = 0; i < paramsList.size(); ++i) {
-            RLPList rlpData = ((RLPList) paramsList.get(i));
-            blockHeaders.add(new BlockHeader(rlpData));
+        blockHeaders = new ArrayList<>(rlpHeaders.size());
+        for (byte[] rlpHeader : rlpHeaders) {
+            blockHeaders.add(new BlockHeader(rlpHeader));
         }
         parsed = true;
     }
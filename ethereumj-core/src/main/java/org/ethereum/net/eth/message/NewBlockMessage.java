@@ -2,11 +2,11 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.Block;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.util.List;
 
 /**
  * Wrapper around an Ethereum Blocks message on the network
@@ -37,11 +37,10 @@ public class NewBlockMessage extends EthMessage {
     }
 
     private void parse() {
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        List<byte[]> params = RLP.decodeListItems(encoded);
 
-        RLPList blockRLP = ((RLPList) paramsList.get(0));
-        block = new Block(blockRLP.getRLPData());
-        difficulty = paramsList.get(1).getRLPData();
+        block = new Block(params.get(0));
+        difficulty = RLP.decode2(params.get(1)).get(0).getRLPData();
 
         parsed = true;
     }
@@ -2,12 +2,9 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.Transaction;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Wrapper around an Ethereum Transactions message on the network
@@ -34,14 +31,16 @@ public class TransactionsMessage extends EthMessage {
         parsed = true;
     }
 
+    /**
+     * Only splits the list, each transaction is decoded on the first access to its fields,
+     * so the known ones are dropped by the hash of their encoding without being decoded
+     */
     private void parse() {
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        List<byte[]> rlpTxs = RLP.decodeListItems(encoded);
 
-        transactions = new ArrayList<>();
-        for (int i = 0; i < paramsList.size(); ++i) {
-            RLPList rlpTxData = (RLPList) paramsList.get(i);
-            Transaction tx = new Transaction(rlpTxData.getRLPData());
-            transactions.add(tx);
+        transactions = new ArrayList<>(rlpTxs.size());
+        for (byte[] rlpTx : rlpTxs) {
+            transactions.add(new Transaction(rlpTx));
         }
         parsed = true;
     }
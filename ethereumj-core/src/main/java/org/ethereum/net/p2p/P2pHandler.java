@@ -182,6 +182,12 @@ public class P2pHandler extends SimpleChannelInboundHandler<P2pMessage> {
         this.killTimers();
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        msgQueue.writabilityChanged();
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.warn("P2p handling failed", cause);
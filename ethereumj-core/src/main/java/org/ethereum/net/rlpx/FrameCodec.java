@@ -1,8 +1,9 @@
 package org.ethereum.net.rlpx;
 
+import com.google.common.io.ByteStreams;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import org.ethereum.crypto.cryptohash.Keccak256;
 import org.ethereum.net.swarm.Util;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
@@ -15,6 +16,7 @@ import org.spongycastle.crypto.params.ParametersWithIV;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -22,13 +24,25 @@ import static org.ethereum.util.RLP.decode2OneItem;
 
 /**
  * Created by devrandom on 2015-04-11.
+ *
+ * The frames are encrypted straight into the outgoing buffer and decrypted in place
+ * in the array of the payload, which is passed to the message decoder without copying.
+ * The MAC ciphers and the digest scratch state are kept for the connection lifetime.
  */
 public class FrameCodec {
+    private static final int MAC_SIZE = 16;
+    private static final byte[] PADDING = new byte[16];
+
     private final StreamCipher enc;
     private final StreamCipher dec;
-    private final KeccakDigest egressMac;
-    private final KeccakDigest ingressMac;
-    private final byte[] mac;
+    private final FrameMac egressMac;
+    private final FrameMac ingressMac;
+    // the frames might be read and written by the different threads
+    private final byte[] headBuffer = new byte[32];
+    private final byte[] bodyBlock = new byte[16];
+    private final byte[] writeHeadBuffer = new byte[32];
+    /* encrypted data on its way to the buffer without a backing array */
+    private final byte[] writeBuffer = new byte[8192];
     boolean isHeadRead;
     private int totalBodySize;
     private int contextId = -1;
@@ -36,27 +50,22 @@ public class FrameCodec {
     private int protocol;
 
     public FrameCodec(EncryptionHandshake.Secrets secrets) {
-        this.mac = secrets.mac;
         int blockSize = secrets.aes.length * 8;
         enc = new SICBlockCipher(new AESFastEngine());
         enc.init(true, new ParametersWithIV(new KeyParameter(secrets.aes), new byte[blockSize / 8]));
         dec = new SICBlockCipher(new AESFastEngine());
         dec.init(false, new ParametersWithIV(new KeyParameter(secrets.aes), new byte[blockSize / 8]));
-        egressMac = secrets.egressMac;
-        ingressMac = secrets.ingressMac;
-    }
-
-    private AESFastEngine makeMacCipher() {
-        // Stateless AES encryption
-        AESFastEngine macc = new AESFastEngine();
-        macc.init(true, new KeyParameter(mac));
-        return macc;
+        egressMac = new FrameMac(secrets.egressMac, secrets.mac);
+        ingressMac = new FrameMac(secrets.ingressMac, secrets.mac);
     }
 
     public static class Frame {
         long type;
         int size;
         InputStream payload;
+        /* the payload bytes [offset, offset + size) if the frame is backed by an array */
+        byte[] data;
+        int offset;
 
         int totalFrameSize = -1;
         int contextId = -1;
@@ -68,9 +77,15 @@ public class FrameCodec {
         }
 
         public Frame(int type, byte[] payload) {
+            this(type, payload, 0, payload.length);
+        }
+
+        public Frame(long type, byte[] data, int offset, int size) {
             this.type = type;
-            this.size = payload.length;
-            this.payload = new ByteArrayInputStream(payload);
+            this.size = size;
+            this.data = data;
+            this.offset = offset;
+            this.payload = new ByteArrayInputStream(data, offset, size);
         }
 
         public int getSize() {
@@ -82,6 +97,21 @@ public class FrameCodec {
         public InputStream getStream() {
             return payload;
         }
+
+        /**
+         * @return the payload bytes, the frame array itself when the frame isn't a slice of a bigger one
+         */
+        public byte[] getPayload() throws IOException {
+            if (data != null && offset == 0 && size == data.length) return data;
+            byte[] ret = new byte[size];
+            if (data != null) {
+                System.arraycopy(data, offset, ret, 0, size);
+            } else {
+                ByteStreams.readFully(payload, ret);
+            }
+            return ret;
+        }
+
         public boolean isChunked() {
             return contextId >= 0;
         }
@@ -89,16 +119,16 @@ public class FrameCodec {
     }
 
     public void writeFrame(Frame frame, ByteBuf buf) throws IOException {
-        writeFrame(frame, new ByteBufOutputStream(buf));
-    }
-
-    public void writeFrame(Frame frame, OutputStream out) throws IOException {
-        byte[] headBuffer = new byte[32];
         byte[] ptype = RLP.encodeInt((int) frame.type); // FIXME encodeLong
         int totalSize = frame.size + ptype.length;
-        headBuffer[0] = (byte)(totalSize >> 16);
-        headBuffer[1] = (byte)(totalSize >> 8);
-        headBuffer[2] = (byte)(totalSize);
+        int padding = 16 - (totalSize % 16);
+        if (padding == 16) padding = 0;
+        buf.ensureWritable(writeHeadBuffer.length + totalSize + padding + MAC_SIZE);
+
+        Arrays.fill(writeHeadBuffer, (byte) 0);
+        writeHeadBuffer[0] = (byte)(totalSize >> 16);
+        writeHeadBuffer[1] = (byte)(totalSize >> 8);
+        writeHeadBuffer[2] = (byte)(totalSize);
 
         List<byte[]> headerDataElems = new ArrayList<>();
         headerDataElems.add(RLP.encodeInt(0));
@@ -106,135 +136,240 @@ public class FrameCodec {
         if (frame.totalFrameSize >= 0) headerDataElems.add(RLP.encodeInt(frame.totalFrameSize));
 
         byte[] headerData = RLP.encodeList(headerDataElems.toArray(new byte[0][]));
-        System.arraycopy(headerData, 0, headBuffer, 3, headerData.length);
+        System.arraycopy(headerData, 0, writeHeadBuffer, 3, headerData.length);
 
-        enc.processBytes(headBuffer, 0, 16, headBuffer, 0);
+        enc.processBytes(writeHeadBuffer, 0, 16, writeHeadBuffer, 0);
 
         // Header MAC
-        updateMac(egressMac, headBuffer, 0, headBuffer, 16, true);
-
-        byte[] buff = new byte[256];
-        out.write(headBuffer);
-        enc.processBytes(ptype, 0, ptype.length, buff, 0);
-        out.write(buff, 0, ptype.length);
-        egressMac.update(buff, 0, ptype.length);
-        while (true) {
-            int n = frame.payload.read(buff);
-            if (n <= 0) break;
-            enc.processBytes(buff, 0, n, buff, 0);
-            egressMac.update(buff, 0, n);
-            out.write(buff, 0, n);
-        }
-        int padding = 16 - (totalSize % 16);
-        byte[] pad = new byte[16];
-        if (padding < 16) {
-            enc.processBytes(pad, 0, padding, buff, 0);
-            egressMac.update(buff, 0, padding);
-            out.write(buff, 0, padding);
+        egressMac.update(writeHeadBuffer, 0, writeHeadBuffer, 16, true);
+        buf.writeBytes(writeHeadBuffer);
+
+        writeEncrypted(ptype, 0, ptype.length, buf);
+        if (frame.data != null) {
+            writeEncrypted(frame.data, frame.offset, frame.size, buf);
+        } else {
+            byte[] buff = new byte[256];
+            while (true) {
+                int n = frame.payload.read(buff);
+                if (n <= 0) break;
+                writeEncrypted(buff, 0, n, buf);
+            }
         }
+        writeEncrypted(PADDING, 0, padding, buf);
 
         // Frame MAC
-        byte[] macBuffer = new byte[egressMac.getDigestSize()];
-        doSum(egressMac, macBuffer); // fmacseed
-        updateMac(egressMac, macBuffer, 0, macBuffer, 0, true);
-        out.write(macBuffer, 0, 16);
+        byte[] macBuffer = egressMac.frameSeed;
+        egressMac.sum(macBuffer); // fmacseed
+        egressMac.update(macBuffer, 0, macBuffer, 0, true);
+        buf.writeBytes(macBuffer, 0, MAC_SIZE);
+    }
+
+    public void writeFrame(Frame frame, OutputStream out) throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            writeFrame(frame, buf);
+            buf.readBytes(out, buf.readableBytes());
+        } finally {
+            buf.release();
+        }
     }
 
+    private void writeEncrypted(byte[] src, int offset, int length, ByteBuf buf) {
+        if (buf.hasArray()) {
+            buf.ensureWritable(length);
+            byte[] array = buf.array();
+            int pos = buf.arrayOffset() + buf.writerIndex();
+            enc.processBytes(src, offset, length, array, pos);
+            egressMac.digest.update(array, pos, length);
+            buf.writerIndex(buf.writerIndex() + length);
+        } else {
+            while (length > 0) {
+                int n = Math.min(length, writeBuffer.length);
+                enc.processBytes(src, offset, n, writeBuffer, 0);
+                egressMac.digest.update(writeBuffer, 0, n);
+                buf.writeBytes(writeBuffer, 0, n);
+                offset += n;
+                length -= n;
+            }
+        }
+    }
+
+    /**
+     * Reads the next frame if it is fully available,
+     * the bytes of the incomplete frame are left in the buffer
+     */
     public List<Frame> readFrames(ByteBuf buf) throws IOException {
-        try (ByteBufInputStream bufInputStream = new ByteBufInputStream(buf)) {
-            return readFrames(bufInputStream);
+        if (!isHeadRead) {
+            if (buf.readableBytes() < headBuffer.length) return null;
+            buf.readBytes(headBuffer);
+            readHeader();
         }
+
+        if (buf.readableBytes() < getBodySize() + MAC_SIZE) return null;
+        return Collections.singletonList(readBody(buf));
     }
 
     public List<Frame> readFrames(DataInput inp) throws IOException {
         if (!isHeadRead) {
-            byte[] headBuffer = new byte[32];
             try {
                 inp.readFully(headBuffer);
             } catch (EOFException e) {
                 return null;
             }
+            readHeader();
+        }
 
-            // Header MAC
-            updateMac(ingressMac, headBuffer, 0, headBuffer, 16, false);
+        byte[] buffer = new byte[getBodySize() + MAC_SIZE];
+        try {
+            inp.readFully(buffer);
+        } catch (EOFException e) {
+            return null;
+        }
+        return Collections.singletonList(readBody(Unpooled.wrappedBuffer(buffer)));
+    }
 
-            dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
-            totalBodySize = headBuffer[0];
-            totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
-            totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
+    private void readHeader() throws IOException {
+        // Header MAC
+        ingressMac.update(headBuffer, 0, headBuffer, 16, false);
+
+        dec.processBytes(headBuffer, 0, 16, headBuffer, 0);
+        totalBodySize = headBuffer[0];
+        totalBodySize = (totalBodySize << 8) + (headBuffer[1] & 0xFF);
+        totalBodySize = (totalBodySize << 8) + (headBuffer[2] & 0xFF);
+        if (totalBodySize <= 0) {
+            throw new IOException("Invalid frame size: " + totalBodySize);
+        }
 
-            RLPList rlpList = (RLPList) decode2OneItem(headBuffer, 3);
+        RLPList rlpList = (RLPList) decode2OneItem(headBuffer, 3);
 
-            protocol = Util.rlpDecodeInt(rlpList.get(0));
-            contextId = -1;
-            totalFrameSize = -1;
-            if (rlpList.size() > 1) {
-                contextId = Util.rlpDecodeInt(rlpList.get(1));
-                if (rlpList.size() > 2) {
-                    totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
-                }
+        protocol = Util.rlpDecodeInt(rlpList.get(0));
+        contextId = -1;
+        totalFrameSize = -1;
+        if (rlpList.size() > 1) {
+            contextId = Util.rlpDecodeInt(rlpList.get(1));
+            if (rlpList.size() > 2) {
+                totalFrameSize = Util.rlpDecodeInt(rlpList.get(2));
             }
-
-            isHeadRead = true;
         }
 
+        isHeadRead = true;
+    }
+
+    /**
+     * @return the size of the encrypted body with the padding
+     */
+    private int getBodySize() {
         int padding = 16 - (totalBodySize % 16);
         if (padding == 16) padding = 0;
-        int macSize = 16;
-        byte[] buffer = new byte[totalBodySize + padding + macSize];
-        try {
-            inp.readFully(buffer);
-        } catch (EOFException e) {
-            return null;
+        return totalBodySize + padding;
+    }
+
+    private Frame readBody(ByteBuf buf) throws IOException {
+        int bodySize = getBodySize();
+
+        // the first block holds the packet type which isn't part of the payload
+        readDecrypted(buf, bodyBlock, 0, 16);
+        long type = RLP.decodeInt(bodyBlock, 0); // FIXME long
+        int pos = RLP.getNextElementIndex(bodyBlock, 0);
+        if (pos <= 0 || pos > Math.min(16, totalBodySize)) {
+            throw new IOException("Invalid frame packet type");
         }
-        int frameSize = buffer.length - macSize;
-        ingressMac.update(buffer, 0, frameSize);
-        dec.processBytes(buffer, 0, frameSize, buffer, 0);
-        int pos = 0;
-        long type = RLP.decodeInt(buffer, pos); // FIXME long
-        pos = RLP.getNextElementIndex(buffer, pos);
-        InputStream payload = new ByteArrayInputStream(buffer, pos, totalBodySize - pos);
+
         int size = totalBodySize - pos;
-        byte[] macBuffer = new byte[ingressMac.getDigestSize()];
+        byte[] payload = new byte[size];
+        int head = Math.min(16, totalBodySize) - pos;
+        System.arraycopy(bodyBlock, pos, payload, 0, head);
+        readDecrypted(buf, payload, head, size - head);
+
+        // the padding is decrypted to keep the cipher in sync
+        int rest = bodySize - 16 - (size - head);
+        readDecrypted(buf, bodyBlock, 0, rest);
 
         // Frame MAC
-        doSum(ingressMac, macBuffer); // fmacseed
-        updateMac(ingressMac, macBuffer, 0, buffer, frameSize, false);
+        buf.readBytes(bodyBlock, 0, MAC_SIZE);
+        ingressMac.sum(ingressMac.frameSeed); // fmacseed
+        ingressMac.update(ingressMac.frameSeed, 0, bodyBlock, 0, false);
 
         isHeadRead = false;
-        Frame frame = new Frame(type, size, payload);
+        Frame frame = new Frame(type, payload, 0, size);
         frame.contextId = contextId;
         frame.totalFrameSize = totalFrameSize;
-        return Collections.singletonList(frame);
+        return frame;
     }
 
-    private byte[] updateMac(KeccakDigest mac, byte[] seed, int offset, byte[] out, int outOffset, boolean egress) throws IOException {
-        byte[] aesBlock = new byte[mac.getDigestSize()];
-        doSum(mac, aesBlock);
-        makeMacCipher().processBlock(aesBlock, 0, aesBlock, 0);
-        // Note that although the mac digest size is 32 bytes, we only use 16 bytes in the computation
-        int length = 16;
-        for (int i = 0; i < length; i++) {
-            aesBlock[i] ^= seed[i + offset];
-        }
-        mac.update(aesBlock, 0, length);
-        byte[] result = new byte[mac.getDigestSize()];
-        doSum(mac, result);
-        if (egress) {
-            System.arraycopy(result, 0, out, outOffset, length);
-        } else {
+    private void readDecrypted(ByteBuf buf, byte[] out, int offset, int length) {
+        if (length <= 0) return;
+        buf.readBytes(out, offset, length);
+        ingressMac.digest.update(out, offset, length);
+        dec.processBytes(out, offset, length, out, offset);
+    }
+
+    /**
+     * The running MAC of the one direction with the scratch state for its updates
+     */
+    private static class FrameMac {
+        private final Keccak256 digest;
+        private final Keccak256 sumDigest = new Keccak256();
+        // Stateless AES encryption
+        private final AESFastEngine cipher = new AESFastEngine();
+        private final byte[] aesBlock = new byte[32];
+        private final byte[] result = new byte[32];
+        final byte[] frameSeed = new byte[32];
+
+        FrameMac(KeccakDigest digest, byte[] mac) {
+            this.digest = toKeccak256(digest);
+            this.cipher.init(true, new KeyParameter(mac));
+        }
+
+        void update(byte[] seed, int offset, byte[] out, int outOffset, boolean egress) throws IOException {
+            sum(aesBlock);
+            cipher.processBlock(aesBlock, 0, aesBlock, 0);
+            // Note that although the mac digest size is 32 bytes, we only use 16 bytes in the computation
+            int length = 16;
             for (int i = 0; i < length; i++) {
-                if (out[i + outOffset] != result[i]) {
-                    throw new IOException("MAC mismatch");
+                aesBlock[i] ^= seed[i + offset];
+            }
+            digest.update(aesBlock, 0, length);
+            sum(result);
+            if (egress) {
+                System.arraycopy(result, 0, out, outOffset, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    if (out[i + outOffset] != result[i]) {
+                        throw new IOException("MAC mismatch");
+                    }
                 }
             }
         }
-        return result;
+
+        void sum(byte[] out) {
+            // doFinal without resetting the MAC by using the copy of the digest state
+            digest.copyTo(sumDigest);
+            sumDigest.digest(out, 0, out.length);
+        }
     }
 
-    private void doSum(KeccakDigest mac, byte[] out) {
-        // doFinal without resetting the MAC by using clone of digest state
-        new KeccakDigest(mac).doFinal(out, 0);
+    /**
+     * The MAC digests come from the handshake, the frames are hashed with
+     * the faster {@link Keccak256} which continues from their state
+     */
+    static Keccak256 toKeccak256(KeccakDigest digest) {
+        return new HandshakeDigest(digest).toKeccak256();
     }
 
+    private static class HandshakeDigest extends KeccakDigest {
+        HandshakeDigest(KeccakDigest digest) {
+            super(digest);
+        }
+
+        Keccak256 toKeccak256() {
+            if (getDigestSize() != 32 || squeezing || bitsInQueue % 8 != 0) {
+                throw new IllegalArgumentException("Unexpected MAC digest state");
+            }
+            Keccak256 ret = new Keccak256();
+            ret.setState(state);
+            ret.update(dataQueue, 0, bitsInQueue / 8);
+            return ret;
+        }
+    }
 }
@@ -40,7 +40,7 @@ public class TestNetSample extends BasicSample {
                 // special genesis for this test network
                 "genesis = frontier-test.json \n" +
                 "database.dir = testnetSampleDb \n" +
-                "cache.flush.memory = 0";
+                "cache.flush.size = 0";
 
         public abstract TestNetSample sampleBean();
 
@@ -0,0 +1,111 @@
+package org.ethereum.sync;
+
+import org.ethereum.core.BlockHeaderWrapper;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which of the wanted block bodies are asked from the peer.
+ *
+ * Remembers the bodies requested from every peer, so the same range is not
+ * asked from several peers at once. The range is asked again from another peer
+ * (hedged) when the owner is late with the answer, or when it holds the oldest
+ * gap of the queue and the other peer is expected to answer much earlier.
+ * Each peer gets as many bodies as it delivers in about
+ * {@link SyncStatistics#TARGET_RESPONSE_TIME}.
+ *
+ * Used by {@link SyncManager} from a single thread
+ */
+class BlockBodiesScheduler {
+
+    // the oldest gap is hedged when the other peer answers that many times earlier
+    private static final int HEDGE_SPEEDUP = 2;
+    // the size of the oldest gap
+    private static final int OLDEST_GAP = SyncStatistics.MIN_BODIES_REQUEST;
+
+    private static class InFlight {
+        final SyncStatistics owner;
+        final long requestId;
+        boolean hedged;
+
+        InFlight(SyncStatistics owner, long requestId) {
+            this.owner = owner;
+            this.requestId = requestId;
+        }
+
+        boolean isPending() {
+            return owner.isBodiesPending(requestId);
+        }
+    }
+
+    private final Map<ByteArrayWrapper, InFlight> inFlight = new HashMap<>();
+
+    /**
+     * @param wanted headers of the missing blocks, the oldest first
+     * @param peer statistics of the idle peer to ask
+     * @return headers to ask from the peer, empty if there is nothing to ask
+     */
+    public List<BlockHeaderWrapper> select(List<BlockHeaderWrapper> wanted, SyncStatistics peer) {
+        return select(wanted, peer, System.currentTimeMillis());
+    }
+
+    List<BlockHeaderWrapper> select(List<BlockHeaderWrapper> wanted, SyncStatistics peer, long now) {
+        purge();
+
+        int size = peer.getBodiesRequestSize();
+        long peerExpectedAt = peer.getBodiesExpectedAt(now);
+        List<BlockHeaderWrapper> ret = new ArrayList<>(size);
+        for (int i = 0; i < wanted.size() && ret.size() < size; i++) {
+            BlockHeaderWrapper header = wanted.get(i);
+            InFlight request = inFlight.get(new ByteArrayWrapper(header.getHash()));
+            if (request == null || canHedge(request, peer, i < OLDEST_GAP, peerExpectedAt, now)) {
+                ret.add(header);
+            }
+        }
+        return ret;
+    }
+
+    private boolean canHedge(InFlight request, SyncStatistics peer, boolean oldestGap, long peerExpectedAt, long now) {
+        if (request.hedged || request.owner == peer) return false;
+        if (request.owner.isBodiesRequestLate(now)) return true;
+        if (!oldestGap) return false;
+
+        long ownerRemaining = request.owner.getBodiesExpectedAt(now) - now;
+        return ownerRemaining > HEDGE_SPEEDUP * (peerExpectedAt - now);
+    }
+
+    /**
+     * Remembers the headers just asked from the peer
+     */
+    public void sent(List<BlockHeaderWrapper> headers, SyncStatistics peer) {
+        long requestId = peer.getBodiesRequestId();
+        for (BlockHeaderWrapper header : headers) {
+            InFlight request = new InFlight(peer, requestId);
+            InFlight prev = inFlight.put(new ByteArrayWrapper(header.getHash()), request);
+            request.hedged = prev != null && prev.isPending();
+        }
+    }
+
+    /**
+     * Forgets the requests answered or abandoned by the peers,
+     * bodies missing from the answer become wanted again
+     */
+    private void purge() {
+        Iterator<InFlight> it = inFlight.values().iterator();
+        while (it.hasNext()) {
+            if (!it.next().isPending()) {
+                it.remove();
+            }
+        }
+    }
+
+    int getInFlightCount() {
+        purge();
+        return inFlight.size();
+    }
+}
@@ -40,14 +40,12 @@ public class SyncManager {
     private static final int BLOCK_QUEUE_LIMIT = 20000;
     private static final int HEADER_QUEUE_LIMIT = 20000;
 
-    // Transaction.getSender() is quite heavy operation so we are prefetching this value on several threads
-    // to unload the main block importing cycle
+    // Transaction.getSender() is quite heavy operation so we are prefetching this value
+    // on the SenderRecovery pool to unload the main block importing cycle
     private ExecutorPipeline<BlockWrapper,BlockWrapper> exec1 = new ExecutorPipeline<>
-            (4, 1000, true, new Functional.Function<BlockWrapper,BlockWrapper>() {
+            (1, 1000, true, new Functional.Function<BlockWrapper,BlockWrapper>() {
                 public BlockWrapper apply(BlockWrapper blockWrapper) {
-                    for (Transaction tx : blockWrapper.getBlock().getTransactionsList()) {
-                        tx.getSender();
-                    }
+                    SenderRecovery.getDefault().recover(blockWrapper.getBlock().getTransactionsList());
                     return blockWrapper;
                 }
             }, new Functional.Consumer<Throwable>() {
@@ -97,6 +95,8 @@ public class SyncManager {
 
     private SyncQueueIfc syncQueue;
 
+    private BlockBodiesScheduler bodiesScheduler = new BlockBodiesScheduler();
+
     private CountDownLatch receivedHeadersLatch = new CountDownLatch(0);
     private CountDownLatch receivedBlocksLatch = new CountDownLatch(0);
 
@@ -197,26 +197,31 @@ public class SyncManager {
 
                     if (bReq.getBlockHeaders().size() <= 3) {
                         // new blocks are better to request from the header senders first
-                        // to get more chances to receive block body promptly
+                        // to get more chances to receive block body promptly.
+                        // A busy sender would lose its pending request, its headers are left to the scheduler
                         for (BlockHeaderWrapper blockHeaderWrapper : bReq.getBlockHeaders()) {
                             Channel channel = pool.getByNodeId(blockHeaderWrapper.getNodeId());
-                            if (channel != null) {
+                            if (channel != null && channel.isIdle()) {
                                 channel.getEthHandler().sendGetBlockBodies(singletonList(blockHeaderWrapper));
+                                bodiesScheduler.sent(singletonList(blockHeaderWrapper), channel.getSyncStats());
                             }
                         }
                     }
 
+                    // the fastest peers get the oldest gaps, each one as many bodies as it sends in a second
                     int reqBlocksCounter = 0;
-                    for (SyncQueueIfc.BlocksRequest blocksRequest : bReq.split(100)) {
-                        Channel any = pool.getAnyIdle();
-                        if (any == null) {
-                            logger.debug("blockRetrieveLoop: No IDLE peers found");
-                            break;
-                        } else {
-                            logger.debug("blockRetrieveLoop: Requesting " + blocksRequest.getBlockHeaders().size() + " blocks from " + any.getNode());
-                            any.getEthHandler().sendGetBlockBodies(blocksRequest.getBlockHeaders());
-                            reqBlocksCounter++;
-                        }
+                    List<Channel> idle = pool.getIdleByThroughput();
+                    if (idle.isEmpty()) {
+                        logger.debug("blockRetrieveLoop: No IDLE peers found");
+                    }
+                    for (Channel peer : idle) {
+                        List<BlockHeaderWrapper> headers = bodiesScheduler.select(bReq.getBlockHeaders(), peer.getSyncStats());
+                        if (headers.isEmpty()) break;
+
+                        logger.debug("blockRetrieveLoop: Requesting " + headers.size() + " blocks from " + peer.getNode());
+                        peer.getEthHandler().sendGetBlockBodies(headers);
+                        bodiesScheduler.sent(headers, peer.getSyncStats());
+                        reqBlocksCounter++;
                     }
                     receivedBlocksLatch = new CountDownLatch(max(reqBlocksCounter, 1));
                 } else {
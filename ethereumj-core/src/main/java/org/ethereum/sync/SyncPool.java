@@ -117,6 +117,23 @@ public class SyncPool {
         return null;
     }
 
+    /**
+     * @return idle peers, the fastest block bodies senders first
+     */
+    public synchronized List<Channel> getIdleByThroughput() {
+        List<Channel> idle = new ArrayList<>();
+        for (Channel peer : activePeers) {
+            if (peer.isIdle()) idle.add(peer);
+        }
+        Collections.sort(idle, new Comparator<Channel>() {
+            @Override
+            public int compare(Channel c1, Channel c2) {
+                return Double.compare(c2.getSyncStats().getBodiesThroughput(), c1.getSyncStats().getBodiesThroughput());
+            }
+        });
+        return idle;
+    }
+
     @Nullable
     public synchronized Channel getByNodeId(byte[] nodeId) {
         return channelManager.getActivePeer(nodeId);
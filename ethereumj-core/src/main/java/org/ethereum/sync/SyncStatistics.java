@@ -7,11 +7,29 @@ package org.ethereum.sync;
  * @since 20.08.2015
  */
 public class SyncStatistics {
+
+    // the bodies requested from the peer are expected to arrive in about this time
+    static final long TARGET_RESPONSE_TIME = 1000;
+    static final int MIN_BODIES_REQUEST = 16;
+    static final int MAX_BODIES_REQUEST = 128;
+    static final int DEFAULT_BODIES_REQUEST = 64;
+    // weight of the last response in the averages
+    private static final double ALPHA = 0.3;
+    private static final int MAX_PENALTY = 3;
+
     private long updatedAt;
     private long blocksCount;
     private long headersCount;
     private int headerBunchesCount;
 
+    private long bodiesRequestId;
+    private long bodiesRequestedAt;
+    private int bodiesRequestedCount;
+    private boolean bodiesPending;
+    private double bodiesThroughput; // blocks per second
+    private double bodiesResponseTime; // millis
+    private int penalty;
+
     public SyncStatistics() {
         reset();
     }
@@ -53,4 +71,117 @@ public class SyncStatistics {
     public int getHeaderBunchesCount() {
         return headerBunchesCount;
     }
+
+    public synchronized void bodiesRequested(int count) {
+        bodiesRequested(count, System.currentTimeMillis());
+    }
+
+    synchronized void bodiesRequested(int count, long now) {
+        bodiesRequestId++;
+        bodiesRequestedAt = now;
+        bodiesRequestedCount = count;
+        bodiesPending = true;
+    }
+
+    public synchronized void bodiesReceived(int count) {
+        bodiesReceived(count, System.currentTimeMillis());
+    }
+
+    /**
+     * Updates the peer throughput and response time with the answer to the last bodies request,
+     * the empty answer is penalized
+     */
+    synchronized void bodiesReceived(int count, long now) {
+        if (!bodiesPending) return;
+        bodiesPending = false;
+
+        long elapsed = Math.max(now - bodiesRequestedAt, 1);
+        double throughput = count * 1000d / elapsed;
+        if (bodiesResponseTime == 0) {
+            bodiesResponseTime = elapsed;
+            bodiesThroughput = throughput;
+        } else {
+            bodiesResponseTime += ALPHA * (elapsed - bodiesResponseTime);
+            bodiesThroughput += ALPHA * (throughput - bodiesThroughput);
+        }
+
+        if (count == 0) {
+            penalize();
+        } else if (penalty > 0) {
+            penalty--;
+        }
+    }
+
+    /**
+     * Called when the peer answered the bodies request with the invalid data
+     */
+    public synchronized void bodiesFailed() {
+        bodiesPending = false;
+        penalize();
+    }
+
+    /**
+     * Called when the peer is gone before answering
+     */
+    public synchronized void bodiesCancelled() {
+        bodiesPending = false;
+    }
+
+    private void penalize() {
+        penalty = Math.min(penalty + 1, MAX_PENALTY);
+        bodiesThroughput /= 2;
+    }
+
+    /**
+     * The number of bodies to ask from the peer to get them in about {@link #TARGET_RESPONSE_TIME},
+     * halved for every penalty
+     */
+    public synchronized int getBodiesRequestSize() {
+        int size = bodiesResponseTime == 0 ? DEFAULT_BODIES_REQUEST :
+                (int) (bodiesThroughput * TARGET_RESPONSE_TIME / 1000);
+        size >>= penalty;
+        return Math.max(MIN_BODIES_REQUEST, Math.min(MAX_BODIES_REQUEST, size));
+    }
+
+    /**
+     * Whether the pending bodies request has taken twice as long as expected
+     */
+    synchronized boolean isBodiesRequestLate(long now) {
+        return bodiesPending && now - bodiesRequestedAt > 2 * Math.max(Math.max(
+                expectedDuration(bodiesRequestedCount), bodiesResponseTime), TARGET_RESPONSE_TIME);
+    }
+
+    /**
+     * @return when the peer is expected to answer the pending bodies request [millis],
+     *         when it would answer the new request if there is none
+     */
+    synchronized long getBodiesExpectedAt(long now) {
+        return bodiesPending ? Math.max(bodiesRequestedAt + expectedDuration(bodiesRequestedCount), now) :
+                now + expectedDuration(getBodiesRequestSize());
+    }
+
+    private long expectedDuration(int count) {
+        if (bodiesResponseTime == 0) return TARGET_RESPONSE_TIME;
+        // the peer sending nothing is assumed to send a body per second
+        return (long) (count * 1000 / Math.max(bodiesThroughput, 1));
+    }
+
+    synchronized long getBodiesRequestId() {
+        return bodiesRequestId;
+    }
+
+    synchronized boolean isBodiesPending(long requestId) {
+        return bodiesPending && bodiesRequestId == requestId;
+    }
+
+    /**
+     * @return average bodies throughput [blocks per second]
+     */
+    public synchronized double getBodiesThroughput() {
+        return bodiesThroughput;
+    }
+
+    public synchronized int getPenalty() {
+        return penalty;
+    }
 }
@@ -1,11 +1,15 @@
 package org.ethereum.trie;
 
+import org.ethereum.datasource.KeyIterator;
+import org.ethereum.datasource.KeyIterators;
 import org.ethereum.datasource.KeyValueDataSource;
 import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.StatePruner;
 import org.ethereum.util.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -26,7 +30,10 @@ public class Cache {
 
     private KeyValueDataSource dataSource;
     private Map<ByteArrayWrapper, Node> nodes = new ConcurrentHashMap<>();
+    private TrieNodeCache readCache;
+    private StatePruner pruner;
     private boolean isDirty;
+    private long dirtySize;
     
     public Cache(KeyValueDataSource dataSource) {
         this.dataSource = dataSource;
@@ -43,7 +50,15 @@ public class Cache {
         byte[] enc = value.encode();
         if (enc.length >= 32) {
             byte[] sha = value.hash();
-            this.nodes.put(wrap(sha), new Node(value, true));
+            // reported first: a pending pruning of the same node either completes
+            // before or sees it referenced, so it can't delete the node being inserted
+            if (pruner != null) {
+                pruner.nodeInserted(sha);
+            }
+            Node old = this.nodes.put(wrap(sha), new Node(value, true));
+            if (old == null || !old.isDirty()) {
+                this.dirtySize += sha.length + enc.length;
+            }
             this.isDirty = true;
 
             return sha;
@@ -56,6 +71,18 @@ public class Cache {
         // First check if the key is the cache
         Node node = this.nodes.get(wrappedKey);
         if (node == null) {
+            if (readCache != null && dataSource != null) {
+                // clean nodes are served decoded from the shared cache
+                // and are not kept in the per trie node map
+                Value value = readCache.getValue(key);
+                if (value == null) {
+                    byte[] data = this.dataSource.get(key);
+                    readCache.put(key, data);
+                    value = fromRlpEncoded(data);
+                }
+                return value;
+            }
+
             byte[] data = (this.dataSource == null) ? null : this.dataSource.get(key);
             node = new Node(fromRlpEncoded(data), false);
 
@@ -69,11 +96,43 @@ public class Cache {
         ByteArrayWrapper wrappedKey = wrap(key);
         this.nodes.remove(wrappedKey);
 
+        if (readCache != null) {
+            readCache.remove(key);
+        }
+
         if (dataSource != null) {
             this.dataSource.delete(key);
         }
     }
 
+    /**
+     * Reports the stored node is not referenced by the trie anymore
+     * The node is not removed, it may be still referenced by the previous roots
+     */
+    public void markRemoved(byte[] key) {
+        if (pruner != null) {
+            pruner.nodeRemoved(key);
+        }
+    }
+
+    /**
+     * Removes the nodes from the cache and deletes them from the data source in a single batch
+     */
+    public void deleteBatch(Collection<byte[]> keys) {
+        Map<byte[], byte[]> batch = new HashMap<>();
+        for (byte[] key : keys) {
+            this.nodes.remove(wrap(key));
+            if (readCache != null) {
+                readCache.remove(key);
+            }
+            batch.put(key, null);
+        }
+
+        if (dataSource != null) {
+            this.dataSource.updateBatch(batch);
+        }
+    }
+
     public void commit() {
         // Don't try to commit if it isn't dirty
         if ((dataSource == null) || !this.isDirty) return;
@@ -98,8 +157,15 @@ public class Cache {
 
         this.dataSource.updateBatch(batch);
         this.isDirty = false;
+        this.dirtySize = 0;
         this.nodes.clear();
 
+        if (readCache != null) {
+            for (Map.Entry<byte[], byte[]> entry : batch.entrySet()) {
+                readCache.put(entry.getKey(), entry.getValue());
+            }
+        }
+
         long finish = System.nanoTime();
 
         float flushSize = (float) batchMemorySize / 1048576;
@@ -115,12 +181,20 @@ public class Cache {
             }
         }
         this.isDirty = false;
+        this.dirtySize = 0;
     }
 
     public boolean isDirty() {
         return isDirty;
     }
 
+    /**
+     * @return approximate size in bytes of the encoded nodes not committed yet
+     */
+    public long getDirtySize() {
+        return dirtySize;
+    }
+
     public void setDirty(boolean isDirty) {
         this.isDirty = isDirty;
     }
@@ -129,6 +203,25 @@ public class Cache {
         return nodes;
     }
 
+    /**
+     * Sets the cache of clean nodes which is consulted before going to the data source.
+     * Nodes written on {@link #commit()} are put there as well.
+     */
+    public void setReadCache(TrieNodeCache readCache) {
+        this.readCache = readCache;
+    }
+
+    public TrieNodeCache getReadCache() {
+        return readCache;
+    }
+
+    /**
+     * Sets the pruner which journals the stored nodes inserted to and removed from the trie
+     */
+    public void setPruner(StatePruner pruner) {
+        this.pruner = pruner;
+    }
+
     public KeyValueDataSource getDb() {
         return dataSource;
     }
@@ -156,8 +249,11 @@ public class Cache {
                 }
             }
         } else {
-            for (byte[] key : this.dataSource.keys()) {
-                rows.put(key, this.dataSource.get(key));
+            try (KeyIterator keys = KeyIterators.all(this.dataSource)) {
+                while (keys.hasNext()) {
+                    byte[] key = keys.next();
+                    rows.put(key, this.dataSource.get(key));
+                }
             }
             this.dataSource.close();
         }
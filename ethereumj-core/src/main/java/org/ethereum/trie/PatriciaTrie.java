@@ -0,0 +1,588 @@
+package org.ethereum.trie;
+
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPElement;
+import org.ethereum.util.RLPList;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Merkle Patricia trie built of typed nodes.
+ *
+ * Unlike {@link TrieImpl} which keeps generic {@code Object}/{@link org.ethereum.util.Value}
+ * trees and encodes and hashes every touched node on each update, the nodes here are
+ * immutable {@link BranchNode}, {@link ExtensionNode} and {@link LeafNode} instances
+ * holding plain byte arrays. The RLP encoding and the hash of a node are calculated
+ * lazily, only when the root hash is requested or the trie is synced, and are cached
+ * in the node, so the unchanged subtrees are never encoded twice.
+ *
+ * The node encoding is the same as for {@link TrieImpl}, i.e. both
+ * implementations produce identical root hashes and can share the storage.
+ *
+ * <b>Note:</b> the data isn't persisted unless `sync` is explicitly called.
+ */
+public class PatriciaTrie implements Trie {
+
+    private static final int HASH_SIZE = 32;
+
+    private static final byte[] EMPTY_ELEMENT = RLP.encodeElement(EMPTY_BYTE_ARRAY);
+
+    private abstract static class TrieNode {
+        byte[] encoded;
+        byte[] hash;
+        /* the node is either loaded from or already written to the data source */
+        boolean stored;
+
+        abstract byte[] encode();
+
+        byte[] getEncoded() {
+            if (encoded == null) {
+                encoded = encode();
+            }
+            return encoded;
+        }
+
+        byte[] getHash() {
+            if (hash == null) {
+                hash = sha3(getEncoded());
+            }
+            return hash;
+        }
+    }
+
+    private static final class LeafNode extends TrieNode {
+        final byte[] path;
+        final byte[] value;
+
+        LeafNode(byte[] path, byte[] value) {
+            this.path = path;
+            this.value = value;
+        }
+
+        @Override
+        byte[] encode() {
+            return RLP.encodeList(RLP.encodeElement(packPath(path, true)), encodeValue(value));
+        }
+
+        @Override
+        public String toString() {
+            return "[" + Hex.toHexString(path) + ", " + Hex.toHexString(value) + "]";
+        }
+    }
+
+    private static final class ExtensionNode extends TrieNode {
+        final byte[] path;
+        final TrieNode child;
+
+        ExtensionNode(byte[] path, TrieNode child) {
+            this.path = path;
+            this.child = child;
+        }
+
+        @Override
+        byte[] encode() {
+            return RLP.encodeList(RLP.encodeElement(packPath(path, false)), encodeRef(child));
+        }
+
+        @Override
+        public String toString() {
+            return "[" + Hex.toHexString(path) + ", " + child + "]";
+        }
+    }
+
+    private static final class BranchNode extends TrieNode {
+        final TrieNode[] children;
+        final byte[] value;
+
+        BranchNode(TrieNode[] children, byte[] value) {
+            this.children = children;
+            this.value = value;
+        }
+
+        @Override
+        byte[] encode() {
+            byte[][] items = new byte[17][];
+            for (int i = 0; i < 16; i++) {
+                items[i] = encodeRef(children[i]);
+            }
+            items[16] = value == null ? EMPTY_ELEMENT : encodeValue(value);
+            return RLP.encodeList(items);
+        }
+
+        int size() {
+            int size = value == null ? 0 : 1;
+            for (TrieNode child : children) {
+                if (child != null) ++size;
+            }
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            for (TrieNode child : children) {
+                sb.append(child == null ? "" : child.toString()).append(", ");
+            }
+            return sb.append(value == null ? "" : Hex.toHexString(value)).append("]").toString();
+        }
+    }
+
+    /**
+     * Reference to a node which is not loaded from the data source yet
+     */
+    private static final class HashNode extends TrieNode {
+        TrieNode resolved;
+
+        HashNode(byte[] hash) {
+            this.hash = hash;
+            this.stored = true;
+        }
+
+        @Override
+        byte[] encode() {
+            throw new IllegalStateException("Node is not resolved: " + Hex.toHexString(hash));
+        }
+
+        @Override
+        public String toString() {
+            return Hex.toHexString(hash);
+        }
+    }
+
+    private final KeyValueDataSource dataSource;
+
+    private TrieNode root;
+    private TrieNode prevRoot;
+
+    public PatriciaTrie() {
+        this(null);
+    }
+
+    public PatriciaTrie(KeyValueDataSource dataSource) {
+        this(dataSource, EMPTY_TRIE_HASH);
+    }
+
+    public PatriciaTrie(KeyValueDataSource dataSource, byte[] root) {
+        this.dataSource = dataSource;
+        setRoot(root);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        byte[] nibbles = toNibbles(key);
+        TrieNode node = root;
+        int pos = 0;
+
+        while (node != null) {
+            node = resolve(node);
+            if (node instanceof LeafNode) {
+                LeafNode leaf = (LeafNode) node;
+                return matchingLength(leaf.path, nibbles, pos) == leaf.path.length &&
+                        pos + leaf.path.length == nibbles.length ? leaf.value : EMPTY_BYTE_ARRAY;
+            } else if (node instanceof ExtensionNode) {
+                ExtensionNode ext = (ExtensionNode) node;
+                if (matchingLength(ext.path, nibbles, pos) < ext.path.length) break;
+                pos += ext.path.length;
+                node = ext.child;
+            } else {
+                BranchNode branch = (BranchNode) node;
+                if (pos == nibbles.length) {
+                    return branch.value == null ? EMPTY_BYTE_ARRAY : branch.value;
+                }
+                node = branch.children[nibbles[pos++]];
+            }
+        }
+
+        return EMPTY_BYTE_ARRAY;
+    }
+
+    @Override
+    public void update(byte[] key, byte[] value) {
+        if (key == null)
+            throw new NullPointerException("Key should not be blank");
+
+        if (value == null || value.length == 0) {
+            delete(key);
+        } else {
+            root = insert(root, toNibbles(key), 0, value);
+        }
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        root = delete(root, toNibbles(key), 0);
+    }
+
+    @Override
+    public byte[] getRootHash() {
+        if (root == null) return EMPTY_TRIE_HASH;
+        return root.getHash();
+    }
+
+    @Override
+    public void setRoot(byte[] root) {
+        if (root == null || root.length == 0 || Arrays.equals(root, EMPTY_TRIE_HASH)) {
+            this.root = null;
+        } else {
+            this.root = new HashNode(root);
+        }
+        this.prevRoot = this.root;
+    }
+
+    @Override
+    public void sync() {
+        if (dataSource != null && root != null) {
+            Map<byte[], byte[]> batch = new HashMap<>();
+            collectNew(root, batch);
+            // the root is always stored to be available by its hash
+            if (!root.stored) {
+                batch.put(root.getHash(), root.getEncoded());
+                root.stored = true;
+            }
+            if (!batch.isEmpty()) {
+                dataSource.updateBatch(batch);
+            }
+        }
+        prevRoot = root;
+    }
+
+    @Override
+    public void undo() {
+        root = prevRoot;
+    }
+
+    @Override
+    public String getTrieDump() {
+        StringBuilder sb = new StringBuilder("root: " + Hex.toHexString(getRootHash()) + "\n");
+        if (root != null) {
+            dump(root, sb);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean validate() {
+        if (root == null) return true;
+        try {
+            resolve(root);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean equals(Object trie) {
+        if (this == trie) return true;
+        return trie instanceof Trie && Arrays.equals(this.getRootHash(), ((Trie) trie).getRootHash());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(getRootHash());
+    }
+
+    /****************************************
+     *          Private functions           *
+     ****************************************/
+
+    private TrieNode insert(TrieNode node, byte[] key, int pos, byte[] value) {
+        if (node == null) {
+            return new LeafNode(Arrays.copyOfRange(key, pos, key.length), value);
+        }
+
+        node = resolve(node);
+        if (node instanceof BranchNode) {
+            BranchNode branch = (BranchNode) node;
+            if (pos == key.length) {
+                if (branch.value != null && Arrays.equals(branch.value, value)) return branch;
+                return new BranchNode(branch.children, value);
+            }
+            TrieNode[] children = branch.children.clone();
+            children[key[pos]] = insert(children[key[pos]], key, pos + 1, value);
+            return new BranchNode(children, branch.value);
+        }
+
+        byte[] path;
+        if (node instanceof LeafNode) {
+            LeafNode leaf = (LeafNode) node;
+            path = leaf.path;
+            int common = matchingLength(path, key, pos);
+            if (common == path.length && pos + common == key.length) {
+                if (Arrays.equals(leaf.value, value)) return leaf;
+                return new LeafNode(path, value);
+            }
+
+            TrieNode[] children = new TrieNode[16];
+            byte[] branchValue = null;
+            if (common == path.length) {
+                branchValue = leaf.value;
+            } else {
+                children[path[common]] = new LeafNode(Arrays.copyOfRange(path, common + 1, path.length), leaf.value);
+            }
+            return split(path, common, children, branchValue, key, pos, value);
+        } else {
+            ExtensionNode ext = (ExtensionNode) node;
+            path = ext.path;
+            int common = matchingLength(path, key, pos);
+            if (common == path.length) {
+                return new ExtensionNode(path, insert(ext.child, key, pos + common, value));
+            }
+
+            TrieNode[] children = new TrieNode[16];
+            children[path[common]] = common + 1 == path.length ? ext.child :
+                    new ExtensionNode(Arrays.copyOfRange(path, common + 1, path.length), ext.child);
+            return split(path, common, children, null, key, pos, value);
+        }
+    }
+
+    /**
+     * Puts the new value into the branch created at the point where the key
+     * diverges from the node path and prepends the common part of the path
+     */
+    private TrieNode split(byte[] path, int common, TrieNode[] children, byte[] branchValue,
+                           byte[] key, int pos, byte[] value) {
+        int keyPos = pos + common;
+        if (keyPos == key.length) {
+            branchValue = value;
+        } else {
+            children[key[keyPos]] = new LeafNode(Arrays.copyOfRange(key, keyPos + 1, key.length), value);
+        }
+
+        BranchNode branch = new BranchNode(children, branchValue);
+        return common == 0 ? branch : new ExtensionNode(Arrays.copyOf(path, common), branch);
+    }
+
+    private TrieNode delete(TrieNode node, byte[] key, int pos) {
+        if (node == null) return null;
+
+        node = resolve(node);
+        if (node instanceof LeafNode) {
+            LeafNode leaf = (LeafNode) node;
+            boolean found = matchingLength(leaf.path, key, pos) == leaf.path.length &&
+                    pos + leaf.path.length == key.length;
+            return found ? null : leaf;
+        } else if (node instanceof ExtensionNode) {
+            ExtensionNode ext = (ExtensionNode) node;
+            if (matchingLength(ext.path, key, pos) < ext.path.length) return ext;
+
+            TrieNode child = delete(ext.child, key, pos + ext.path.length);
+            if (child == ext.child) return ext;
+            return prependPath(ext.path, child);
+        } else {
+            BranchNode branch = (BranchNode) node;
+            TrieNode[] children = branch.children;
+            byte[] value = branch.value;
+            if (pos == key.length) {
+                if (value == null) return branch;
+                value = null;
+            } else {
+                TrieNode child = delete(children[key[pos]], key, pos + 1);
+                if (child == children[key[pos]]) return branch;
+                children = children.clone();
+                children[key[pos]] = child;
+            }
+
+            BranchNode newBranch = new BranchNode(children, value);
+            if (newBranch.size() > 1) return newBranch;
+
+            // a single item is left: the branch collapses
+            if (value != null) {
+                return new LeafNode(EMPTY_BYTE_ARRAY, value);
+            }
+            for (int i = 0; i < 16; i++) {
+                if (children[i] != null) {
+                    return prependPath(new byte[]{(byte) i}, children[i]);
+                }
+            }
+            return null;
+        }
+    }
+
+    private TrieNode prependPath(byte[] path, TrieNode node) {
+        if (node == null) return null;
+
+        TrieNode resolved = resolve(node);
+        if (resolved instanceof LeafNode) {
+            LeafNode leaf = (LeafNode) resolved;
+            return new LeafNode(concat(path, leaf.path), leaf.value);
+        } else if (resolved instanceof ExtensionNode) {
+            ExtensionNode ext = (ExtensionNode) resolved;
+            return new ExtensionNode(concat(path, ext.path), ext.child);
+        } else {
+            return new ExtensionNode(path, node);
+        }
+    }
+
+    private TrieNode resolve(TrieNode node) {
+        if (!(node instanceof HashNode)) return node;
+
+        HashNode hashNode = (HashNode) node;
+        if (hashNode.resolved == null) {
+            byte[] data = dataSource == null ? null : dataSource.get(hashNode.hash);
+            if (data == null) {
+                throw new RuntimeException("Trie node not found: " + Hex.toHexString(hashNode.hash));
+            }
+            TrieNode resolved = decode((RLPList) RLP.decode2(data).get(0));
+            resolved.encoded = data;
+            resolved.hash = hashNode.hash;
+            resolved.stored = true;
+            hashNode.resolved = resolved;
+        }
+        return hashNode.resolved;
+    }
+
+    private static TrieNode decode(RLPList list) {
+        if (list.size() == 2) {
+            byte[] packed = list.get(0).getRLPData();
+            boolean leaf = (packed[0] & 0x20) != 0;
+            byte[] path = unpackPath(packed);
+            if (leaf) {
+                byte[] value = list.get(1).getRLPData();
+                return new LeafNode(path, value == null ? EMPTY_BYTE_ARRAY : value);
+            } else {
+                return new ExtensionNode(path, decodeRef(list.get(1)));
+            }
+        } else {
+            TrieNode[] children = new TrieNode[16];
+            for (int i = 0; i < 16; i++) {
+                children[i] = decodeRef(list.get(i));
+            }
+            return new BranchNode(children, list.get(16).getRLPData());
+        }
+    }
+
+    private static TrieNode decodeRef(RLPElement element) {
+        if (element instanceof RLPList) {
+            // the node is embedded into its parent
+            TrieNode node = decode((RLPList) element);
+            node.encoded = element.getRLPData();
+            node.stored = true;
+            return node;
+        }
+        byte[] data = element.getRLPData();
+        return data == null ? null : new HashNode(data);
+    }
+
+    /**
+     * Same as {@link RLP#encode(Object)} used by {@link TrieImpl}:
+     * a single 0x80 byte is not prefixed, keep it for the hashes to match
+     */
+    private static byte[] encodeValue(byte[] value) {
+        if (value.length == 1 && value[0] == (byte) 0x80) return value;
+        return RLP.encodeElement(value);
+    }
+
+    /**
+     * Nodes shorter than the hash are embedded into the parent,
+     * others are referenced by the hash
+     */
+    private static byte[] encodeRef(TrieNode node) {
+        if (node == null) return EMPTY_ELEMENT;
+        if (node instanceof HashNode) {
+            HashNode hashNode = (HashNode) node;
+            if (hashNode.resolved == null) return RLP.encodeElement(hashNode.hash);
+            node = hashNode.resolved;
+        }
+        byte[] encoded = node.getEncoded();
+        return encoded.length < HASH_SIZE ? encoded : RLP.encodeElement(node.getHash());
+    }
+
+    private void collectNew(TrieNode node, Map<byte[], byte[]> batch) {
+        if (node == null || node.stored) return;
+
+        if (node instanceof BranchNode) {
+            for (TrieNode child : ((BranchNode) node).children) {
+                collectNew(child, batch);
+            }
+        } else if (node instanceof ExtensionNode) {
+            collectNew(((ExtensionNode) node).child, batch);
+        }
+
+        if (node.getEncoded().length >= HASH_SIZE) {
+            batch.put(node.getHash(), node.getEncoded());
+        }
+        node.stored = true;
+    }
+
+    private void dump(TrieNode node, StringBuilder sb) {
+        node = resolve(node);
+        if (node.getEncoded().length >= HASH_SIZE) {
+            sb.append(Hex.toHexString(node.getHash())).append(" ==> ").append(node).append("\n");
+        }
+        if (node instanceof BranchNode) {
+            for (TrieNode child : ((BranchNode) node).children) {
+                if (child != null) dump(child, sb);
+            }
+        } else if (node instanceof ExtensionNode) {
+            dump(((ExtensionNode) node).child, sb);
+        }
+    }
+
+    private static byte[] toNibbles(byte[] key) {
+        byte[] nibbles = new byte[key.length * 2];
+        for (int i = 0; i < key.length; i++) {
+            nibbles[i * 2] = (byte) ((key[i] >> 4) & 0x0F);
+            nibbles[i * 2 + 1] = (byte) (key[i] & 0x0F);
+        }
+        return nibbles;
+    }
+
+    /**
+     * Hex prefix encoding of the node path
+     */
+    private static byte[] packPath(byte[] path, boolean leaf) {
+        int odd = path.length & 1;
+        byte[] packed = new byte[path.length / 2 + 1];
+        int flag = (leaf ? 2 : 0) + odd;
+
+        int i = 0;
+        if (odd == 1) {
+            packed[0] = (byte) (flag << 4 | path[0]);
+            i = 1;
+        } else {
+            packed[0] = (byte) (flag << 4);
+        }
+        for (int j = 1; i < path.length; i += 2, j++) {
+            packed[j] = (byte) (path[i] << 4 | path[i + 1]);
+        }
+        return packed;
+    }
+
+    private static byte[] unpackPath(byte[] packed) {
+        boolean odd = (packed[0] & 0x10) != 0;
+        byte[] path = new byte[(packed.length - 1) * 2 + (odd ? 1 : 0)];
+
+        int i = 0;
+        if (odd) {
+            path[i++] = (byte) (packed[0] & 0x0F);
+        }
+        for (int j = 1; j < packed.length; j++) {
+            path[i++] = (byte) ((packed[j] >> 4) & 0x0F);
+            path[i++] = (byte) (packed[j] & 0x0F);
+        }
+        return path;
+    }
+
+    private static int matchingLength(byte[] path, byte[] key, int pos) {
+        int i = 0;
+        while (i < path.length && pos + i < key.length && path[i] == key[pos + i]) {
+            ++i;
+        }
+        return i;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] ret = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, ret, a.length, b.length);
+        return ret;
+    }
+}
@@ -0,0 +1,40 @@
+package org.ethereum.trie;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Fork/join pool shared by the tasks which encode and hash independent
+ * tries (e.g. the contract storage tries) in parallel.
+ *
+ * The pool threads are daemons and are created on demand, so the pool
+ * costs nothing until the amount of dirty tries is large enough to use it
+ */
+public class TrieHashPool {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Runs the tasks in the pool and waits for all of them to complete.
+     * The first task failure is rethrown to the caller
+     */
+    public static void invokeAll(List<Callable<Object>> tasks) {
+        List<Future<Object>> futures = pool.invokeAll(tasks);
+        for (Future<Object> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+}
@@ -232,6 +232,8 @@ public class TrieImpl implements Trie {
         }
 
         Value currentNode = this.getNode(node);
+        // the node is going to be replaced
+        this.markRemoved(node);
 
         // Check for "special" 2 slice type node
         if (currentNode.length() == PAIR_SIZE) {
@@ -302,13 +304,17 @@ public class TrieImpl implements Trie {
 
             // Matching key pair (ie. there's already an object with this key)
             if (Arrays.equals(k, key)) {
+                this.markRemoved(node);
                 return "";
             } else if (Arrays.equals(copyOfRange(key, 0, k.length), k)) {
+                this.markRemoved(node);
                 Object hash = this.delete(v, copyOfRange(key, k.length, key.length));
                 Value child = this.getNode(hash);
 
                 Object newNode;
                 if (child.length() == PAIR_SIZE) {
+                    // the child is merged into the new node
+                    this.markRemoved(hash);
                     byte[] newKey = concatenate(k, unpackToNibbles(child.get(0).asBytes()));
                     newNode = new Object[]{packNibbles(newKey), child.get(1).asObj()};
                 } else {
@@ -319,6 +325,8 @@ public class TrieImpl implements Trie {
                 return node;
             }
         } else {
+            this.markRemoved(node);
+
             // Copy the current node over to a new node
             Object[] itemList = copyNode(currentNode);
 
@@ -342,6 +350,8 @@ public class TrieImpl implements Trie {
             } else if (amount >= 0) {
                 Value child = this.getNode(itemList[amount]);
                 if (child.length() == PAIR_SIZE) {
+                    // the child is merged into the new node
+                    this.markRemoved(itemList[amount]);
                     key = concatenate(new byte[]{amount}, unpackToNibbles(child.get(0).asBytes()));
                     newNode = new Object[]{packNibbles(key), child.get(1).asObj()};
                 } else if (child.length() == LIST_SIZE) {
@@ -381,6 +391,16 @@ public class TrieImpl implements Trie {
         return this.cache.put(node);
     }
 
+    /**
+     * Reports the node to the cache as not referenced anymore
+     * if it is a hash reference to the stored node
+     */
+    private void markRemoved(Object node) {
+        if (node instanceof byte[] && ((byte[]) node).length == 32) {
+            this.cache.markRemoved((byte[]) node);
+        }
+    }
+
     private boolean isEmptyNode(Object node) {
         Value n = new Value(node);
         return (node == null || (n.isString() && (n.asString().isEmpty() || n.get(0).isNull())) || n.length() == 0);
@@ -418,6 +438,7 @@ public class TrieImpl implements Trie {
     // Returns a copy of this trie
     public TrieImpl copy() {
         TrieImpl trie = new TrieImpl(this.cache.getDb(), this.root);
+        trie.cache.setReadCache(this.cache.getReadCache());
         for (ByteArrayWrapper key : this.cache.getNodes().keySet()) {
             Node node = this.cache.getNodes().get(key);
             trie.cache.getNodes().put(key, node.copy());
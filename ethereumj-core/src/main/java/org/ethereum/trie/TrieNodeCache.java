@@ -0,0 +1,171 @@
+package org.ethereum.trie;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * Bounded read cache of clean (already persisted) trie nodes.
+ *
+ * Trie nodes are addressed by the hash of their RLP encoding, so a single
+ * instance can safely be shared between the world state trie and all contract
+ * storage tries regardless of the data source they are backed by.
+ * Unlike {@link Cache} the content survives {@link Cache#commit()} so the blocks
+ * imported right after a flush don't start with a cold cache.
+ *
+ * Nodes are kept decoded after the first hit, so the hot ones are not decoded on every access.
+ * The budget counts the decoded form as large as the encoded one.
+ *
+ * Entries are evicted in LRU order once the memory budget is exceeded
+ */
+@Component
+public class TrieNodeCache {
+
+    /* rough per entry overhead: map entry, wrapper, two arrays headers */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static TrieNodeCache inst;
+
+    public static synchronized TrieNodeCache getDefault() {
+        if (inst == null && SystemProperties.getDefault() != null) {
+            inst = new TrieNodeCache(SystemProperties.getDefault());
+        }
+        return inst;
+    }
+
+    private final long maxMemory;
+    private long memory = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static class Entry {
+        final byte[] rlp;
+        Value value;
+
+        Entry(byte[] rlp) {
+            this.rlp = rlp;
+        }
+    }
+
+    private final LinkedHashMap<ByteArrayWrapper, Entry> nodes = new LinkedHashMap<>(1024, 0.75f, true);
+
+    @Autowired
+    public TrieNodeCache(SystemProperties config) {
+        this(config.cacheTrieNodesSize() * 1024L * 1024L);
+    }
+
+    public TrieNodeCache(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * @return RLP encoded node or null if the node is not cached
+     */
+    public synchronized byte[] get(byte[] hash) {
+        Entry entry = lookup(hash);
+        return entry == null ? null : entry.rlp;
+    }
+
+    /**
+     * @return decoded node or null if the node is not cached,
+     *         the returned value is shared and must not be modified
+     */
+    public synchronized Value getValue(byte[] hash) {
+        Entry entry = lookup(hash);
+        if (entry == null) return null;
+
+        if (entry.value == null) {
+            // decoded under the lock, so the other threads see the complete value
+            Value value = Value.fromRlpEncoded(entry.rlp);
+            value.decode();
+            entry.value = value;
+        }
+        return entry.value;
+    }
+
+    private Entry lookup(byte[] hash) {
+        Entry entry = nodes.get(wrap(hash));
+        if (entry == null) {
+            ++misses;
+        } else {
+            ++hits;
+        }
+        return entry;
+    }
+
+    public synchronized void put(byte[] hash, byte[] rlp) {
+        if (maxMemory <= 0 || rlp == null || rlp.length == 0) return;
+
+        Entry old = nodes.put(wrap(hash), new Entry(rlp));
+        if (old != null) {
+            memory -= entrySize(hash, old.rlp);
+        }
+        memory += entrySize(hash, rlp);
+
+        Iterator<Map.Entry<ByteArrayWrapper, Entry>> it = nodes.entrySet().iterator();
+        while (memory > maxMemory && it.hasNext()) {
+            Map.Entry<ByteArrayWrapper, Entry> eldest = it.next();
+            memory -= entrySize(eldest.getKey().getData(), eldest.getValue().rlp);
+            it.remove();
+            ++evictions;
+        }
+    }
+
+    public synchronized void remove(byte[] hash) {
+        Entry old = nodes.remove(wrap(hash));
+        if (old != null) {
+            memory -= entrySize(hash, old.rlp);
+        }
+    }
+
+    public synchronized void clear() {
+        nodes.clear();
+        memory = 0;
+    }
+
+    private static long entrySize(byte[] hash, byte[] rlp) {
+        return hash.length + 2 * rlp.length + ENTRY_OVERHEAD;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return String.format("TrieNodeCache: %d nodes, %.2f/%.2f MB, hits: %d, misses: %d (%.1f%% hit rate), evictions: %d",
+                nodes.size(), memory / 1048576d, maxMemory / 1048576d, hits, misses,
+                total == 0 ? 0d : hits * 100d / total, evictions);
+    }
+}
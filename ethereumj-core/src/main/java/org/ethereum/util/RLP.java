@@ -476,6 +476,55 @@ public class RLP {
         fullTraverse(msgData, 0, startPos, startPos + 1, 1, rlpList);
         return rlpList.get(0);
     }
+
+    /**
+     * Splits the top level list into the encodings of its elements
+     * without decoding the elements themselves
+     *
+     * @param msgData - raw RLP data of a list
+     * @return list of the raw RLP encoded elements
+     */
+    public static List<byte[]> decodeListItems(byte[] msgData) {
+        int prefix = msgData[0] & 0xFF;
+        if (prefix < OFFSET_SHORT_LIST) {
+            throw new RuntimeException("RLP list expected, prefix: " + prefix);
+        }
+        int pos = prefix > OFFSET_LONG_LIST ? 1 + prefix - OFFSET_LONG_LIST : 1;
+        int end = nextElementEnd(msgData, 0);
+
+        List<byte[]> items = new ArrayList<>();
+        while (pos < end) {
+            int next = nextElementEnd(msgData, pos);
+            if (next > end) {
+                throw new RuntimeException("RLP element exceeds the list bounds, pos: " + pos);
+            }
+            items.add(copyOfRange(msgData, pos, next));
+            pos = next;
+        }
+        return items;
+    }
+
+    private static int nextElementEnd(byte[] msgData, int pos) {
+        int prefix = msgData[pos] & 0xFF;
+        int end;
+        if (prefix > OFFSET_LONG_LIST) {
+            int lengthOfLength = prefix - OFFSET_LONG_LIST;
+            end = pos + 1 + lengthOfLength + calcLength(lengthOfLength, msgData, pos);
+        } else if (prefix >= OFFSET_SHORT_LIST) {
+            end = pos + 1 + prefix - OFFSET_SHORT_LIST;
+        } else if (prefix > OFFSET_LONG_ITEM) {
+            int lengthOfLength = prefix - OFFSET_LONG_ITEM;
+            end = pos + 1 + lengthOfLength + calcLength(lengthOfLength, msgData, pos);
+        } else if (prefix >= OFFSET_SHORT_ITEM) {
+            end = pos + 1 + prefix - OFFSET_SHORT_ITEM;
+        } else {
+            end = pos + 1;
+        }
+        if (end > msgData.length || end <= pos) {
+            throw new RuntimeException("RLP element exceeds the data bounds, pos: " + pos);
+        }
+        return end;
+    }
     /**
      * Get exactly one message payload
      */
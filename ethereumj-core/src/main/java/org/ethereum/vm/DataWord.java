@@ -55,11 +55,13 @@ public class DataWord implements Comparable<DataWord> {
         this(wrappedData.getData());
     }
 
+    /**
+     * The data is copied, the arithmetic is done in place
+     * so the word must not share the array with its source
+     */
     public DataWord(byte[] data) {
         if (data == null)
             this.data = ByteUtil.EMPTY_BYTE_ARRAY;
-        else if (data.length == 32)
-            this.data = data;
         else if (data.length <= 32)
             System.arraycopy(data, 0, this.data, 32 - data.length, data.length);
         else
@@ -204,23 +206,47 @@ public class DataWord implements Comparable<DataWord> {
     }
 
     public void bnot() {
-        if (this.isZero()) {
-            this.data = ByteUtil.copyToArray(MAX_VALUE);
-            return;
+        for (int i = 0; i < this.data.length; ++i) {
+            this.data[i] = (byte) ~this.data[i];
+        }
+    }
+
+    // The arithmetic below works on the 8 x 32-bit limbs of the words, the least
+    // significant limb first, and writes the result back to the data in place
+
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private static int[] toLimbs(byte[] data, int[] limbs) {
+        for (int i = 0; i < 8; i++) {
+            int pos = 28 - i * 4;
+            limbs[i] = (data[pos] << 24) | ((data[pos + 1] & 0xFF) << 16) |
+                    ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+        }
+        return limbs;
+    }
+
+    private static int[] toLimbs(byte[] data) {
+        return toLimbs(data, new int[8]);
+    }
+
+    private void setLimbs(int[] limbs) {
+        for (int i = 0; i < 8; i++) {
+            int pos = 28 - i * 4;
+            int v = limbs[i];
+            data[pos] = (byte) (v >>> 24);
+            data[pos + 1] = (byte) (v >>> 16);
+            data[pos + 2] = (byte) (v >>> 8);
+            data[pos + 3] = (byte) v;
         }
-        this.data = ByteUtil.copyToArray(MAX_VALUE.subtract(this.value()));
     }
 
-    // By   : Holger
-    // From : http://stackoverflow.com/a/24023466/459349
     public void add(DataWord word) {
-        byte[] result = new byte[32];
-        for (int i = 31, overflow = 0; i >= 0; i--) {
-            int v = (this.data[i] & 0xff) + (word.data[i] & 0xff) + overflow;
-            result[i] = (byte) v;
-            overflow = v >>> 8;
+        int carry = 0;
+        for (int i = 31; i >= 0; i--) {
+            int v = (this.data[i] & 0xff) + (word.data[i] & 0xff) + carry;
+            this.data[i] = (byte) v;
+            carry = v >>> 8;
         }
-        this.data = result;
     }
 
     // old add-method with BigInteger quick hack
@@ -229,15 +255,38 @@ public class DataWord implements Comparable<DataWord> {
         this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
     }
 
-    // TODO: mul can be done in more efficient way
-    // TODO:     with shift left shift right trick
-    // TODO      without BigInteger quick hack
+    public void sub(DataWord word) {
+        int borrow = 0;
+        for (int i = 31; i >= 0; i--) {
+            int v = (this.data[i] & 0xff) - (word.data[i] & 0xff) - borrow;
+            this.data[i] = (byte) v;
+            borrow = v < 0 ? 1 : 0;
+        }
+    }
+
     public void mul(DataWord word) {
-        BigInteger result = value().multiply(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        setLimbs(mul(toLimbs(data), toLimbs(word.data), 8));
+    }
+
+    /**
+     * @return the lowest [size] limbs of the product
+     */
+    private static int[] mul(int[] a, int[] b, int size) {
+        int[] r = new int[size];
+        for (int i = 0; i < a.length && i < size; i++) {
+            long ai = a[i] & MASK;
+            if (ai == 0) continue;
+            long carry = 0;
+            for (int j = 0; j < b.length && i + j < size; j++) {
+                long t = ai * (b[j] & MASK) + (r[i + j] & MASK) + carry;
+                r[i + j] = (int) t;
+                carry = t >>> 32;
+            }
+            if (i + b.length < size) r[i + b.length] = (int) carry;
+        }
+        return r;
     }
 
-    // TODO: improve with no BigInteger
     public void div(DataWord word) {
 
         if (word.isZero()) {
@@ -245,11 +294,11 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().divide(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] q = new int[8];
+        divMod(toLimbs(data), toLimbs(word.data), q, null);
+        setLimbs(q);
     }
 
-    // TODO: improve with no BigInteger
     public void sDiv(DataWord word) {
 
         if (word.isZero()) {
@@ -257,23 +306,42 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = sValue().divide(word.sValue());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
-    }
+        boolean negative = this.isNegative() != word.isNegative();
+        int[] u = toLimbs(data);
+        int[] v = toLimbs(word.data);
+        if (this.isNegative()) negate(u);
+        if (word.isNegative()) negate(v);
 
-    // TODO: improve with no BigInteger
-    public void sub(DataWord word) {
-        BigInteger result = value().subtract(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] q = new int[8];
+        divMod(u, v, q, null);
+        if (negative) negate(q);
+        setLimbs(q);
     }
 
-    // TODO: improve with no BigInteger
     public void exp(DataWord word) {
-        BigInteger result = value().modPow(word.value(), _2_256);
-        this.data = ByteUtil.copyToArray(result);
+        int[] base = toLimbs(data);
+        int[] result = new int[8];
+        result[0] = 1;
+
+        int bits = word.bitLength();
+        for (int i = bits - 1; i >= 0; i--) {
+            result = mul(result, result, 8);
+            if ((word.data[31 - i / 8] & (1 << (i % 8))) != 0) {
+                result = mul(result, base, 8);
+            }
+        }
+        setLimbs(result);
+    }
+
+    private int bitLength() {
+        for (int i = 0; i < 32; i++) {
+            if (data[i] != 0) {
+                return (31 - i) * 8 + 32 - Integer.numberOfLeadingZeros(data[i] & 0xFF);
+            }
+        }
+        return 0;
     }
 
-    // TODO: improve with no BigInteger
     public void mod(DataWord word) {
 
         if (word.isZero()) {
@@ -281,8 +349,9 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().mod(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] r = new int[8];
+        divMod(toLimbs(data), toLimbs(word.data), null, r);
+        setLimbs(r);
     }
 
     public void sMod(DataWord word) {
@@ -292,10 +361,16 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = sValue().abs().mod(word.sValue().abs());
-        result = (sValue().signum() == -1) ? result.negate() : result;
+        boolean negative = this.isNegative();
+        int[] u = toLimbs(data);
+        int[] v = toLimbs(word.data);
+        if (this.isNegative()) negate(u);
+        if (word.isNegative()) negate(v);
 
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] r = new int[8];
+        divMod(u, v, null, r);
+        if (negative) negate(r);
+        setLimbs(r);
     }
 
     public void addmod(DataWord word1, DataWord word2) {
@@ -304,8 +379,20 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().add(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] a = toLimbs(data);
+        int[] b = toLimbs(word1.data);
+        int[] sum = new int[9];
+        long carry = 0;
+        for (int i = 0; i < 8; i++) {
+            long t = (a[i] & MASK) + (b[i] & MASK) + carry;
+            sum[i] = (int) t;
+            carry = t >>> 32;
+        }
+        sum[8] = (int) carry;
+
+        int[] r = new int[8];
+        divMod(sum, toLimbs(word2.data), null, r);
+        setLimbs(r);
     }
 
     public void mulmod(DataWord word1, DataWord word2) {
@@ -315,8 +402,126 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().multiply(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] r = new int[8];
+        divMod(mul(toLimbs(data), toLimbs(word1.data), 16), toLimbs(word2.data), null, r);
+        setLimbs(r);
+    }
+
+    /**
+     * Two's complement negation of the limbs in place
+     */
+    private static void negate(int[] limbs) {
+        long carry = 1;
+        for (int i = 0; i < limbs.length; i++) {
+            long t = (~limbs[i] & MASK) + carry;
+            limbs[i] = (int) t;
+            carry = t >>> 32;
+        }
+    }
+
+    private static int significantLimbs(int[] limbs) {
+        int n = limbs.length;
+        while (n > 0 && limbs[n - 1] == 0) n--;
+        return n;
+    }
+
+    /**
+     * Unsigned division of the dividend by the non zero divisor (Knuth, algorithm D),
+     * the quotient and the remainder limbs are stored to q and r when they are not null.
+     * The quotient is truncated to the q length, r should be as long as the divisor
+     */
+    private static void divMod(int[] u, int[] v, int[] q, int[] r) {
+        int m = significantLimbs(u);
+        int n = significantLimbs(v);
+
+        if (m < n) {
+            if (r != null) System.arraycopy(u, 0, r, 0, Math.min(u.length, r.length));
+            return;
+        }
+
+        if (n == 1) {
+            long d = v[0] & MASK;
+            long rem = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                long t = (rem << 32) | (u[j] & MASK);
+                long qj = divideUnsigned(t, d);
+                rem = t - qj * d;
+                if (q != null && j < q.length) q[j] = (int) qj;
+            }
+            if (r != null) r[0] = (int) rem;
+            return;
+        }
+
+        // normalize so that the divisor top bit is set
+        int s = Integer.numberOfLeadingZeros(v[n - 1]);
+        int[] vn = new int[n];
+        for (int i = n - 1; i > 0; i--) {
+            vn[i] = (v[i] << s) | (int) ((v[i - 1] & MASK) >>> (32 - s));
+        }
+        vn[0] = v[0] << s;
+        int[] un = new int[m + 1];
+        un[m] = (int) ((u[m - 1] & MASK) >>> (32 - s));
+        for (int i = m - 1; i > 0; i--) {
+            un[i] = (u[i] << s) | (int) ((u[i - 1] & MASK) >>> (32 - s));
+        }
+        un[0] = u[0] << s;
+
+        long vTop = vn[n - 1] & MASK;
+        long vNext = vn[n - 2] & MASK;
+        for (int j = m - n; j >= 0; j--) {
+            long num = ((un[j + n] & MASK) << 32) | (un[j + n - 1] & MASK);
+            long qhat = divideUnsigned(num, vTop);
+            long rhat = num - qhat * vTop;
+            while (qhat > MASK ||
+                    compareUnsigned(qhat * vNext, (rhat << 32) | (un[j + n - 2] & MASK)) > 0) {
+                qhat--;
+                rhat += vTop;
+                if (rhat > MASK) break;
+            }
+
+            // multiply and subtract
+            long borrow = 0;
+            long t;
+            for (int i = 0; i < n; i++) {
+                long p = qhat * (vn[i] & MASK);
+                t = (un[i + j] & MASK) - borrow - (p & MASK);
+                un[i + j] = (int) t;
+                borrow = (p >>> 32) - (t >> 32);
+            }
+            t = (un[j + n] & MASK) - borrow;
+            un[j + n] = (int) t;
+
+            if (t < 0) {
+                // subtracted too much, add back
+                qhat--;
+                long carry = 0;
+                for (int i = 0; i < n; i++) {
+                    t = (un[i + j] & MASK) + (vn[i] & MASK) + carry;
+                    un[i + j] = (int) t;
+                    carry = t >>> 32;
+                }
+                un[j + n] += (int) carry;
+            }
+            if (q != null && j < q.length) q[j] = (int) qhat;
+        }
+
+        if (r != null) {
+            // unnormalize
+            for (int i = 0; i < n; i++) {
+                r[i] = s == 0 ? un[i] : (un[i] >>> s) | (un[i + 1] << (32 - s));
+            }
+        }
+    }
+
+    private static long divideUnsigned(long dividend, long divisor) {
+        if (dividend >= 0) return dividend / divisor;
+        long q = ((dividend >>> 1) / divisor) << 1;
+        long r = dividend - q * divisor;
+        return q + (compareUnsigned(r, divisor) >= 0 ? 1 : 0);
+    }
+
+    private static int compareUnsigned(long a, long b) {
+        return Long.compare(a + Long.MIN_VALUE, b + Long.MIN_VALUE);
     }
 
     @JsonValue
@@ -342,7 +547,9 @@ public class DataWord implements Comparable<DataWord> {
     }
 
     public DataWord clone() {
-        return new DataWord(Arrays.clone(data));
+        DataWord ret = new DataWord();
+        System.arraycopy(data, 0, ret.data, 0, 32);
+        return ret;
     }
 
     @Override
@@ -371,10 +578,20 @@ public class DataWord implements Comparable<DataWord> {
         return (int) Math.signum(result);
     }
 
+    /**
+     * Signed comparison of the words as two's complement numbers
+     */
+    public int sCompareTo(DataWord o) {
+        if (this.isNegative() != o.isNegative()) {
+            return this.isNegative() ? -1 : 1;
+        }
+        return compareTo(o);
+    }
+
     public void signExtend(byte k) {
         if (0 > k || k > 31)
             throw new IndexOutOfBoundsException();
-        byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
+        byte mask = this.data[31 - k] < 0 ? (byte) 0xff : 0;
         for (int i = 31; i > k; i--) {
             this.data[31 - i] = mask;
         }
@@ -0,0 +1,165 @@
+package org.ethereum.vm;
+
+import org.ethereum.vm.program.Program;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.vm.OpCode.*;
+
+/**
+ * The plain ops (arithmetic, logic, stack, jumps, memory access, SHA3 and the simple
+ * environment getters) run outside of {@link VM#step(Program)} by the {@link PredecodedInterpreter}
+ * and by the code generated by the {@link org.ethereum.vm.jit.JitCompiler}.
+ *
+ * Both share the gas calculation and the non trivial ops from here, so there is
+ * one copy to keep in sync with {@link VM#step(Program)}
+ */
+public final class PlainOps {
+
+    /**
+     * Memory offsets and sizes up to 4 bytes: neither their sum nor the memory gas
+     * overflows a long, the larger ones are left to the generic step
+     */
+    private static final int MAX_MEM_OPERAND_BYTES = 4;
+
+    private static final Set<OpCode> SUPPORTED = EnumSet.of(
+            STOP, ADD, MUL, SUB, DIV, SDIV, MOD, SMOD, ADDMOD, MULMOD, EXP, SIGNEXTEND,
+            LT, GT, SLT, SGT, EQ, ISZERO, AND, OR, XOR, NOT, BYTE, SHA3,
+            ADDRESS, CALLER, CALLVALUE, CALLDATALOAD, CALLDATASIZE,
+            POP, MLOAD, MSTORE, MSTORE8, JUMP, JUMPI, PC, MSIZE, GAS, JUMPDEST);
+
+    static {
+        for (OpCode op : OpCode.values()) {
+            // PUSH1..PUSH32, DUP1..DUP16, SWAP1..SWAP16
+            int val = op.val() & 0xFF;
+            if (val >= (PUSH1.val() & 0xFF) && val <= (SWAP16.val() & 0xFF)) SUPPORTED.add(op);
+        }
+    }
+
+    private PlainOps() {
+    }
+
+    public static boolean isSupported(OpCode op) {
+        return SUPPORTED.contains(op);
+    }
+
+    /**
+     * @return offset + size, -1 when the offset is too large
+     */
+    public static long memNeeded(DataWord offset, long size) {
+        return offset.bytesOccupied() > MAX_MEM_OPERAND_BYTES ? -1 : offset.longValue() + size;
+    }
+
+    /**
+     * @return offset + size, 0 for the zero size, -1 when the operands are too large
+     */
+    public static long memNeeded(DataWord offset, DataWord size) {
+        if (size.isZero()) return 0;
+        if (offset.bytesOccupied() > MAX_MEM_OPERAND_BYTES || size.bytesOccupied() > MAX_MEM_OPERAND_BYTES) return -1;
+        return offset.longValue() + size.longValue();
+    }
+
+    /**
+     * Spends the gas of the memory expanded to the newMemSize
+     */
+    public static void spendMemoryGas(Program program, long newMemSize, String opName) {
+        long oldMemSize = program.getMemSize();
+        long memoryUsage = (newMemSize + 31) / 32 * 32;
+        if (memoryUsage > oldMemSize) {
+            long memWords = (memoryUsage / 32);
+            long memWordsOld = (oldMemSize / 32);
+            long memGas = (GasCost.MEMORY * memWords + memWords * memWords / 512)
+                    - (GasCost.MEMORY * memWordsOld + memWordsOld * memWordsOld / 512);
+            program.spendGas(memGas, opName + " (memory usage)");
+        }
+    }
+
+    public static long sha3Gas(Program program) {
+        DataWord size = program.getStack().get(program.getStack().size() - 2);
+        return GasCost.SHA3 + (size.longValueSafe() + 31) / 32 * GasCost.SHA3_WORD;
+    }
+
+    public static long expGas(Program program) {
+        DataWord exp = program.getStack().get(program.getStack().size() - 2);
+        return GasCost.EXP_GAS + GasCost.EXP_BYTE_GAS * exp.bytesOccupied();
+    }
+
+    public static void signExtend(Program program) {
+        DataWord word1 = program.stackPop();
+        if (isLessThan32(word1)) {
+            DataWord word2 = program.stackPop();
+            word2.signExtend(word1.getData()[31]);
+            program.stackPush(word2);
+        }
+    }
+
+    public static void byteOp(Program program) {
+        DataWord word1 = program.stackPop();
+        DataWord word2 = program.stackPop();
+        final DataWord result;
+        if (isLessThan32(word1)) {
+            byte tmp = word2.getData()[word1.getData()[31]];
+            word2.and(DataWord.ZERO);
+            word2.getData()[31] = tmp;
+            result = word2;
+        } else {
+            result = new DataWord();
+        }
+        program.stackPush(result);
+    }
+
+    /**
+     * Pushes 1 if the comparison of the two top words gives the expected sign, 0 otherwise
+     */
+    public static void compare(Program program, boolean signed, int expectedSign) {
+        DataWord word1 = program.stackPop();
+        DataWord word2 = program.stackPop();
+        int cmp = signed ? word1.sCompareTo(word2) : word1.compareTo(word2);
+        pushBoolean(program, word1, Integer.signum(cmp) == expectedSign);
+    }
+
+    public static void eq(Program program) {
+        DataWord word1 = program.stackPop();
+        pushBoolean(program, word1, word1.equals(program.stackPop()));
+    }
+
+    public static void isZero(Program program) {
+        DataWord word1 = program.stackPop();
+        pushBoolean(program, word1, word1.isZero());
+    }
+
+    public static void sha3Op(Program program) {
+        DataWord memOffsetData = program.stackPop();
+        DataWord lengthData = program.stackPop();
+        byte[] buffer = program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe());
+        program.stackPush(new DataWord(sha3(buffer)));
+    }
+
+    public static void mstore8(Program program) {
+        DataWord addr = program.stackPop();
+        DataWord value = program.stackPop();
+        program.memorySave(addr.intValueSafe(), new byte[]{value.getData()[31]});
+    }
+
+    public static void jumpi(Program program) {
+        DataWord pos = program.stackPop();
+        DataWord cond = program.stackPop();
+        if (!cond.isZero()) {
+            program.setPC(program.verifyJumpDest(pos));
+        } else {
+            program.step();
+        }
+    }
+
+    private static void pushBoolean(Program program, DataWord word, boolean value) {
+        word.and(DataWord.ZERO);
+        if (value) word.getData()[31] = 1;
+        program.stackPush(word);
+    }
+
+    private static boolean isLessThan32(DataWord word) {
+        return word.bytesOccupied() <= 1 && (word.getData()[31] & 0xFF) < 32;
+    }
+}
@@ -0,0 +1,297 @@
+package org.ethereum.vm;
+
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.ProgramPrecompile;
+import org.ethereum.vm.program.Stack;
+
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Execution loop of the [vm.interpreter = predecoded] mode.
+ *
+ * Runs the plain ops (arithmetic, logic, stack, jumps, memory access, SHA3 and the
+ * simple environment getters) straight from the decoded code of the {@link ProgramPrecompile},
+ * which is shared by all the calls of the same code: the ops and the PUSH operands
+ * are resolved once and the gas is calculated in longs.
+ *
+ * The loop stops at the first op it doesn't run, or when the operands need the generic
+ * handling (e.g. the memory offsets which don't fit an int), and leaves that op to
+ * {@link VM#step(Program)}, so the rare and complex ops have a single implementation.
+ * The results must be exactly the same as of the {@link VM#step(Program)}.
+ *
+ * Only used when neither the tracing nor the info logging is on, since it doesn't produce them
+ */
+class PredecodedInterpreter {
+
+    /**
+     * @return the number of the executed ops
+     */
+    static int run(Program program) {
+        ProgramPrecompile precompile = program.getProgramPrecompile();
+        Stack stack = program.getStack();
+
+        int executed = 0;
+        while (!program.isStopped()) {
+            int pc = program.getPC();
+            OpCode op = precompile.getOp(pc);
+            if (op == null || !PlainOps.isSupported(op)) break;
+
+            program.setLastOp(op.val());
+            program.verifyStackSize(op.require());
+            program.verifyStackOverflow(op.require(), op.ret());
+
+            long newMemSize = 0;
+            long gasCost = op.getTier().asInt();
+
+            // Calculate fees
+            switch (op) {
+                case STOP:
+                    gasCost = GasCost.STOP;
+                    break;
+                case MSTORE:
+                case MLOAD:
+                    newMemSize = PlainOps.memNeeded(stack.peek(), 32);
+                    break;
+                case MSTORE8:
+                    newMemSize = PlainOps.memNeeded(stack.peek(), 1);
+                    break;
+                case SHA3:
+                    newMemSize = PlainOps.memNeeded(stack.peek(), stack.get(stack.size() - 2));
+                    gasCost = PlainOps.sha3Gas(program);
+                    break;
+                case EXP:
+                    gasCost = PlainOps.expGas(program);
+                    break;
+                default:
+                    break;
+            }
+            // the operands are too large for the long math
+            if (newMemSize < 0) break;
+
+            program.spendGas(gasCost, op.name());
+            PlainOps.spendMemoryGas(program, newMemSize, op.name());
+
+            // Execute operation
+            switch (op) {
+                case STOP:
+                    program.setHReturn(EMPTY_BYTE_ARRAY);
+                    program.stop();
+                    break;
+                case ADD: {
+                    DataWord word1 = program.stackPop();
+                    word1.add(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case MUL: {
+                    DataWord word1 = program.stackPop();
+                    word1.mul(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case SUB: {
+                    DataWord word1 = program.stackPop();
+                    word1.sub(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case DIV: {
+                    DataWord word1 = program.stackPop();
+                    word1.div(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case SDIV: {
+                    DataWord word1 = program.stackPop();
+                    word1.sDiv(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case MOD: {
+                    DataWord word1 = program.stackPop();
+                    word1.mod(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case SMOD: {
+                    DataWord word1 = program.stackPop();
+                    word1.sMod(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case EXP: {
+                    DataWord word1 = program.stackPop();
+                    word1.exp(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case SIGNEXTEND:
+                    PlainOps.signExtend(program);
+                    program.step();
+                    break;
+                case NOT: {
+                    DataWord word1 = program.stackPop();
+                    word1.bnot();
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case LT:
+                case GT:
+                case SLT:
+                case SGT:
+                    PlainOps.compare(program, op == OpCode.SLT || op == OpCode.SGT,
+                            op == OpCode.LT || op == OpCode.SLT ? -1 : 1);
+                    program.step();
+                    break;
+                case EQ:
+                    PlainOps.eq(program);
+                    program.step();
+                    break;
+                case ISZERO:
+                    PlainOps.isZero(program);
+                    program.step();
+                    break;
+                case AND: {
+                    DataWord word1 = program.stackPop();
+                    word1.and(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case OR: {
+                    DataWord word1 = program.stackPop();
+                    word1.or(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case XOR: {
+                    DataWord word1 = program.stackPop();
+                    word1.xor(program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case BYTE:
+                    PlainOps.byteOp(program);
+                    program.step();
+                    break;
+                case ADDMOD: {
+                    DataWord word1 = program.stackPop();
+                    DataWord word2 = program.stackPop();
+                    word1.addmod(word2, program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case MULMOD: {
+                    DataWord word1 = program.stackPop();
+                    DataWord word2 = program.stackPop();
+                    word1.mulmod(word2, program.stackPop());
+                    program.stackPush(word1);
+                    program.step();
+                }
+                break;
+                case SHA3:
+                    PlainOps.sha3Op(program);
+                    program.step();
+                    break;
+                case ADDRESS:
+                    program.stackPush(program.getOwnerAddress());
+                    program.step();
+                    break;
+                case CALLER:
+                    program.stackPush(program.getCallerAddress());
+                    program.step();
+                    break;
+                case CALLVALUE:
+                    program.stackPush(program.getCallValue());
+                    program.step();
+                    break;
+                case CALLDATALOAD:
+                    program.stackPush(program.getDataValue(program.stackPop()));
+                    program.step();
+                    break;
+                case CALLDATASIZE:
+                    program.stackPush(program.getDataSize());
+                    program.step();
+                    break;
+                case POP:
+                    program.stackPop();
+                    program.step();
+                    break;
+                case DUP1: case DUP2: case DUP3: case DUP4:
+                case DUP5: case DUP6: case DUP7: case DUP8:
+                case DUP9: case DUP10: case DUP11: case DUP12:
+                case DUP13: case DUP14: case DUP15: case DUP16:
+                    program.verifyStackOverflow(0, 1);
+                    stack.dup(op.val() - OpCode.DUP1.val() + 1);
+                    program.step();
+                    break;
+                case SWAP1: case SWAP2: case SWAP3: case SWAP4:
+                case SWAP5: case SWAP6: case SWAP7: case SWAP8:
+                case SWAP9: case SWAP10: case SWAP11: case SWAP12:
+                case SWAP13: case SWAP14: case SWAP15: case SWAP16: {
+                    int n = op.val() - OpCode.SWAP1.val() + 2;
+                    stack.swap(stack.size() - 1, stack.size() - n);
+                    program.step();
+                }
+                break;
+                case MLOAD:
+                    program.stackPush(program.memoryLoad(program.stackPop()));
+                    program.step();
+                    break;
+                case MSTORE: {
+                    DataWord addr = program.stackPop();
+                    program.memorySave(addr, program.stackPop());
+                    program.step();
+                }
+                break;
+                case MSTORE8:
+                    PlainOps.mstore8(program);
+                    program.step();
+                    break;
+                case JUMP:
+                    program.setPC(program.verifyJumpDest(program.stackPop()));
+                    break;
+                case JUMPI:
+                    PlainOps.jumpi(program);
+                    break;
+                case PC:
+                    program.stackPush(new DataWord(pc));
+                    program.step();
+                    break;
+                case MSIZE:
+                    program.stackPush(new DataWord(program.getMemSize()));
+                    program.step();
+                    break;
+                case GAS:
+                    program.stackPush(program.getGas());
+                    program.step();
+                    break;
+                case JUMPDEST:
+                    program.step();
+                    break;
+                default:
+                    // PUSH1..PUSH32, see PlainOps.isSupported()
+                    program.stackPush(precompile.getPushValue(pc).clone());
+                    program.setPC(pc + 1 + op.val() - OpCode.PUSH1.val() + 1);
+                    break;
+            }
+
+            program.setPreviouslyExecutedOp(op.val());
+            program.fullTrace();
+            executed++;
+        }
+        return executed;
+    }
+}
@@ -3,6 +3,8 @@ package org.ethereum.vm;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.db.ContractDetails;
 import org.ethereum.vm.MessageCall.MsgType;
+import org.ethereum.vm.jit.CompiledCode;
+import org.ethereum.vm.jit.JitCompiler;
 import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.Stack;
 import org.slf4j.Logger;
@@ -77,6 +79,9 @@ public class VM {
     private static VMHook vmHook;
     private boolean vmTrace;
     private long dumpBlock;
+    private boolean predecoded;
+    private boolean jit;
+    private int jitThreshold;
 
     private final SystemProperties config;
 
@@ -89,6 +94,9 @@ public class VM {
         this.config = config;
         vmTrace = config.vmTrace();
         dumpBlock = config.dumpBlock();
+        jit = "jit".equals(config.vmInterpreter());
+        predecoded = jit || "predecoded".equals(config.vmInterpreter());
+        jitThreshold = config.vmJitThreshold();
     }
 
     public void step(Program program) {
@@ -425,14 +433,13 @@ public class VM {
                 }
                 break;
                 case LT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " < " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == -1) {
+                    if (word1.compareTo(word2) < 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -443,14 +450,13 @@ public class VM {
                 }
                 break;
                 case SLT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " < " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == -1) {
+                    if (word1.sCompareTo(word2) < 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -461,14 +467,13 @@ public class VM {
                 }
                 break;
                 case SGT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " > " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == 1) {
+                    if (word1.sCompareTo(word2) > 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -479,14 +484,13 @@ public class VM {
                 }
                 break;
                 case GT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " > " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == 1) {
+                    if (word1.compareTo(word2) > 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -752,20 +756,11 @@ public class VM {
                     int codeOffset = program.stackPop().intValueSafe();
                     int lengthData = program.stackPop().intValueSafe();
 
-                    int sizeToBeCopied =
-                            (long) codeOffset + lengthData > fullCode.length ?
-                                    (fullCode.length < codeOffset ? 0 : fullCode.length - codeOffset)
-                                    : lengthData;
-
-                    byte[] codeCopy = new byte[lengthData];
-
-                    if (codeOffset < fullCode.length)
-                        System.arraycopy(fullCode, codeOffset, codeCopy, 0, sizeToBeCopied);
+                    program.memoryCopy(memOffset, fullCode, codeOffset, lengthData);
 
                     if (logger.isInfoEnabled())
-                        hint = "code: " + Hex.toHexString(codeCopy);
+                        hint = "code: " + Hex.toHexString(program.memoryChunk(memOffset, lengthData));
 
-                    program.memorySave(memOffset, codeCopy);
                     program.step();
                 }
                 break;
@@ -856,8 +851,8 @@ public class VM {
                 case DUP13: case DUP14: case DUP15: case DUP16:{
 
                     int n = op.val() - OpCode.DUP1.val() + 1;
-                    DataWord word_1 = stack.get(stack.size() - n);
-                    program.stackPush(word_1.clone());
+                    program.verifyStackOverflow(0, 1);
+                    stack.dup(n);
                     program.step();
 
                 }   break;
@@ -1171,16 +1166,34 @@ public class VM {
 
             vmCounter++;
         } catch (RuntimeException e) {
-            logger.warn("VM halted: [{}]", e);
-            program.spendAllGas();
-            program.resetFutureRefund();
-            program.stop();
+            halt(program, e);
             throw e;
         } finally {
             program.fullTrace();
         }
     }
 
+    /**
+     * Runs the ops supported by the {@link PredecodedInterpreter} or by the compiled code
+     * starting from the current one
+     */
+    private void stepPredecoded(Program program, CompiledCode compiled) {
+        try {
+            vmCounter += compiled != null ? compiled.run(program) : PredecodedInterpreter.run(program);
+        } catch (RuntimeException e) {
+            halt(program, e);
+            program.fullTrace();
+            throw e;
+        }
+    }
+
+    private void halt(Program program, RuntimeException e) {
+        logger.warn("VM halted: [{}]", e);
+        program.spendAllGas();
+        program.resetFutureRefund();
+        program.stop();
+    }
+
     public void play(Program program) {
         try {
             if (vmHook != null) {
@@ -1189,7 +1202,17 @@ public class VM {
 
 //            if (program.byTestingSuite()) return;
 
+            // the predecoded loop produces neither traces nor logs
+            boolean fast = predecoded && vmHook == null && !vmTrace && !logger.isInfoEnabled()
+                    && program.getNumber().intValue() != dumpBlock;
+            CompiledCode compiled = fast && jit ?
+                    JitCompiler.getDefault().getCompiled(program.getProgramPrecompile(), jitThreshold) : null;
+
             while (!program.isStopped()) {
+                if (fast) {
+                    stepPredecoded(program, compiled);
+                    if (program.isStopped()) break;
+                }
                 this.step(program);
             }
 
@@ -1257,7 +1280,7 @@ public class VM {
             dumpLogger.trace("{} {} {} {}", addressString, pcString, opString, gasString);
         } else if (config.dumpStyle().equals("pretty")) {
             dumpLogger.trace("    STACK");
-            for (DataWord item : program.getStack()) {
+            for (DataWord item : program.getStack().toArray()) {
                 dumpLogger.trace("{}", item);
             }
             dumpLogger.trace("    MEMORY");
@@ -0,0 +1,17 @@
+package org.ethereum.vm.jit;
+
+import org.ethereum.vm.program.Program;
+
+/**
+ * Contract code compiled by the {@link JitCompiler}
+ */
+public interface CompiledCode {
+
+    /**
+     * Executes the program from its current pc until it stops or reaches an op
+     * which is not compiled. The op at the pc is then left to the interpreter
+     *
+     * @return the number of the executed ops
+     */
+    int run(Program program);
+}
@@ -0,0 +1,371 @@
+package org.ethereum.vm.jit;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+import org.ethereum.vm.PlainOps;
+import org.ethereum.vm.program.ProgramPrecompile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.ethereum.vm.OpCode.*;
+
+/**
+ * Compiles the hot contract code to JVM bytecode for the [vm.interpreter = jit] mode.
+ *
+ * The executions are counted per {@link ProgramPrecompile}, i.e. per code held by the
+ * {@link org.ethereum.vm.program.ProgramPrecompileCache}. When the count reaches the
+ * threshold the code is compiled with javassist in the calling thread, the other threads
+ * keep interpreting it meanwhile.
+ *
+ * The code is split into straight segments of the supported ops, each segment becomes
+ * a method executing its ops one after another with the gas, the stack limits and the
+ * operands folded into constants. The ops keep the interpreter semantics op by op, so
+ * the gas charged and the exceptions are the same. The segments start at the jump
+ * destinations and after the ops which end a segment, the execution returns to the
+ * interpreter at any other pc.
+ */
+public class JitCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger("VM");
+
+    private static final int MAX_SEGMENT_OPS = 256;
+
+    private static final CompiledCode NOT_COMPILABLE = new CompiledCode() {
+        @Override
+        public int run(org.ethereum.vm.program.Program program) {
+            return 0;
+        }
+    };
+
+    private static JitCompiler inst;
+
+    public static synchronized JitCompiler getDefault() {
+        if (inst == null) {
+            inst = new JitCompiler();
+        }
+        return inst;
+    }
+
+    private static class Entry {
+        final AtomicInteger executions = new AtomicInteger();
+        volatile CompiledCode compiled;
+    }
+
+    private final Map<ProgramPrecompile, Entry> entries = new WeakHashMap<>();
+    private final AtomicInteger classCounter = new AtomicInteger();
+
+    private final ClassPool pool;
+
+    public JitCompiler() {
+        pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(JitCompiler.class.getClassLoader()));
+        pool.importPackage("org.ethereum.vm");
+        pool.importPackage("org.ethereum.vm.program");
+        pool.importPackage("org.ethereum.vm.jit");
+    }
+
+    /**
+     * Counts the execution of the code
+     *
+     * @return the compiled code, null while the code is executed less than threshold times
+     * or if it can't be compiled
+     */
+    public CompiledCode getCompiled(ProgramPrecompile precompile, int threshold) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(precompile);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(precompile, entry);
+            }
+        }
+
+        CompiledCode compiled = entry.compiled;
+        if (compiled == null && entry.executions.incrementAndGet() == threshold + 1) {
+            compiled = compile(precompile);
+            entry.compiled = compiled;
+        }
+        return compiled == NOT_COMPILABLE ? null : compiled;
+    }
+
+    CompiledCode compile(ProgramPrecompile precompile) {
+        long start = System.nanoTime();
+        String className = "org.ethereum.vm.jit.CompiledCode$" + classCounter.incrementAndGet();
+        CtClass cc = pool.makeClass(className);
+        try {
+            cc.addInterface(pool.get(CompiledCode.class.getName()));
+            cc.addField(CtField.make("private org.ethereum.vm.DataWord[] push;", cc));
+            cc.addConstructor(CtNewConstructor.make(
+                    "public " + className.substring(className.lastIndexOf('.') + 1)
+                            + "(org.ethereum.vm.DataWord[] push) { this.push = $1; }", cc));
+
+            boolean[] starts = segmentStarts(precompile);
+            List<Integer> segments = new ArrayList<>();
+            for (int pc = 0; pc < starts.length; pc++) {
+                if (starts[pc]) {
+                    cc.addMethod(CtNewMethod.make(segmentMethod(precompile, starts, pc), cc));
+                    segments.add(pc);
+                }
+            }
+            cc.addMethod(CtNewMethod.make(runMethod(segments), cc));
+
+            byte[] bytecode = cc.toBytecode();
+            Class<?> clazz = new CodeLoader(JitCompiler.class.getClassLoader()).define(className, bytecode);
+            DataWord[] push = new DataWord[precompile.getCodeSize()];
+            for (int pc = 0; pc < push.length; pc++) {
+                if (isPush(precompile.getOp(pc))) push[pc] = precompile.getPushValue(pc);
+            }
+            CompiledCode ret = (CompiledCode) clazz.getConstructor(DataWord[].class).newInstance((Object) push);
+
+            logger.debug("Compiled {} bytes of code into {} segments in {} ms", precompile.getCodeSize(),
+                    segments.size(), (System.nanoTime() - start) / 1000000);
+            return ret;
+        } catch (Exception | LinkageError e) {
+            logger.warn("Couldn't compile the code, it stays interpreted", e);
+            return NOT_COMPILABLE;
+        } finally {
+            cc.detach();
+        }
+    }
+
+    /**
+     * Segments start at the code start, at the jump destinations and at the first
+     * supported op after the op ending the previous segment. The long straight code
+     * is split every {@link #MAX_SEGMENT_OPS} ops to keep the methods small
+     */
+    private static boolean[] segmentStarts(ProgramPrecompile precompile) {
+        boolean[] starts = new boolean[precompile.getCodeSize()];
+        boolean prevEnds = true;
+        int ops = 0;
+        for (int pc = 0; pc < starts.length; pc++) {
+            if (!precompile.isInstructionStart(pc)) continue;
+            OpCode op = precompile.getOp(pc);
+            if (op == null || !PlainOps.isSupported(op)) {
+                prevEnds = true;
+                continue;
+            }
+            if (prevEnds || op == JUMPDEST || ops == MAX_SEGMENT_OPS) {
+                starts[pc] = true;
+                ops = 0;
+            }
+            ops++;
+            prevEnds = isSegmentEnd(op);
+        }
+        return starts;
+    }
+
+    private static boolean isSegmentEnd(OpCode op) {
+        return op == STOP || op == JUMP || op == JUMPI;
+    }
+
+    private static boolean isPush(OpCode op) {
+        return op != null && op.asInt() >= PUSH1.asInt() && op.asInt() <= PUSH32.asInt();
+    }
+
+    private static String runMethod(List<Integer> segments) {
+        StringBuilder src = new StringBuilder();
+        src.append("public int run(org.ethereum.vm.program.Program p) {\n");
+        src.append("  int executed = 0;\n");
+        src.append("  while (!p.isStopped()) {\n");
+        src.append("    int r;\n");
+        src.append("    switch (p.getPC()) {\n");
+        for (int pc : segments) {
+            src.append("      case ").append(pc).append(": r = s").append(pc).append("(p); break;\n");
+        }
+        src.append("      default: return executed;\n");
+        src.append("    }\n");
+        // negative result: the segment stopped before the op the interpreter has to execute
+        src.append("    if (r < 0) return executed - r - 1;\n");
+        src.append("    executed += r;\n");
+        src.append("  }\n");
+        src.append("  return executed;\n");
+        src.append("}\n");
+        return src.toString();
+    }
+
+    private static String segmentMethod(ProgramPrecompile precompile, boolean[] starts, int start) {
+        StringBuilder src = new StringBuilder();
+        src.append("private int s").append(start).append("(org.ethereum.vm.program.Program p) {\n");
+
+        int pc = start;
+        int count = 0;
+        while (true) {
+            OpCode op = precompile.getOp(pc);
+            int next = pc + 1 + (isPush(op) ? op.asInt() - PUSH1.asInt() + 1 : 0);
+
+            opSource(src, op, pc, next, count);
+            count++;
+
+            if (isSegmentEnd(op) || next >= starts.length || starts[next]) break;
+            OpCode nextOp = precompile.getOp(next);
+            if (nextOp == null || !PlainOps.isSupported(nextOp)) break;
+            pc = next;
+        }
+        src.append("  return ").append(count).append(";\n");
+        src.append("}\n");
+        return src.toString();
+    }
+
+    private static void opSource(StringBuilder src, OpCode op, int pc, int next, int executed) {
+        String name = "\"" + op.name() + "\"";
+        src.append("  p.setLastOp((byte) ").append(op.val()).append(");\n");
+        src.append("  p.verifyStackSize(").append(op.require()).append(");\n");
+        src.append("  p.verifyStackOverflow(").append(op.require()).append(", ").append(op.ret()).append(");\n");
+
+        String memNeeded = null;
+        String gas = String.valueOf(op == STOP ? 0 : op.getTier().asInt()) + "L";
+        switch (op) {
+            case MSTORE: case MLOAD:
+                memNeeded = "PlainOps.memNeeded(p.getStack().peek(), 32L)";
+                break;
+            case MSTORE8:
+                memNeeded = "PlainOps.memNeeded(p.getStack().peek(), 1L)";
+                break;
+            case SHA3:
+                memNeeded = "PlainOps.memNeeded(p.getStack().peek(), p.getStack().get(p.getStack().size() - 2))";
+                gas = "PlainOps.sha3Gas(p)";
+                break;
+            case EXP:
+                gas = "PlainOps.expGas(p)";
+                break;
+            default:
+                break;
+        }
+
+        src.append("  {\n");
+        if (memNeeded != null) {
+            src.append("    long mem = ").append(memNeeded).append(";\n");
+            src.append("    if (mem < 0) return ").append(-executed - 1).append(";\n");
+        }
+        src.append("    p.spendGas(").append(gas).append(", ").append(name).append(");\n");
+        if (memNeeded != null) {
+            src.append("    PlainOps.spendMemoryGas(p, mem, ").append(name).append(");\n");
+        }
+        src.append("  }\n");
+
+        src.append("  ");
+        switch (op) {
+            case STOP:
+                src.append("p.setHReturn(org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY); p.stop();");
+                break;
+            case ADD: case MUL: case SUB: case DIV: case SDIV: case MOD: case SMOD: case EXP:
+            case AND: case OR: case XOR: {
+                String method = op == SDIV ? "sDiv" : op == SMOD ? "sMod" : op.name().toLowerCase();
+                src.append("{ DataWord w = p.stackPop(); w.").append(method)
+                        .append("(p.stackPop()); p.stackPush(w); p.step(); }");
+                break;
+            }
+            case ADDMOD: case MULMOD:
+                src.append("{ DataWord w = p.stackPop(); DataWord w2 = p.stackPop(); w.")
+                        .append(op.name().toLowerCase()).append("(w2, p.stackPop()); p.stackPush(w); p.step(); }");
+                break;
+            case NOT:
+                src.append("{ DataWord w = p.stackPop(); w.bnot(); p.stackPush(w); p.step(); }");
+                break;
+            case SIGNEXTEND:
+                src.append("PlainOps.signExtend(p); p.step();");
+                break;
+            case BYTE:
+                src.append("PlainOps.byteOp(p); p.step();");
+                break;
+            case LT: case GT: case SLT: case SGT:
+                src.append("PlainOps.compare(p, ").append(op == SLT || op == SGT).append(", ")
+                        .append(op == LT || op == SLT ? -1 : 1).append("); p.step();");
+                break;
+            case EQ:
+                src.append("PlainOps.eq(p); p.step();");
+                break;
+            case ISZERO:
+                src.append("PlainOps.isZero(p); p.step();");
+                break;
+            case SHA3:
+                src.append("PlainOps.sha3Op(p); p.step();");
+                break;
+            case ADDRESS:
+                src.append("p.stackPush(p.getOwnerAddress()); p.step();");
+                break;
+            case CALLER:
+                src.append("p.stackPush(p.getCallerAddress()); p.step();");
+                break;
+            case CALLVALUE:
+                src.append("p.stackPush(p.getCallValue()); p.step();");
+                break;
+            case CALLDATALOAD:
+                src.append("p.stackPush(p.getDataValue(p.stackPop())); p.step();");
+                break;
+            case CALLDATASIZE:
+                src.append("p.stackPush(p.getDataSize()); p.step();");
+                break;
+            case POP:
+                src.append("p.stackPop(); p.step();");
+                break;
+            case MLOAD:
+                src.append("p.stackPush(p.memoryLoad(p.stackPop())); p.step();");
+                break;
+            case MSTORE:
+                src.append("{ DataWord a = p.stackPop(); p.memorySave(a, p.stackPop()); p.step(); }");
+                break;
+            case MSTORE8:
+                src.append("PlainOps.mstore8(p); p.step();");
+                break;
+            case JUMP:
+                src.append("p.setPC(p.verifyJumpDest(p.stackPop()));");
+                break;
+            case JUMPI:
+                src.append("PlainOps.jumpi(p);");
+                break;
+            case PC:
+                src.append("p.stackPush(new DataWord(").append(pc).append(")); p.step();");
+                break;
+            case MSIZE:
+                src.append("p.stackPush(new DataWord(p.getMemSize())); p.step();");
+                break;
+            case GAS:
+                src.append("p.stackPush(p.getGas()); p.step();");
+                break;
+            case JUMPDEST:
+                src.append("p.step();");
+                break;
+            default:
+                if (isPush(op)) {
+                    src.append("p.stackPush(push[").append(pc).append("].clone()); p.setPC(").append(next).append(");");
+                } else if (op.name().startsWith("DUP")) {
+                    src.append("p.verifyStackOverflow(0, 1); p.getStack().dup(")
+                            .append(op.val() - DUP1.val() + 1).append("); p.step();");
+                } else {
+                    src.append("{ org.ethereum.vm.program.Stack s = p.getStack(); s.swap(s.size() - 1, s.size() - ")
+                            .append(op.val() - SWAP1.val() + 2).append("); p.step(); }");
+                }
+                break;
+        }
+        src.append("\n");
+        src.append("  p.setPreviouslyExecutedOp((byte) ").append(op.val()).append(");\n");
+        src.append("  p.fullTrace();\n");
+    }
+
+    /**
+     * Each compiled class has its own loader, so it's unloaded with its code
+     */
+    private static class CodeLoader extends ClassLoader {
+        CodeLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
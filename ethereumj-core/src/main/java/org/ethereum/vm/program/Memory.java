@@ -4,21 +4,27 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import static java.lang.Math.ceil;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.String.format;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.oneByteToHexString;
 
+/**
+ * EVM memory backed by a single contiguous array. The array is allocated in
+ * {@link #CHUNK_SIZE} steps and at least doubles when it grows, so the
+ * accesses are plain array copies and the growth cost is amortized
+ */
 public class Memory implements ProgramListenerAware {
 
     private static final int CHUNK_SIZE = 1024;
     private static final int WORD_SIZE = 32;
 
-    private List<byte[]> chunks = new LinkedList<>();
+    private byte[] buffer = EMPTY_BYTE_ARRAY;
     private int softSize;
     private ProgramListener programListener;
 
@@ -32,24 +38,7 @@ public class Memory implements ProgramListenerAware {
 
         extend(address, size);
         byte[] data = new byte[size];
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toGrab = data.length;
-        int start = 0;
-
-        while (toGrab > 0) {
-            int copied = grabMax(chunkIndex, chunkOffset, toGrab, data, start);
-
-            // read next chunk from the start
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toGrab -= copied;
-            start += copied;
-        }
+        System.arraycopy(buffer, address, data, 0, size);
 
         return data;
     }
@@ -62,31 +51,37 @@ public class Memory implements ProgramListenerAware {
         if (!limited)
             extend(address, dataSize);
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
         int toCapture = 0;
         if (limited)
             toCapture = (address + dataSize > softSize) ? softSize - address : dataSize;
         else
             toCapture = dataSize;
 
-        int start = 0;
-        while (toCapture > 0) {
-            int captured = captureMax(chunkIndex, chunkOffset, toCapture, data, start);
-
-            // capture next chunk
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toCapture -= captured;
-            start += captured;
+        if (toCapture > 0) {
+            System.arraycopy(data, 0, buffer, address, toCapture);
         }
 
         if (programListener != null) programListener.onMemoryWrite(address, data, dataSize);
     }
 
+    /**
+     * Copies the {@code size} bytes of {@code src} starting at {@code srcOffset} to the memory,
+     * the part of the range beyond the end of {@code src} is zero filled.
+     * Saves the intermediate array for the CODECOPY like operations
+     */
+    public void copy(int address, byte[] src, int srcOffset, int size) {
+        if (size <= 0) return;
+
+        extend(address, size);
+
+        int toCopy = srcOffset < 0 || srcOffset >= src.length ? 0 : min(size, src.length - srcOffset);
+        if (toCopy > 0) {
+            System.arraycopy(src, srcOffset, buffer, address, toCopy);
+        }
+        Arrays.fill(buffer, address + toCopy, address + size, (byte) 0);
+
+        if (programListener != null) programListener.onMemoryWrite(address, read(address, size), size);
+    }
 
     public void extendAndWrite(int address, int allocSize, byte[] data) {
         extend(address, allocSize);
@@ -98,14 +93,14 @@ public class Memory implements ProgramListenerAware {
 
         final int newSize = address + size;
 
-        int toAllocate = newSize - internalSize();
-        if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
+        if (newSize > buffer.length) {
+            int capacity = (newSize + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+            buffer = Arrays.copyOf(buffer, max(capacity, (int) min(buffer.length * 2L, Integer.MAX_VALUE - CHUNK_SIZE)));
         }
 
-        toAllocate = newSize - softSize;
+        int toAllocate = newSize - softSize;
         if (toAllocate > 0) {
-            toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
+            toAllocate = (toAllocate + WORD_SIZE - 1) / WORD_SIZE * WORD_SIZE;
             softSize += toAllocate;
 
             if (programListener != null) programListener.onMemoryExtend(toAllocate);
@@ -113,18 +108,19 @@ public class Memory implements ProgramListenerAware {
     }
 
     public DataWord readWord(int address) {
-        return new DataWord(read(address, 32));
+        extend(address, WORD_SIZE);
+        DataWord word = new DataWord();
+        System.arraycopy(buffer, address, word.getData(), 0, WORD_SIZE);
+        return word;
+    }
+
+    public void writeWord(int address, DataWord value) {
+        write(address, value.getData(), WORD_SIZE, false);
     }
 
     // just access expecting all data valid
     public byte readByte(int address) {
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        byte[] chunk = chunks.get(chunkIndex);
-
-        return chunk[chunkOffset];
+        return buffer[address];
     }
 
     @Override
@@ -161,36 +157,21 @@ public class Memory implements ProgramListenerAware {
         return softSize;
     }
 
+    /**
+     * @return the allocated capacity, which can be larger than {@link #size()}
+     */
     public int internalSize() {
-        return chunks.size() * CHUNK_SIZE;
+        return buffer.length;
     }
 
+    /**
+     * @return copies of the used memory split into {@link #CHUNK_SIZE} pieces
+     */
     public List<byte[]> getChunks() {
-        return new LinkedList<>(chunks);
-    }
-
-    private int captureMax(int chunkIndex, int chunkOffset, int size, byte[] src, int srcPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toCapture = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(src, srcPos, chunk, chunkOffset, toCapture);
-        return toCapture;
-    }
-
-    private int grabMax(int chunkIndex, int chunkOffset, int size, byte[] dest, int destPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toGrab = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(chunk, chunkOffset, dest, destPos, toGrab);
-
-        return toGrab;
-    }
-
-    private void addChunks(int num) {
-        for (int i = 0; i < num; ++i) {
-            chunks.add(new byte[CHUNK_SIZE]);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < softSize; offset += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(buffer, offset, offset + CHUNK_SIZE));
         }
+        return chunks;
     }
 }
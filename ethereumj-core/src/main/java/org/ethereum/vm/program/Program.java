@@ -54,7 +54,7 @@ public class Program {
     private static final int MAX_DEPTH = 1024;
 
     //Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    private static final int MAX_STACKSIZE = Stack.MAX_SIZE;
 
     private Transaction transaction;
 
@@ -79,11 +79,13 @@ public class Program {
     private byte previouslyExecutedOp;
     private boolean stopped;
 
-    private Set<Integer> jumpdest = new HashSet<>();
+    private ProgramPrecompile precompile;
 
     @Autowired
     CommonConfig commonConfig = CommonConfig.getDefault();
 
+    private ProgramPrecompileCache precompileCache = ProgramPrecompileCache.getDefault();
+
     private final SystemProperties config;
 
     public Program(byte[] ops, ProgramInvoke programInvoke) {
@@ -266,7 +268,7 @@ public class Program {
     }
 
     public void memorySave(DataWord addrB, DataWord value) {
-        memory.write(addrB.intValue(), value.getData(), value.getData().length, false);
+        memory.writeWord(addrB.intValue(), value);
     }
 
     public void memorySaveLimited(int addr, byte[] data, int dataSize) {
@@ -294,6 +296,19 @@ public class Program {
         memory.extendAndWrite(addr, allocSize, value);
     }
 
+    /**
+     * Copies a range of the data to memory, the part of the range
+     * beyond the end of the data is filled with zeros
+     *
+     * @param addr   is the offset address
+     * @param data   the source data
+     * @param offset the offset in the source data
+     * @param size   the number of bytes to write to memory
+     */
+    public void memoryCopy(int addr, byte[] data, int offset, int size) {
+        memory.copy(addr, data, offset, size);
+    }
+
 
     public DataWord memoryLoad(DataWord addr) {
         return memory.readWord(addr.intValue());
@@ -590,16 +605,17 @@ public class Program {
     }
 
     public void spendGas(long gasValue, String cause) {
-        logger.debug("[{}] Spent for cause: [{}], gas: [{}]", invoke.hashCode(), cause, gasValue);
+        if (logger.isDebugEnabled())
+            logger.debug("[{}] Spent for cause: [{}], gas: [{}]", invoke.hashCode(), cause, gasValue);
 
-        if (getGas().longValue() < gasValue) {
+        if (getGasLong() < gasValue) {
             throw Program.Exception.notEnoughSpendingGas(cause, gasValue, this);
         }
         getResult().spendGas(gasValue);
     }
 
     public void spendAllGas() {
-        spendGas(getGas().longValue(), "Spending all remaining");
+        spendGas(getGasLong(), "Spending all remaining");
     }
 
     public void refundGas(long gasValue, String cause) {
@@ -663,7 +679,11 @@ public class Program {
     }
 
     public DataWord getGas() {
-        return new DataWord(invoke.getGasLong() - getResult().getGasUsed());
+        return new DataWord(getGasLong());
+    }
+
+    public long getGasLong() {
+        return invoke.getGasLong() - getResult().getGasUsed();
     }
 
     public DataWord getCallValue() {
@@ -833,17 +853,11 @@ public class Program {
     }
 
     public void precompile() {
-        for (int i = 0; i < ops.length; ++i) {
-
-            OpCode op = OpCode.code(ops[i]);
-            if (op == null) continue;
-
-            if (op.equals(OpCode.JUMPDEST)) jumpdest.add(i);
+        precompile = precompileCache == null ? ProgramPrecompile.compile(ops) : precompileCache.get(ops);
+    }
 
-            if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
-                i += op.asInt() - OpCode.PUSH1.asInt() + 1;
-            }
-        }
+    public ProgramPrecompile getProgramPrecompile() {
+        return precompile;
     }
 
     static String formatBinData(byte[] binData, int startPC) {
@@ -1030,7 +1044,7 @@ public class Program {
             throw Program.Exception.badJumpDestination(-1);
         }
         int ret = nextPC.intValue();
-        if (!jumpdest.contains(ret)) {
+        if (!precompile.hasJumpDest(ret)) {
             throw Program.Exception.badJumpDestination(ret);
         }
         return ret;
@@ -0,0 +1,174 @@
+package org.ethereum.vm.program;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.ethereum.vm.OpCode.*;
+
+/**
+ * Immutable result of the bytecode analysis, shared by all the {@link Program}s
+ * executing the same code (see {@link ProgramPrecompileCache}):
+ * - JUMPDEST positions
+ * - instruction starts, i.e. the bytes which are not PUSH data
+ * - basic blocks: the straight runs of instructions which start at the code start,
+ * at a JUMPDEST or after a jump/halting/invalid instruction, with their static gas
+ * (the tier gas of the instructions, without memory, storage, call etc. costs)
+ * - decoded instructions: the op at each instruction start and the PUSH operands
+ */
+public class ProgramPrecompile {
+
+    private final int codeSize;
+    private final BitSet jumpdests;
+    private final BitSet instructions;
+    private final int[] blockStarts;
+    private final long[] blockGas;
+    private final OpCode[] opCodes;
+    private final DataWord[] pushValues;
+    private final int pushCount;
+
+    private ProgramPrecompile(int codeSize, BitSet jumpdests, BitSet instructions, int[] blockStarts, long[] blockGas,
+                              OpCode[] opCodes, DataWord[] pushValues, int pushCount) {
+        this.codeSize = codeSize;
+        this.jumpdests = jumpdests;
+        this.instructions = instructions;
+        this.blockStarts = blockStarts;
+        this.blockGas = blockGas;
+        this.opCodes = opCodes;
+        this.pushValues = pushValues;
+        this.pushCount = pushCount;
+    }
+
+    public static ProgramPrecompile compile(byte[] ops) {
+        BitSet jumpdests = new BitSet(ops.length);
+        BitSet instructions = new BitSet(ops.length);
+        List<Integer> starts = new ArrayList<>();
+        List<Long> gas = new ArrayList<>();
+        OpCode[] opCodes = new OpCode[ops.length];
+        DataWord[] pushValues = new DataWord[ops.length];
+        int pushCount = 0;
+
+        long currentGas = 0;
+        boolean blockOpen = false;
+        for (int i = 0; i < ops.length; ++i) {
+            OpCode op = OpCode.code(ops[i]);
+            instructions.set(i);
+
+            if (op == JUMPDEST) {
+                jumpdests.set(i);
+                if (blockOpen) gas.add(currentGas);
+                blockOpen = false;
+            }
+            if (!blockOpen) {
+                starts.add(i);
+                currentGas = 0;
+                blockOpen = true;
+            }
+
+            if (op == null) {
+                // the execution stops here
+                gas.add(currentGas);
+                blockOpen = false;
+                continue;
+            }
+
+            opCodes[i] = op;
+            currentGas += op.getTier().asInt();
+
+            if (op.asInt() >= PUSH1.asInt() && op.asInt() <= PUSH32.asInt()) {
+                int nPush = op.asInt() - PUSH1.asInt() + 1;
+                // the operand truncated by the code end is padded with zeros on the right as Program.sweep() does
+                pushValues[i] = new DataWord(Arrays.copyOfRange(ops, i + 1, i + 1 + nPush));
+                pushCount++;
+                i += nPush;
+            }
+
+            if (isBlockEnd(op)) {
+                gas.add(currentGas);
+                blockOpen = false;
+            }
+        }
+        if (blockOpen) gas.add(currentGas);
+
+        int[] blockStarts = new int[starts.size()];
+        long[] blockGas = new long[gas.size()];
+        for (int i = 0; i < blockStarts.length; i++) {
+            blockStarts[i] = starts.get(i);
+            blockGas[i] = gas.get(i);
+        }
+        return new ProgramPrecompile(ops.length, jumpdests, instructions, blockStarts, blockGas,
+                opCodes, pushValues, pushCount);
+    }
+
+    private static boolean isBlockEnd(OpCode op) {
+        switch (op) {
+            case JUMP:
+            case JUMPI:
+            case STOP:
+            case RETURN:
+            case SUICIDE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public boolean hasJumpDest(int pc) {
+        return pc >= 0 && jumpdests.get(pc);
+    }
+
+    /**
+     * @return false for PUSH data bytes and positions outside of the code
+     */
+    public boolean isInstructionStart(int pc) {
+        return pc >= 0 && instructions.get(pc);
+    }
+
+    public int getBlockCount() {
+        return blockStarts.length;
+    }
+
+    /**
+     * @return index of the basic block starting at the pc, negative if no block starts there
+     */
+    public int getBlockIndex(int pc) {
+        return Arrays.binarySearch(blockStarts, pc);
+    }
+
+    public int getBlockStart(int blockIndex) {
+        return blockStarts[blockIndex];
+    }
+
+    public long getBlockStaticGas(int blockIndex) {
+        return blockGas[blockIndex];
+    }
+
+    /**
+     * @return the op starting at the pc, null for PUSH data bytes, invalid ops and positions outside of the code
+     */
+    public OpCode getOp(int pc) {
+        return pc >= 0 && pc < opCodes.length ? opCodes[pc] : null;
+    }
+
+    /**
+     * @return the operand of the PUSH op at the pc, the instance is shared so it must be copied before the use
+     */
+    public DataWord getPushValue(int pc) {
+        return pushValues[pc];
+    }
+
+    public int getCodeSize() {
+        return codeSize;
+    }
+
+    /**
+     * Rough memory footprint, the code itself is not counted
+     */
+    long getMemorySize() {
+        return 128 + codeSize / 4 + blockStarts.length * 12L + codeSize * 8L + pushCount * 80L;
+    }
+}
@@ -0,0 +1,97 @@
+package org.ethereum.vm.program;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the {@link ProgramPrecompile} analysis shared by all the
+ * {@link Program}s, so the frequently called contracts are analyzed once.
+ *
+ * The entries are keyed by the code itself: {@link Program} doesn't know the
+ * code hash and hashing the code would cost as much as analyzing it, while
+ * the code array comparison is cheap. The key retains the code so it is
+ * counted in the memory budget. Entries are evicted in LRU order
+ */
+public class ProgramPrecompileCache {
+
+    private static ProgramPrecompileCache inst;
+
+    public static synchronized ProgramPrecompileCache getDefault() {
+        if (inst == null && SystemProperties.getDefault() != null) {
+            inst = new ProgramPrecompileCache(SystemProperties.getDefault());
+        }
+        return inst;
+    }
+
+    private final long maxMemory;
+    private long memory = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    private final LinkedHashMap<ByteArrayWrapper, ProgramPrecompile> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    public ProgramPrecompileCache(SystemProperties config) {
+        this(config.cacheCodeAnalysisSize() * 1024L * 1024L);
+    }
+
+    public ProgramPrecompileCache(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    public ProgramPrecompile get(byte[] ops) {
+        if (maxMemory <= 0) return ProgramPrecompile.compile(ops);
+
+        ByteArrayWrapper key = new ByteArrayWrapper(ops);
+        synchronized (this) {
+            ProgramPrecompile ret = entries.get(key);
+            if (ret != null) {
+                hits++;
+                return ret;
+            }
+            misses++;
+        }
+
+        // analyzed outside of the lock, the concurrent duplicate work is harmless
+        ProgramPrecompile ret = ProgramPrecompile.compile(ops);
+        synchronized (this) {
+            ProgramPrecompile old = entries.put(key, ret);
+            if (old != null) memory -= entrySize(old);
+            memory += entrySize(ret);
+            evict();
+        }
+        return ret;
+    }
+
+    private static long entrySize(ProgramPrecompile precompile) {
+        return precompile.getCodeSize() + precompile.getMemorySize();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<ByteArrayWrapper, ProgramPrecompile>> it = entries.entrySet().iterator();
+        while (memory > maxMemory && it.hasNext()) {
+            memory -= entrySize(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -4,7 +4,20 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-public class Stack extends java.util.Stack<DataWord> implements ProgramListenerAware {
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * The operand stack of a {@link Program}. It is confined to the thread executing
+ * the program, so it is a plain array of the EVM stack limit size without any
+ * synchronization. The size limit is checked by the {@link Program} before the push
+ */
+public class Stack implements ProgramListenerAware {
+
+    public static final int MAX_SIZE = 1024;
+
+    private final DataWord[] items = new DataWord[MAX_SIZE];
+    private int size = 0;
 
     private ProgramListener programListener;
 
@@ -13,27 +26,70 @@ public class Stack extends java.util.Stack<DataWord> implements ProgramListenerA
         this.programListener = listener;
     }
 
-    @Override
-    public synchronized DataWord pop() {
+    public DataWord pop() {
+        if (size == 0) throw new EmptyStackException();
         if (programListener != null) programListener.onStackPop();
-        return super.pop();
+        DataWord ret = items[--size];
+        items[size] = null;
+        return ret;
     }
 
-    @Override
     public DataWord push(DataWord item) {
         if (programListener != null) programListener.onStackPush(item);
-        return super.push(item);
+        items[size++] = item;
+        return item;
+    }
+
+    public DataWord peek() {
+        if (size == 0) throw new EmptyStackException();
+        return items[size - 1];
+    }
+
+    /**
+     * @param index position from the bottom of the stack
+     */
+    public DataWord get(int index) {
+        if (index < 0 || index >= size) throw new ArrayIndexOutOfBoundsException(index);
+        return items[index];
+    }
+
+    /**
+     * Pushes a copy of the n-th item from the top, n = 1 is the top
+     */
+    public void dup(int n) {
+        push(get(size - n).clone());
     }
 
     public void swap(int from, int to) {
         if (isAccessible(from) && isAccessible(to) && (from != to)) {
             if (programListener != null) programListener.onStackSwap(from, to);
-            DataWord tmp = get(from);
-            set(from, set(to, tmp));
+            DataWord tmp = items[from];
+            items[from] = items[to];
+            items[to] = tmp;
         }
     }
 
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the items from the bottom to the top of the stack
+     */
+    public DataWord[] toArray() {
+        return Arrays.copyOf(items, size);
+    }
+
     private boolean isAccessible(int from) {
-        return from >= 0 && from < size();
+        return from >= 0 && from < size;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
     }
 }
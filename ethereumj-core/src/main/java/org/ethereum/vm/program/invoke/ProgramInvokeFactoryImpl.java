@@ -30,6 +30,10 @@ public class ProgramInvokeFactoryImpl implements ProgramInvokeFactory {
     @Autowired
     private Blockchain blockchain;
 
+    /* fixed best block of the transactions executed off the thread importing the block,
+     * which holds the blockchain lock */
+    private Block bestBlock;
+
     public ProgramInvokeFactoryImpl() {
     }
 
@@ -37,13 +41,17 @@ public class ProgramInvokeFactoryImpl implements ProgramInvokeFactory {
         this.blockchain = blockchain;
     }
 
+    public ProgramInvokeFactoryImpl(Block bestBlock) {
+        this.bestBlock = bestBlock;
+    }
+
     // Invocation by the wire tx
     @Override
     public ProgramInvoke createProgramInvoke(Transaction tx, Block block, Repository repository,
                                              BlockStore blockStore) {
 
         // https://ethereum.etherpad.mozilla.org/26
-        Block lastBlock = blockchain.getBestBlock();
+        Block lastBlock = bestBlock != null ? bestBlock : blockchain.getBestBlock();
 
         /***         ADDRESS op       ***/
         // YP: Get address of currently executing account.
@@ -1,5 +1,6 @@
 package org.ethereum.config;
 
+import com.typesafe.config.Config;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -39,4 +40,18 @@ public class SystemPropertiesTest {
         BlockchainNetConfig blockchainConfig2= systemProperties2.getBlockchainConfig();
         Assert.assertNotEquals(blockchainConfig1.getClass(), blockchainConfig2.getClass());
     }
+
+    @Test
+    public void levelDbOptionsTest() {
+        SystemProperties props = new SystemProperties();
+        props.overrideParams("database.leveldb.index.cacheSize", "3");
+
+        Config state = props.levelDbOptions("state");
+        Assert.assertEquals(128, state.getInt("cacheSize"));
+        Assert.assertEquals(props.levelDbOptions("default").getInt("blockSize"), state.getInt("blockSize"));
+
+        Assert.assertEquals(3, props.levelDbOptions("index").getInt("cacheSize"));
+        Assert.assertEquals(0, props.levelDbOptions("details-storage/0011").getInt("cacheSize"));
+        Assert.assertEquals("snappy", props.levelDbOptions("block").getString("compression"));
+    }
 }
@@ -0,0 +1,118 @@
+package org.ethereum.core;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.config.blockchain.FrontierConfig;
+import org.ethereum.config.net.MainNetConfig;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ChainSnapshotTest {
+
+    @BeforeClass
+    public static void setup() {
+        SystemProperties.getDefault().setBlockchainConfig(new FrontierConfig(new FrontierConfig.FrontierConstants() {
+            @Override
+            public BigInteger getMINIMUM_DIFFICULTY() {
+                return BigInteger.ONE;
+            }
+        }));
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        SystemProperties.getDefault().setBlockchainConfig(MainNetConfig.INSTANCE);
+    }
+
+    @Test
+    public void testReadsDontWaitForImport() throws Exception {
+        StandaloneBlockchain sb = new StandaloneBlockchain();
+        sb.createBlock();
+        sb.createBlock();
+        final Block best = sb.createBlock();
+        final BlockchainImpl blockchain = sb.getBlockchain();
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // an import in progress
+            executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    synchronized (blockchain) {
+                        locked.countDown();
+                        release.await();
+                    }
+                    return null;
+                }
+            });
+            locked.await();
+
+            Future<List<BlockHeader>> headers = executor.submit(new Callable<List<BlockHeader>>() {
+                @Override
+                public List<BlockHeader> call() {
+                    assertArrayEquals(best.getHash(), blockchain.getBestBlock().getHash());
+                    assertArrayEquals(best.getHash(), blockchain.getListOfHashesStartFromBlock(3, 10).get(0));
+                    assertEquals(1, blockchain.getListOfBodiesByHashes(Collections.singletonList(best.getHash())).size());
+                    return blockchain.getListOfHeadersStartFrom(new BlockIdentifier(null, 0), 0, 10, false);
+                }
+            });
+
+            assertEquals(4, headers.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFork() throws Exception {
+        StandaloneBlockchain sb = new StandaloneBlockchain();
+        Block b1 = sb.createBlock();
+        final Block b2 = sb.createBlock();
+        final BlockchainImpl blockchain = sb.getBlockchain();
+
+        final Block f2 = sb.createForkBlock(b1);
+        assertSnapshot(blockchain, b2);
+
+        Block f3 = sb.createForkBlock(f2);
+        assertSnapshot(blockchain, f3);
+        assertEquals(blockchain.getBlockStore().getTotalDifficultyForHash(f3.getHash()),
+                readSnapshot(blockchain).getTotalDifficulty());
+    }
+
+    private static void assertSnapshot(BlockchainImpl blockchain, Block best) throws Exception {
+        ChainSnapshot snapshot = readSnapshot(blockchain);
+        assertArrayEquals(best.getHash(), snapshot.getBestHash());
+        assertEquals(blockchain.getBlockStore().getTotalDifficultyForHash(best.getHash()), snapshot.getTotalDifficulty());
+    }
+
+    private static ChainSnapshot readSnapshot(final BlockchainImpl blockchain) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(new Callable<ChainSnapshot>() {
+                @Override
+                public ChainSnapshot call() {
+                    return blockchain.getChainSnapshot();
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.ethereum.core;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.config.blockchain.FrontierConfig;
+import org.ethereum.config.net.MainNetConfig;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.manager.AdminInfo;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.ethereum.vm.DataWord;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The blocks created with the sequential execution are imported with the parallel one,
+ * the import fails unless the state, the receipts and the logs are the same
+ */
+public class ParallelTransactionExecutorTest {
+
+    // increments the storage row given by the call data: PUSH1 0 CALLDATALOAD DUP1 SLOAD PUSH1 1 ADD SWAP1 SSTORE
+    private static final byte[] COUNTER = deploy("60003580546001019055");
+    // saves the coinbase balance to the row 0: COINBASE BALANCE PUSH1 0 SSTORE
+    private static final byte[] COINBASE_BALANCE = deploy("4131600055");
+    // sends all the ether to the caller and logs the contract balance: ADDRESS BALANCE PUSH1 0 MSTORE
+    // PUSH1 32 PUSH1 0 LOG0, then SELFDESTRUCT to CALLER
+    private static final byte[] REFUND = deploy("303160005260206000a033ff");
+
+    private static final BigInteger ETHER = BigInteger.TEN.pow(18);
+
+    private final ECKey[] keys = new ECKey[6];
+    private final Map<ECKey, Long> nonces = new HashMap<>();
+
+    @BeforeClass
+    public static void setup() {
+        SystemProperties.getDefault().setBlockchainConfig(new FrontierConfig(new FrontierConfig.FrontierConstants() {
+            @Override
+            public BigInteger getMINIMUM_DIFFICULTY() {
+                return BigInteger.ONE;
+            }
+        }));
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        SystemProperties.getDefault().setBlockchainConfig(MainNetConfig.INSTANCE);
+    }
+
+    @Before
+    public void createKeys() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ECKey.fromPrivate(BigInteger.valueOf(1000 + i));
+        }
+    }
+
+    @After
+    public void resetThreads() {
+        SystemProperties.getDefault().overrideParams("blockchain.parallelTx.threads", "0");
+    }
+
+    @Test
+    public void testSameResults() {
+        StandaloneBlockchain sequential = new StandaloneBlockchain();
+        List<Block> blocks = new ArrayList<>();
+
+        // the same sender
+        for (ECKey key : keys) {
+            sequential.sendEther(key.getAddress(), ETHER);
+        }
+        blocks.add(sequential.createBlock());
+
+        Transaction counter = tx(sequential, keys[0], new byte[0], 0, COUNTER);
+        Transaction coinbaseBalance = tx(sequential, keys[1], new byte[0], 0, COINBASE_BALANCE);
+        Transaction refund = tx(sequential, keys[2], new byte[0], 1000, REFUND);
+        tx(sequential, keys[3], keys[4].getAddress(), 100, new byte[0]);
+        blocks.add(sequential.createBlock());
+
+        byte[] counterAddr = counter.getContractAddress();
+        byte[] coinbaseBalanceAddr = coinbaseBalance.getContractAddress();
+
+        // independent rows
+        tx(sequential, keys[0], counterAddr, 0, row(1));
+        tx(sequential, keys[1], counterAddr, 0, row(2));
+        // the same row
+        tx(sequential, keys[2], counterAddr, 0, row(1));
+        // reads the coinbase fees of the preceding transactions
+        tx(sequential, keys[3], coinbaseBalanceAddr, 0, new byte[0]);
+        // sent from the account which has received the ether
+        tx(sequential, keys[5], keys[4].getAddress(), 100, new byte[0]);
+        tx(sequential, keys[4], keys[0].getAddress(), 150, new byte[0]);
+        blocks.add(sequential.createBlock());
+
+        // the contract deleted in the block
+        tx(sequential, keys[0], refund.getContractAddress(), 0, new byte[0]);
+        tx(sequential, keys[1], refund.getContractAddress(), 0, new byte[0]);
+        tx(sequential, keys[2], counterAddr, 0, row(1));
+        tx(sequential, keys[3], keys[0].getAddress(), 1, new byte[0]);
+        blocks.add(sequential.createBlock());
+
+        SystemProperties.getDefault().overrideParams("blockchain.parallelTx.threads", "4");
+        StandaloneBlockchain parallel = new StandaloneBlockchain();
+        AdminInfo adminInfo = new AdminInfo();
+        parallel.getBlockchain().withAdminInfo(adminInfo);
+        for (Block block : blocks) {
+            assertEquals(ImportResult.IMPORTED_BEST, parallel.getBlockchain().tryToConnect(block));
+        }
+
+        assertArrayEquals(sequential.getBlockchain().getBestBlock().getStateRoot(),
+                parallel.getBlockchain().getRepository().getRoot());
+
+        List<Double> conflictRate = adminInfo.getBlockConflictRate();
+        assertEquals(blocks.size(), conflictRate.size());
+        // all the transactions of the same sender but the first one
+        assertEquals(5.0 / 6, conflictRate.get(0), 1e-9);
+        assertTrue(conflictRate.get(2) > 0 && conflictRate.get(2) < 1);
+    }
+
+    private Transaction tx(StandaloneBlockchain sb, ECKey sender, byte[] to, long value, byte[] data) {
+        Long nonce = nonces.get(sender);
+        nonce = nonce == null ? 0 : nonce;
+        nonces.put(sender, nonce + 1);
+        Transaction tx = sb.createTransaction(sender, nonce, to, BigInteger.valueOf(value), data);
+        sb.submitTransaction(tx);
+        return tx;
+    }
+
+    private static byte[] row(int key) {
+        return new DataWord(key).getData();
+    }
+
+    /**
+     * @return the init code returning the given code
+     */
+    private static byte[] deploy(String code) {
+        byte[] body = Hex.decode(code);
+        // PUSH1 size DUP1 PUSH1 11 PUSH1 0 CODECOPY PUSH1 0 RETURN
+        byte[] init = Hex.decode(String.format("60%02x80600b6000396000f3", body.length));
+        return ByteUtil.merge(init, body);
+    }
+}
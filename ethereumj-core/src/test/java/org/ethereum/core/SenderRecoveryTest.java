@@ -0,0 +1,54 @@
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SenderRecoveryTest {
+
+    @Test
+    public void testRecover() {
+        SenderRecovery recovery = new SenderRecovery(3, 100);
+        List<ECKey> keys = new ArrayList<>();
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ECKey key = ECKey.fromPrivate(BigInteger.valueOf(100 + i));
+            keys.add(key);
+            txs.add(new Transaction(createTx(key, i).getEncoded()));
+        }
+
+        recovery.recover(txs);
+
+        for (int i = 0; i < txs.size(); i++) {
+            assertArrayEquals(keys.get(i).getAddress(), txs.get(i).sendAddress);
+            assertArrayEquals(keys.get(i).getAddress(), recovery.getSender(new Transaction(txs.get(i).getEncoded())));
+        }
+    }
+
+    @Test
+    public void testInvalidSignature() {
+        SenderRecovery recovery = new SenderRecovery(0, 100);
+        Transaction tx = createTx(ECKey.fromPrivate(BigInteger.TEN), 0);
+        Transaction invalid = new Transaction(tx.getNonce(), tx.getGasPrice(), tx.getGasLimit(),
+                tx.getReceiveAddress(), tx.getValue(), tx.getData(),
+                tx.getSignature().r.toByteArray(), tx.getSignature().s.toByteArray(), (byte) 20);
+
+        assertNull(recovery.getSender(invalid));
+        assertNotNull(recovery.getSender(tx));
+    }
+
+    private static Transaction createTx(ECKey key, long nonce) {
+        Transaction tx = new Transaction(longToBytesNoLeadZeroes(nonce), longToBytesNoLeadZeroes(1),
+                longToBytesNoLeadZeroes(21000), new byte[20], longToBytesNoLeadZeroes(1), null);
+        tx.sign(key);
+        return tx;
+    }
+}
@@ -0,0 +1,75 @@
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.db.RepositoryImpl;
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatePrefetcherTest {
+
+    private static final byte[] CONTRACT = Hex.decode("cd2a3d9f938e13cd947ec05abc7fe734df8dd826");
+    private static final DataWord KEY = new DataWord(7);
+
+    static class CountingDB extends HashMapDB {
+        int reads;
+
+        @Override
+        public synchronized byte[] get(byte[] key) {
+            reads++;
+            return super.get(key);
+        }
+    }
+
+    @Test
+    public void testPrefetch() {
+        CountingDB detailsDS = new CountingDB();
+        HashMapDB stateDS = new HashMapDB();
+        RepositoryImpl repository = new RepositoryImpl(detailsDS, stateDS);
+        Repository track = repository.startTracking();
+        track.createAccount(CONTRACT);
+        track.saveCode(CONTRACT, Hex.decode("6000"));
+        track.addStorageRow(CONTRACT, KEY, new DataWord(42));
+        track.commit();
+        repository.flush();
+        byte[] root = repository.getRoot();
+
+        Transaction tx = new Transaction(longToBytesNoLeadZeroes(0), longToBytesNoLeadZeroes(1),
+                longToBytesNoLeadZeroes(100000), CONTRACT, longToBytesNoLeadZeroes(0), null);
+        tx.sign(ECKey.fromPrivate(BigInteger.TEN));
+        List<Transaction> txs = Collections.singletonList(tx);
+
+        StatePrefetcher prefetcher = new StatePrefetcher(1);
+        prefetcher.record(TransactionExecutionSummary.builderFor(tx)
+                .touchedStorage(Collections.singletonMap(KEY, new DataWord(42)), null).build());
+
+        // not prefetched
+        RepositoryImpl cold = new RepositoryImpl(detailsDS, stateDS);
+        cold.syncToRoot(root);
+        detailsDS.reads = 0;
+        assertEquals(new DataWord(42), cold.getStorageValue(CONTRACT, KEY));
+        assertTrue(detailsDS.reads > 0);
+
+        RepositoryImpl prefetched = new RepositoryImpl(detailsDS, stateDS);
+        prefetched.syncToRoot(root);
+        StatePrefetcher.Prefetch prefetch = prefetcher.new Prefetch(txs, prefetched);
+        prefetch.run();
+
+        detailsDS.reads = 0;
+        prefetch.txStarted(0);
+        assertEquals(new DataWord(42), prefetched.getStorageValue(CONTRACT, KEY));
+        assertArrayEquals(Hex.decode("6000"), prefetched.getCode(CONTRACT));
+        assertEquals(0, detailsDS.reads);
+        assertTrue(prefetch.finish() > 0);
+    }
+}
@@ -0,0 +1,100 @@
+package org.ethereum.crypto;
+
+import org.ethereum.crypto.ECKey.ECDSASignature;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The optimized backend gives the same results as the generic SpongyCastle one
+ */
+public class Secp256k1Test {
+
+    private final Secp256k1Backend reference = new SpongyCastleSecp256k1();
+    private final Secp256k1Backend optimized = new OptimizedSecp256k1();
+    private final Random random = new Random(1);
+
+    @Test
+    public void testRecoverSignatures() {
+        for (int i = 0; i < 100; i++) {
+            ECKey key = ECKey.fromPrivate(new BigInteger(255, random).add(BigInteger.ONE));
+            byte[] hash = randomBytes(32);
+            ECDSASignature sig = key.sign(hash);
+
+            assertArrayEquals(key.getPubKey(), optimized.recoverPubBytes(sig.v - 27, sig.r, sig.s, hash));
+            for (int recId = 0; recId < 4; recId++) {
+                assertSameRecovery(recId, sig.r, sig.s, hash);
+            }
+
+            assertTrue(optimized.verify(hash, sig.r, sig.s, key.getPubKey()));
+            hash[0]++;
+            assertFalse(optimized.verify(hash, sig.r, sig.s, key.getPubKey()));
+            assertEquals(reference.verify(hash, sig.r, sig.s, key.getPubKey()),
+                    optimized.verify(hash, sig.r, sig.s, key.getPubKey()));
+        }
+    }
+
+    @Test
+    public void testRecoverRandom() {
+        for (int i = 0; i < 100; i++) {
+            BigInteger r = new BigInteger(256, random);
+            BigInteger s = new BigInteger(256, random);
+            byte[] hash = randomBytes(32);
+            for (int recId = 0; recId < 4; recId++) {
+                assertSameRecovery(recId, r, s, hash);
+            }
+        }
+    }
+
+    @Test
+    public void testRecoverEdgeCases() {
+        BigInteger n = ECKey.CURVE.getN();
+        BigInteger[] values = {BigInteger.ONE, BigInteger.valueOf(2), n.subtract(BigInteger.ONE),
+                ECKey.HALF_CURVE_ORDER, ECKey.CURVE.getCurve().getField().getCharacteristic().subtract(n)};
+        byte[] hash = randomBytes(32);
+        for (BigInteger r : values) {
+            for (BigInteger s : values) {
+                for (int recId = 0; recId < 4; recId++) {
+                    assertSameRecovery(recId, r, s, hash);
+                    assertSameRecovery(recId, r, s, new byte[32]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCreate() {
+        assertTrue(Secp256k1.create("java") instanceof OptimizedSecp256k1);
+        assertEquals(SpongyCastleSecp256k1.class, Secp256k1.create("spongycastle").getClass());
+        assertTrue(Secp256k1.create(OptimizedSecp256k1.class.getName()) instanceof OptimizedSecp256k1);
+        assertTrue(Secp256k1.create("org.ethereum.crypto.NoSuchSecp256k1") instanceof OptimizedSecp256k1);
+    }
+
+    private void assertSameRecovery(int recId, BigInteger r, BigInteger s, byte[] hash) {
+        String message = "recId: " + recId + ", r: " + r.toString(16) + ", s: " + s.toString(16);
+        assertEquals(message, recover(reference, recId, r, s, hash), recover(optimized, recId, r, s, hash));
+    }
+
+    private static String recover(Secp256k1Backend backend, int recId, BigInteger r, BigInteger s, byte[] hash) {
+        try {
+            byte[] pub = backend.recoverPubBytes(recId, r, s, hash);
+            return pub == null ? null : Arrays.toString(pub);
+        } catch (RuntimeException e) {
+            // the reference fails the same way for the invalid points
+            return e.getClass().getName();
+        }
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
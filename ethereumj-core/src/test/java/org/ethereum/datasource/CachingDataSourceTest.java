@@ -0,0 +1,152 @@
+package org.ethereum.datasource;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class CachingDataSourceTest {
+
+    static class SlowDB extends HashMapDB {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void updateBatch(Map<byte[], byte[]> rows) {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            super.updateBatch(rows);
+        }
+    }
+
+    @Test
+    public void testWriteBack() {
+        HashMapDB db = new HashMapDB();
+        CachingDataSource ds = new CachingDataSource(db);
+
+        ds.put(sha3(new byte[]{1}), new byte[]{1});
+        ds.put(sha3(new byte[]{2}), new byte[]{2});
+        assertEquals(0, db.getAddedItems());
+        assertTrue(ds.getSize() > 0);
+
+        ds.flush();
+        assertEquals(2, db.getAddedItems());
+        assertEquals(0, ds.getSize());
+
+        ds.delete(sha3(new byte[]{1}));
+        assertNull(ds.get(sha3(new byte[]{1})));
+        assertArrayEquals(new byte[]{1}, db.get(sha3(new byte[]{1})));
+
+        ds.flush();
+        assertNull(db.get(sha3(new byte[]{1})));
+        assertArrayEquals(new byte[]{2}, ds.get(sha3(new byte[]{2})));
+    }
+
+    @Test
+    public void testFailedFlushKeepsRecords() {
+        final boolean[] failing = {true};
+        HashMapDB db = new HashMapDB() {
+            @Override
+            public void updateBatch(Map<byte[], byte[]> rows) {
+                if (failing[0]) throw new RuntimeException("Disk failure");
+                super.updateBatch(rows);
+            }
+        };
+        CachingDataSource ds = new CachingDataSource(db);
+        ds.put(sha3(new byte[]{1}), new byte[]{1});
+
+        try {
+            ds.flush();
+            fail("Flush failure expected");
+        } catch (RuntimeException e) {
+            assertEquals("Disk failure", e.getCause().getMessage());
+        }
+        assertArrayEquals(new byte[]{1}, ds.get(sha3(new byte[]{1})));
+        assertTrue(ds.getSize() > 0);
+
+        failing[0] = false;
+        ds.flush();
+        assertArrayEquals(new byte[]{1}, db.get(sha3(new byte[]{1})));
+        assertEquals(0, ds.getSize());
+    }
+
+    @Test
+    public void testBackgroundFlush() throws InterruptedException {
+        SlowDB db = new SlowDB();
+        byte[] value = new byte[1000];
+        CachingDataSource ds = new CachingDataSource(db, 10 * value.length);
+
+        for (int i = 0; i < 10; i++) {
+            ds.put(sha3(new byte[]{(byte) i}), value);
+        }
+
+        // the watermark is crossed: the records are being written in background
+        assertTrue(db.started.await(10, TimeUnit.SECONDS));
+        assertEquals(0, db.getAddedItems());
+
+        // still served from memory while the flush is running
+        ds.put(sha3(new byte[]{100}), value);
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(value, ds.get(sha3(new byte[]{(byte) i})));
+        }
+        assertArrayEquals(value, ds.get(sha3(new byte[]{100})));
+
+        db.release.countDown();
+        ds.flush();
+        assertEquals(11, db.getAddedItems());
+        assertEquals(0, ds.getSize());
+    }
+
+    @Test
+    public void testReadsNotBlockedByWaitingWriter() throws Exception {
+        SlowDB db = new SlowDB();
+        final byte[] value = new byte[1000];
+        final CachingDataSource ds = new CachingDataSource(db, 10 * value.length);
+
+        for (int i = 0; i < 10; i++) {
+            ds.put(sha3(new byte[]{(byte) i}), value);
+        }
+        assertTrue(db.started.await(10, TimeUnit.SECONDS));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // crosses the watermark again and waits for the running flush
+            Future<?> writer = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 10; i < 20; i++) {
+                        ds.put(sha3(new byte[]{(byte) i}), value);
+                    }
+                }
+            });
+
+            Future<byte[]> read = executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return ds.get(sha3(new byte[]{5}));
+                }
+            });
+            assertArrayEquals(value, read.get(5, TimeUnit.SECONDS));
+            assertFalse(writer.isDone());
+
+            db.release.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+            ds.flush();
+            assertEquals(20, db.getAddedItems());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
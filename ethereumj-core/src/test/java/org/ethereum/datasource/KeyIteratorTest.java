@@ -0,0 +1,64 @@
+package org.ethereum.datasource;
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KeyIteratorTest {
+
+    static void fill(KeyValueDataSource ds) {
+        for (String key : new String[]{"00", "0100", "0101", "01ff", "02", "ff", "ffff"}) {
+            ds.put(Hex.decode(key), new byte[]{1});
+        }
+    }
+
+    static List<String> collect(KeyIterator it) {
+        List<String> ret = new ArrayList<>();
+        try (KeyIterator keys = it) {
+            while (keys.hasNext()) {
+                ret.add(Hex.toHexString(keys.next()));
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void testPrefixEnd() {
+        assertArrayEquals(Hex.decode("02"), KeyIterators.prefixEnd(Hex.decode("01")));
+        assertArrayEquals(Hex.decode("02"), KeyIterators.prefixEnd(Hex.decode("01ff")));
+        assertNull(KeyIterators.prefixEnd(Hex.decode("ffff")));
+    }
+
+    @Test
+    public void testHashMapDB() {
+        HashMapDB db = new HashMapDB();
+        fill(db);
+
+        assertEquals("[00, 0100, 0101, 01ff, 02, ff, ffff]", collect(KeyIterators.all(db)).toString());
+        assertEquals("[0100, 0101, 01ff]", collect(KeyIterators.prefix(db, Hex.decode("01"))).toString());
+        assertEquals("[ff, ffff]", collect(KeyIterators.prefix(db, Hex.decode("ff"))).toString());
+        assertEquals("[0101, 01ff, 02]", collect(db.keyIterator(Hex.decode("0101"), Hex.decode("ff"))).toString());
+    }
+
+    @Test
+    public void testCachingDataSource() {
+        HashMapDB db = new HashMapDB();
+        fill(db);
+        CachingDataSource ds = new CachingDataSource(db);
+        ds.delete(Hex.decode("0100"));
+        ds.put(Hex.decode("0102"), new byte[]{2});
+        ds.put(Hex.decode("0101"), new byte[]{2});
+
+        List<String> keys = collect(KeyIterators.prefix(ds, Hex.decode("01")));
+        assertEquals(3, keys.size());
+        assertTrue(keys.containsAll(Arrays.asList("0101", "0102", "01ff")));
+
+        ds.flush();
+        assertEquals("[0101, 0102, 01ff]", collect(KeyIterators.prefix(ds, Hex.decode("01"))).toString());
+    }
+}
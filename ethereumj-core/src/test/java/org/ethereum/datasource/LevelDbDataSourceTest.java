@@ -2,6 +2,7 @@ package org.ethereum.datasource;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -42,6 +43,20 @@ public class LevelDbDataSourceTest {
         dataSource.close();
     }
 
+    @Test
+    public void testKeyIterator() {
+        LevelDbDataSource dataSource = new LevelDbDataSource("test-iterator");
+        dataSource.init();
+
+        KeyIteratorTest.fill(dataSource);
+        assertEquals("[0100, 0101, 01ff]",
+                KeyIteratorTest.collect(KeyIterators.prefix(dataSource, Hex.decode("01"))).toString());
+        assertEquals("[0101, 01ff, 02]",
+                KeyIteratorTest.collect(dataSource.keyIterator(Hex.decode("0101"), Hex.decode("ff"))).toString());
+
+        dataSource.close();
+    }
+
     private static Map<byte[], byte[]> createBatch(int batchSize) {
         HashMap<byte[], byte[]> result = new HashMap<>();
         for (int i = 0; i < batchSize; i++) {
@@ -0,0 +1,116 @@
+package org.ethereum.datasource;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.util.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class RocksDbDataSourceTest {
+
+    private SystemProperties config;
+    private RocksDbStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        config = new SystemProperties();
+        config.setDataBaseDir(Files.createTempDirectory("rocksdb-test").toString());
+        storage = new RocksDbStorage(config);
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+        FileUtil.recursiveDelete(config.databaseDir());
+    }
+
+    @Test
+    public void testColumnFamilies() {
+        RocksDbDataSource state = new RocksDbDataSource("state", storage);
+        RocksDbDataSource storage1 = new RocksDbDataSource("details-storage/01", storage);
+        state.init();
+        storage1.init();
+
+        state.put(Hex.decode("01"), Hex.decode("aa"));
+        storage1.put(Hex.decode("02"), Hex.decode("bb"));
+        assertNull(state.get(Hex.decode("02")));
+        assertArrayEquals(Hex.decode("bb"), storage1.get(Hex.decode("02")));
+
+        // all the contract storages share one family
+        RocksDbDataSource storage2 = new RocksDbDataSource("details-storage/02", storage);
+        storage2.init();
+        assertArrayEquals(Hex.decode("bb"), storage2.get(Hex.decode("02")));
+
+        state.delete(Hex.decode("01"));
+        assertNull(state.get(Hex.decode("01")));
+
+        KeyIteratorTest.fill(state);
+        assertEquals("[0100, 0101, 01ff]",
+                KeyIteratorTest.collect(KeyIterators.prefix(state, Hex.decode("01"))).toString());
+        assertEquals("[0101, 01ff, 02]",
+                KeyIteratorTest.collect(state.keyIterator(Hex.decode("0101"), Hex.decode("ff"))).toString());
+
+        // the families survive reopening
+        storage.close();
+        storage = new RocksDbStorage(config);
+        RocksDbDataSource reopened = new RocksDbDataSource("details-storage/03", storage);
+        reopened.init();
+        assertArrayEquals(Hex.decode("bb"), reopened.get(Hex.decode("02")));
+    }
+
+    @Test
+    public void testAtomicBatch() {
+        RocksDbDataSource blocks = new RocksDbDataSource("block", storage);
+        RocksDbDataSource index = new RocksDbDataSource("index", storage);
+        blocks.init();
+        index.init();
+        index.put(Hex.decode("01"), Hex.decode("aa"));
+
+        storage.startBatch();
+        blocks.put(Hex.decode("01"), Hex.decode("bb"));
+        index.delete(Hex.decode("01"));
+        // the pending writes are visible to the reads
+        assertArrayEquals(Hex.decode("bb"), blocks.get(Hex.decode("01")));
+        assertNull(index.get(Hex.decode("01")));
+        storage.abortBatch();
+
+        assertNull(blocks.get(Hex.decode("01")));
+        assertArrayEquals(Hex.decode("aa"), index.get(Hex.decode("01")));
+
+        storage.startBatch();
+        blocks.put(Hex.decode("01"), Hex.decode("bb"));
+        index.delete(Hex.decode("01"));
+        storage.commitBatch();
+
+        assertArrayEquals(Hex.decode("bb"), blocks.get(Hex.decode("01")));
+        assertNull(index.get(Hex.decode("01")));
+    }
+
+    @Test
+    public void testMigration() {
+        LevelDbDataSource level1 = new LevelDbDataSource("state");
+        LevelDbDataSource level2 = new LevelDbDataSource("details-storage/01");
+        for (LevelDbDataSource ds : new LevelDbDataSource[]{level1, level2}) {
+            ds.config = config;
+            ds.init();
+            KeyIteratorTest.fill(ds);
+            ds.close();
+        }
+
+        LevelDbToRocksDb.migrate(config, storage);
+
+        RocksDbDataSource state = new RocksDbDataSource("state", storage);
+        RocksDbDataSource storage1 = new RocksDbDataSource("details-storage/01", storage);
+        state.init();
+        storage1.init();
+        assertEquals(KeyIteratorTest.collect(KeyIterators.all(storage1)).toString(),
+                KeyIteratorTest.collect(KeyIterators.all(state)).toString());
+        assertEquals(7, state.keys().size());
+        assertArrayEquals(new byte[]{1}, state.get(Hex.decode("0101")));
+    }
+}
@@ -3,6 +3,8 @@ package org.ethereum.db;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.datasource.HashMapDB;
 import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.trie.SecureTrie;
+import org.ethereum.util.RLP;
 import org.ethereum.vm.DataWord;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
@@ -14,6 +16,7 @@ import static org.ethereum.TestUtils.randomAddress;
 import static org.ethereum.TestUtils.randomBytes;
 import static org.ethereum.TestUtils.randomDataWord;
 import static org.ethereum.util.ByteUtil.toHexString;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -260,6 +263,29 @@ public class ContractDetailsTest {
         }
     }
 
+    @Test
+    public void testCacheStorageHash() {
+        ContractDetailsImpl details = new ContractDetailsImpl();
+        ContractDetailsCacheImpl cache = new ContractDetailsCacheImpl(null);
+        for (int i = 0; i < 1000; i++) {
+            DataWord key = randomDataWord();
+            DataWord value = randomDataWord();
+
+            details.put(key, value);
+            cache.put(key, value);
+        }
+        assertArrayEquals(details.getStorageHash(), cache.getStorageHash());
+
+        // the zero values read through the cache are hashed too
+        DataWord zeroKey = randomDataWord();
+        cache.put(zeroKey, DataWord.ZERO.clone());
+        SecureTrie trie = new SecureTrie(null);
+        for (Map.Entry<DataWord, DataWord> entry : cache.getStorage().entrySet()) {
+            trie.update(entry.getKey().getData(), RLP.encodeElement(entry.getValue().getNoLeadZeroesData()));
+        }
+        assertArrayEquals(trie.getRootHash(), cache.getStorageHash());
+    }
+
     private static ContractDetails deserialize(byte[] rlp, KeyValueDataSource externalStorage) {
         ContractDetailsImpl result = new ContractDetailsImpl();
         result.setExternalStorageDataSource(externalStorage);
@@ -10,6 +10,11 @@ import org.spongycastle.util.encoders.Hex;
 
 import javax.annotation.Nullable;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.ethereum.TestUtils.*;
 import static org.ethereum.util.ByteUtil.toHexString;
@@ -197,6 +202,116 @@ public class DetailsDataStoreTest {
         detailsWithInternalStorage.put(randomDataWord(), randomDataWord());
     }
 
+    @Test
+    public void testSlowReadOverlapsUpdate() throws Exception {
+        SlowDB source = new SlowDB();
+        DatabaseImpl db = new DatabaseImpl(source);
+        final DetailsDataStore dds = new DetailsDataStore();
+        dds.setDB(db);
+
+        final byte[] c_key = Hex.decode("1a2b");
+        ContractDetails stale = new ContractDetailsImpl();
+        stale.setCode(Hex.decode("60606060"));
+        stale.put(new DataWord(1), new DataWord(1));
+        dds.update(c_key, stale);
+        dds.flush();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the prefetch reads the DB copy while the import commits the same contract
+            source.slowDown();
+            Future<ContractDetails> prefetched = executor.submit(new Callable<ContractDetails>() {
+                @Override
+                public ContractDetails call() {
+                    return dds.get(c_key);
+                }
+            });
+            source.reading.await();
+
+            ContractDetails updated = new ContractDetailsImpl();
+            updated.setCode(Hex.decode("60606060"));
+            updated.put(new DataWord(1), new DataWord(2));
+            dds.update(c_key, updated);
+
+            source.release.countDown();
+            assertSame(updated, prefetched.get());
+            assertSame(updated, dds.get(c_key));
+
+            dds.flush();
+            assertEquals(new DataWord(2), dds.get(c_key).get(new DataWord(1)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSlowReadOverlapsFlush() throws Exception {
+        SlowDB source = new SlowDB();
+        DatabaseImpl db = new DatabaseImpl(source);
+        final DetailsDataStore dds = new DetailsDataStore();
+        dds.setDB(db);
+
+        final byte[] c_key = Hex.decode("1a2b");
+        ContractDetails stale = new ContractDetailsImpl();
+        stale.setCode(Hex.decode("60606060"));
+        stale.put(new DataWord(1), new DataWord(1));
+        dds.update(c_key, stale);
+        dds.flush();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            source.slowDown();
+            Future<ContractDetails> prefetched = executor.submit(new Callable<ContractDetails>() {
+                @Override
+                public ContractDetails call() {
+                    return dds.get(c_key);
+                }
+            });
+            source.reading.await();
+
+            ContractDetails updated = new ContractDetailsImpl();
+            updated.setCode(Hex.decode("60606060"));
+            updated.put(new DataWord(1), new DataWord(2));
+            dds.update(c_key, updated);
+            dds.flush();
+
+            // the stale DB copy read before the flush must not get back into the cache
+            source.release.countDown();
+            assertEquals(new DataWord(2), prefetched.get().get(new DataWord(1)));
+            assertEquals(new DataWord(2), dds.get(c_key).get(new DataWord(1)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Holds the first read after {@link #slowDown()} until released
+     */
+    private static class SlowDB extends HashMapDB {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean slow;
+
+        void slowDown() {
+            slow = true;
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            byte[] data = super.get(key);
+            if (slow) {
+                slow = false;
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return data;
+        }
+    }
+
     private static ContractDetails randomContractDetails(int codeSize, int storageSize, @Nullable KeyValueDataSource storageDataSource,
                                                          boolean external) {
         ContractDetailsImpl result = new ContractDetailsImpl();
@@ -16,8 +16,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.math.BigInteger;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -27,8 +29,13 @@ import java.util.*;
 
 import static java.math.BigInteger.ZERO;
 import static org.ethereum.TestUtils.*;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.bigIntegerToBytes;
+import static org.ethereum.util.ByteUtil.intToBytes;
 import static org.ethereum.util.ByteUtil.wrap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 
@@ -1048,6 +1055,184 @@ public class IndexedBlockStoreTest {
         Assert.assertTrue(sb4.isEqual(b4_));
     }
 
+    @Test
+    public void testJavaSerializedIndexMigration() throws IOException {
+        HashMapDB indexDB = new HashMapDB();
+        HashMapDB blocksDB = new HashMapDB();
+
+        // the index written by the older versions
+        BigInteger cummDiff = BigInteger.ZERO;
+        BigInteger cummDiff50 = null;
+        for (int i = 0; i < 100; i++) {
+            Block block = blocks.get(i);
+            cummDiff = cummDiff.add(block.getCumulativeDifficulty());
+            if (i == 50) cummDiff50 = cummDiff;
+            IndexedBlockStore.BlockInfo blockInfo = new IndexedBlockStore.BlockInfo();
+            blockInfo.setHash(block.getHash());
+            blockInfo.setCummDifficulty(cummDiff);
+            blockInfo.setMainChain(true);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new ObjectOutputStream(bos).writeObject(new ArrayList<>(Collections.singletonList(blockInfo)));
+            indexDB.put(intToBytes(i), bos.toByteArray());
+            blocksDB.put(block.getHash(), block.getEncoded());
+        }
+        indexDB.put(Hex.decode("FFFFFFFFFFFFFFFF"), intToBytes(100));
+
+        IndexedBlockStore indexedBlockStore = new IndexedBlockStore();
+        indexedBlockStore.init(indexDB, blocksDB);
+
+        byte[] record = indexDB.get(intToBytes(50));
+        assertEquals(1, record[0]);
+        assertEquals(1 + 3 + 32 + bigIntegerToBytes(cummDiff50).length, record.length);
+        assertEquals(99, indexedBlockStore.getMaxNumber());
+        assertEquals(cummDiff, indexedBlockStore.getTotalDifficulty());
+        assertTrue(Arrays.equals(blocks.get(50).getHash(), indexedBlockStore.getBlockHashByNumber(50)));
+        assertEquals(blocks.get(70).getNumber(), indexedBlockStore.getChainBlockByNumber(70).getNumber());
+
+        assertEquals(50, indexedBlockStore.getBlockNumberByHash(blocks.get(50).getHash()));
+        assertEquals(cummDiff50, indexedBlockStore.getTotalDifficultyForHash(blocks.get(50).getHash()));
+
+        // converted once
+        IndexedBlockStore reopened = new IndexedBlockStore();
+        reopened.init(indexDB, blocksDB);
+        assertTrue(Arrays.equals(record, indexDB.get(intToBytes(50))));
+        assertEquals(cummDiff, reopened.getTotalDifficulty());
+    }
+
+    @Test
+    public void testHashIndex() {
+        HashMapDB indexDB = new HashMapDB();
+        HashMapDB blocksDB = new HashMapDB();
+        IndexedBlockStore indexedBlockStore = new IndexedBlockStore();
+        indexedBlockStore.init(indexDB, blocksDB);
+
+        BigInteger cummDiff = BigInteger.ZERO;
+        for (Block block : blocks.subList(0, 1000)) {
+            cummDiff = cummDiff.add(block.getCumulativeDifficulty());
+            indexedBlockStore.saveBlock(block, cummDiff, true);
+        }
+        indexedBlockStore.flush();
+
+        Block block = blocks.get(500);
+        assertTrue(indexedBlockStore.isBlockExist(block.getHash()));
+        assertEquals(500, indexedBlockStore.getBlockNumberByHash(block.getHash()));
+
+        byte[] unknown = blocks.get(1500).getHash();
+        assertFalse(indexedBlockStore.isBlockExist(unknown));
+        assertEquals(-1, indexedBlockStore.getBlockNumberByHash(unknown));
+        assertEquals(ZERO, indexedBlockStore.getTotalDifficultyForHash(unknown));
+        assertNull(indexedBlockStore.getBlockByHash(unknown));
+
+        // the stored bloom filter and hash index are picked up
+        IndexedBlockStore reopened = new IndexedBlockStore();
+        reopened.init(indexDB, blocksDB);
+        assertEquals(500, reopened.getBlockNumberByHash(block.getHash()));
+        assertEquals(cummDiff, reopened.getTotalDifficultyForHash(blocks.get(999).getHash()));
+        assertFalse(reopened.isBlockExist(unknown));
+    }
+
+    @Test
+    public void testStaleHashBloom() {
+        HashMapDB indexDB = new HashMapDB();
+        HashMapDB blocksDB = new HashMapDB();
+        IndexedBlockStore indexedBlockStore = new IndexedBlockStore();
+        indexedBlockStore.init(indexDB, blocksDB);
+
+        BigInteger cummDiff = BigInteger.ZERO;
+        for (Block block : blocks.subList(0, 1000)) {
+            cummDiff = cummDiff.add(block.getCumulativeDifficulty());
+            indexedBlockStore.saveBlock(block, cummDiff, true);
+        }
+        indexedBlockStore.flush();
+        byte[] bloomKey = Hex.decode("FFFFFFFFFFFFFFFD");
+        byte[] staleBloom = indexDB.get(bloomKey);
+
+        for (Block block : blocks.subList(1000, 1500)) {
+            cummDiff = cummDiff.add(block.getCumulativeDifficulty());
+            indexedBlockStore.saveBlock(block, cummDiff, true);
+        }
+        indexedBlockStore.flush();
+
+        // the index levels reached the disk but the filter didn't
+        indexDB.put(bloomKey, staleBloom);
+
+        IndexedBlockStore reopened = new IndexedBlockStore();
+        reopened.init(indexDB, blocksDB);
+        assertTrue(reopened.isBlockExist(blocks.get(1200).getHash()));
+        assertEquals(1499, reopened.getBlockNumberByHash(blocks.get(1499).getHash()));
+        assertFalse(reopened.isBlockExist(blocks.get(1600).getHash()));
+    }
+
+    @Test
+    public void testHashBloom() {
+        IndexedBlockStore.HashBloom bloom = new IndexedBlockStore.HashBloom(10000);
+        for (int i = 0; i < 10000; i++) {
+            bloom.add(sha3(intToBytes(i)));
+        }
+        IndexedBlockStore.HashBloom decoded = IndexedBlockStore.HashBloom.decode(bloom.encode());
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(decoded.mightContain(sha3(intToBytes(i))));
+            if (decoded.mightContain(sha3(intToBytes(-i - 1)))) falsePositives++;
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 200);
+    }
+
+    @Test
+    public void testBlockInfoSerializer() {
+        List<IndexedBlockStore.BlockInfo> infos = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            IndexedBlockStore.BlockInfo blockInfo = new IndexedBlockStore.BlockInfo();
+            blockInfo.setHash(blocks.get(i).getHash());
+            blockInfo.setCummDifficulty(i == 0 ? ZERO : BigInteger.valueOf(2).pow(100 * i));
+            blockInfo.setMainChain(i == 1);
+            infos.add(blockInfo);
+        }
+
+        List<IndexedBlockStore.BlockInfo> decoded = IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(
+                IndexedBlockStore.BLOCK_INFO_SERIALIZER.serialize(infos));
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(Arrays.equals(infos.get(i).getHash(), decoded.get(i).getHash()));
+            assertEquals(infos.get(i).getCummDifficulty(), decoded.get(i).getCummDifficulty());
+            assertEquals(infos.get(i).isMainChain(), decoded.get(i).isMainChain());
+        }
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkHeadersServing() {
+        IndexedBlockStore indexedBlockStore = new IndexedBlockStore();
+        indexedBlockStore.init(new HashMapDB(), new HashMapDB());
+        BigInteger cummDiff = BigInteger.ZERO;
+        for (Block block : blocks) {
+            cummDiff = cummDiff.add(block.getCumulativeDifficulty());
+            indexedBlockStore.saveBlock(block, cummDiff, true);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long s = System.currentTimeMillis();
+            int headers = 0;
+            for (int i = 192; i < blocks.size(); i += 97) {
+                Block block = indexedBlockStore.getChainBlockByNumber(i);
+                headers += indexedBlockStore.getListHeadersEndWith(block.getHash(), 192).size();
+                indexedBlockStore.getTotalDifficultyForHash(block.getHash());
+            }
+            System.out.println("getListHeadersEndWith: " + headers + " headers in " +
+                    (System.currentTimeMillis() - s) + " ms");
+
+            s = System.currentTimeMillis();
+            int levels = 0;
+            for (int i = 0; i < blocks.size(); i++) {
+                levels += IndexedBlockStore.BLOCK_INFO_SERIALIZER.deserialize(
+                        indexedBlockStore.indexDS.get(intToBytes(i))).size();
+            }
+            System.out.println("Index records decoded: " + levels + " in " +
+                    (System.currentTimeMillis() - s) + " ms");
+        }
+    }
+
 
 // todo: test this
 
@@ -988,4 +988,31 @@ public class RepositoryTest {
             throw new RuntimeException("Test failed.");
         }
     }
+
+    @Test
+    public void testParallelStorageCommit() {
+        Repository repository = new RepositoryImpl(new HashMapDB(), new HashMapDB());
+        Repository reference = new RepositoryImpl(new HashMapDB(), new HashMapDB());
+
+        Repository track = repository.startTracking();
+        for (int i = 0; i < 16; i++) {
+            byte[] addr = HashUtil.sha3omit12(new byte[]{(byte) i});
+            // the contracts committed one by one are processed sequentially
+            Repository referenceTrack = reference.startTracking();
+            track.saveCode(addr, new byte[]{(byte) i});
+            referenceTrack.saveCode(addr, new byte[]{(byte) i});
+            for (int j = 0; j < 100; j++) {
+                track.addStorageRow(addr, new DataWord(j), new DataWord(i * 1000 + j + 1));
+                referenceTrack.addStorageRow(addr, new DataWord(j), new DataWord(i * 1000 + j + 1));
+            }
+            referenceTrack.commit();
+        }
+        track.commit();
+
+        assertArrayEquals(reference.getRoot(), repository.getRoot());
+        for (int i = 0; i < 16; i++) {
+            byte[] addr = HashUtil.sha3omit12(new byte[]{(byte) i});
+            assertEquals(new DataWord(i * 1000 + 100), repository.getStorageValue(addr, new DataWord(99)));
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package org.ethereum.db;
+
+import com.typesafe.config.ConfigFactory;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.trie.Cache;
+import org.ethereum.trie.SecureTrie;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class StatePrunerTest {
+
+    private static final int DEPTH = 3;
+
+    private static byte[] blockHash(long number) {
+        // the main chain hash returned by BlockStoreDummy
+        return sha3(String.valueOf(number).getBytes());
+    }
+
+    private static byte[] key(int i) {
+        return sha3(new byte[]{(byte) i});
+    }
+
+    private static byte[] value(int i, int block) {
+        return sha3(new byte[]{(byte) i, (byte) block});
+    }
+
+    @Test
+    public void testPrune() {
+        SystemProperties config = new SystemProperties(ConfigFactory.parseString(
+                "database.prune.enabled = true, database.prune.maxDepth = " + DEPTH));
+
+        HashMapDB db = new HashMapDB();
+        HashMapDB dbNoPrune = new HashMapDB();
+        StatePruner pruner = new StatePruner(config, new BlockStoreDummy());
+
+        SecureTrie trie = new SecureTrie(db);
+        trie.getCache().setPruner(pruner);
+        pruner.setStateCache(trie.getCache());
+        SecureTrie trieNoPrune = new SecureTrie(dbNoPrune);
+
+        List<byte[]> roots = new ArrayList<>();
+        for (int block = 0; block < 20; block++) {
+
+            if (block == 10) {
+                // fork block on top of the block #9 which is never going to be the main one
+                byte[] parentRoot = trie.getRootHash();
+                trie.update(key(200), value(200, block));
+                trie.update(key(1), value(1, 100));
+                pruner.storeBlockChanges(sha3(new byte[]{1, 2, 3}), block);
+                trie.sync();
+                trie.setRoot(parentRoot);
+            }
+
+            for (int i = 0; i < 30; i++) {
+                int k = (block * 7 + i) % 50;
+                trie.update(key(k), value(k, block));
+                trieNoPrune.update(key(k), value(k, block));
+            }
+            if (block % 3 == 0) {
+                trie.delete(key(block));
+                trieNoPrune.delete(key(block));
+            }
+            roots.add(trie.getRootHash());
+            assertArrayEquals(trieNoPrune.getRootHash(), trie.getRootHash());
+
+            pruner.storeBlockChanges(blockHash(block), block);
+            trie.sync();
+            trieNoPrune.sync();
+            pruner.prune(block);
+        }
+        pruner.close();
+
+        assertTrue(pruner.getPrunedNodes() > 0);
+        assertTrue(db.getAddedItems() < dbNoPrune.getAddedItems());
+
+        // the state of the blocks within the depth is complete
+        for (int block = 19 - DEPTH; block < 20; block++) {
+            SecureTrie check = new SecureTrie(db, roots.get(block));
+            SecureTrie expected = new SecureTrie(dbNoPrune, roots.get(block));
+            for (int k = 0; k < 50; k++) {
+                assertArrayEquals(expected.get(key(k)), check.get(key(k)));
+            }
+            assertArrayEquals(new byte[0], check.get(key(200)));
+        }
+    }
+
+    @Test
+    public void testReinsertWhileDeleting() throws Exception {
+        SystemProperties config = new SystemProperties(ConfigFactory.parseString(
+                "database.prune.enabled = true, database.prune.maxDepth = " + DEPTH));
+
+        HashMapDB db = new HashMapDB();
+        final StatePruner pruner = new StatePruner(config, new BlockStoreDummy());
+        final SlowDeleteCache cache = new SlowDeleteCache(db);
+        cache.setPruner(pruner);
+        pruner.setStateCache(cache);
+
+        final Object node = new Object[]{value(1, 0), value(2, 0)};
+        byte[] hash = (byte[]) cache.put(node);
+        pruner.storeBlockChanges(blockHash(0), 0);
+        cache.commit();
+
+        // the block #1 stops referencing the node, it is deleted once the block is deep enough
+        cache.markRemoved(hash);
+        pruner.storeBlockChanges(blockHash(1), 1);
+        pruner.prune(1 + DEPTH);
+        cache.deleting.await();
+
+        // the next block inserts the same node while the deletion is pending
+        Thread inserter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.put(node);
+            }
+        });
+        inserter.start();
+        while (inserter.getState() != Thread.State.BLOCKED && inserter.isAlive()) {
+            Thread.sleep(1);
+        }
+        cache.release.countDown();
+        inserter.join();
+        pruner.close();
+
+        cache.commit();
+        assertNotNull(db.get(hash));
+    }
+
+    /**
+     * Holds the deletion until released
+     */
+    private static class SlowDeleteCache extends Cache {
+        final CountDownLatch deleting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        SlowDeleteCache(KeyValueDataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public void deleteBatch(Collection<byte[]> keys) {
+            deleting.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            super.deleteBatch(keys);
+        }
+    }
+}
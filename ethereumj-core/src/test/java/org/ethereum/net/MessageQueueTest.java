@@ -0,0 +1,77 @@
+package org.ethereum.net;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.net.p2p.GetPeersMessage;
+import org.ethereum.net.p2p.PingMessage;
+import org.ethereum.net.p2p.PongMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageQueueTest {
+
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+    private MessageQueue queue;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ctx = channel.pipeline().firstContext();
+        queue = new MessageQueue();
+        queue.ethereumListener = new EthereumListenerAdapter();
+    }
+
+    @Test
+    public void testSendOnEnqueue() {
+        queue.sendMessage(new PongMessage());
+        // not active yet
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+
+        queue.activate(ctx);
+        queue.sendMessage(new GetPeersMessage());
+        channel.runPendingTasks();
+
+        assertTrue(channel.readOutbound() instanceof PongMessage);
+        assertTrue(channel.readOutbound() instanceof GetPeersMessage);
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testRequestWaitsForAnswer() throws Exception {
+        queue.activate(ctx);
+        PingMessage ping = new PingMessage();
+        queue.sendMessage(ping);
+        queue.sendMessage(new PongMessage());
+        channel.runPendingTasks();
+
+        assertTrue(channel.readOutbound() instanceof PongMessage);
+        assertEquals(ping, channel.readOutbound());
+        assertNull(channel.readOutbound());
+
+        PingMessage next = new PingMessage();
+        queue.receivedMessage(new PongMessage());
+        queue.sendMessage(next);
+        channel.runPendingTasks();
+
+        assertEquals(next, channel.readOutbound());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testClose() {
+        queue.activate(ctx);
+        queue.close();
+        queue.sendMessage(new PongMessage());
+        channel.runPendingTasks();
+
+        assertNull(channel.readOutbound());
+    }
+}
@@ -185,5 +185,31 @@ public class TransactionsMessageTest {
         TransactionsMessage tmsg = new TransactionsMessage(Hex.decode(msg));
         assertEquals(1, tmsg.getTransactions().size());
     }
-}
 
+    @Test
+    public void testLazyParse() {
+        ECKey key = ECKey.fromPrivate(BigInteger.TEN);
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Transaction tx = new Transaction(ByteUtil.longToBytesNoLeadZeroes(i), ByteUtil.longToBytesNoLeadZeroes(1),
+                    ByteUtil.longToBytesNoLeadZeroes(100000), new byte[20], ByteUtil.longToBytesNoLeadZeroes(1),
+                    new byte[(i + 1) * 50]);
+            tx.sign(key);
+            txs.add(tx);
+        }
+        byte[] encoded = new TransactionsMessage(txs).getEncoded();
+
+        TransactionsMessage received = new TransactionsMessage(encoded);
+        assertEquals(txs.size(), received.getTransactions().size());
+        for (int i = 0; i < txs.size(); i++) {
+            Transaction tx = received.getTransactions().get(i);
+            assertArrayEquals(txs.get(i).getHash(), tx.getHash());
+            assertFalse(tx.isParsed());
+
+            assertArrayEquals(txs.get(i).getData(), tx.getData());
+            assertArrayEquals(key.getAddress(), tx.getSender());
+            assertArrayEquals(txs.get(i).getHash(), tx.getHash());
+        }
+        assertArrayEquals(encoded, new TransactionsMessage(received.getTransactions()).getEncoded());
+    }
+}
@@ -0,0 +1,173 @@
+package org.ethereum.net.rlpx;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.cryptohash.Keccak256;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.crypto.digests.KeccakDigest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class FrameCodecTest {
+
+    private FrameCodec iCodec;
+    private FrameCodec rCodec;
+    private final Random random = new Random(1);
+
+    @Before
+    public void setUp() throws Exception {
+        ECKey remoteKey = new ECKey();
+        ECKey myKey = new ECKey();
+        EncryptionHandshake initiator = new EncryptionHandshake(remoteKey.getPubKeyPoint());
+        EncryptionHandshake responder = new EncryptionHandshake();
+        AuthInitiateMessage initiate = initiator.createAuthInitiate(null, myKey);
+        byte[] initiatePacket = initiator.encryptAuthMessage(initiate);
+        byte[] responsePacket = responder.handleAuthInitiate(initiatePacket, remoteKey);
+        initiator.handleAuthResponse(myKey, initiatePacket, responsePacket);
+        iCodec = new FrameCodec(initiator.getSecrets());
+        rCodec = new FrameCodec(responder.getSecrets());
+    }
+
+    @Test
+    public void testHeapBuffers() throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        int[] sizes = {0, 1, 14, 15, 16, 17, 31, 32, 1000, 3 * 1024 * 1024 + 5};
+        for (int size : sizes) {
+            byte[] payload = randomBytes(size);
+            iCodec.writeFrame(new FrameCodec.Frame(size % 20, payload), buf);
+            assertFrame(size % 20, payload, rCodec.readFrames(buf));
+        }
+        assertEquals(0, buf.readableBytes());
+    }
+
+    @Test
+    public void testDirectBuffers() throws IOException {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+        try {
+            for (int i = 0; i < 20; i++) {
+                byte[] payload = randomBytes(random.nextInt(100000));
+                iCodec.writeFrame(new FrameCodec.Frame(i, payload), buf);
+            }
+            random.setSeed(1);
+            for (int i = 0; i < 20; i++) {
+                byte[] payload = randomBytes(random.nextInt(100000));
+                assertFrame(i, payload, rCodec.readFrames(buf));
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testPartialFrames() throws IOException {
+        byte[] payload = randomBytes(100);
+        ByteBuf encoded = Unpooled.buffer();
+        FrameCodec.Frame frame = new FrameCodec.Frame(3, payload);
+        frame.contextId = 5;
+        frame.totalFrameSize = 1000;
+        iCodec.writeFrame(frame, encoded);
+        iCodec.writeFrame(new FrameCodec.Frame(4, payload, 10, 50), encoded);
+
+        ByteBuf in = Unpooled.buffer();
+        List<FrameCodec.Frame> frames = null;
+        while (frames == null) {
+            assertNull(rCodec.readFrames(in));
+            in.writeByte(encoded.readByte());
+            frames = rCodec.readFrames(in);
+        }
+        assertFrame(3, payload, frames);
+        assertEquals(5, frames.get(0).contextId);
+        assertEquals(1000, frames.get(0).totalFrameSize);
+
+        in.writeBytes(encoded);
+        frames = rCodec.readFrames(in);
+        byte[] slice = new byte[50];
+        System.arraycopy(payload, 10, slice, 0, 50);
+        assertFrame(4, slice, frames);
+        assertEquals(-1, frames.get(0).contextId);
+    }
+
+    @Test
+    public void testStreamFrame() throws IOException {
+        byte[] payload = randomBytes(1000);
+        ByteBuf buf = Unpooled.buffer();
+        iCodec.writeFrame(new FrameCodec.Frame(1, payload.length, new ByteArrayInputStream(payload)), buf);
+        assertFrame(1, payload, rCodec.readFrames(buf));
+    }
+
+    @Test
+    public void testMacMismatch() throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        iCodec.writeFrame(new FrameCodec.Frame(1, randomBytes(100)), buf);
+        buf.setByte(40, buf.getByte(40) ^ 1);
+        try {
+            rCodec.readFrames(buf);
+            fail();
+        } catch (IOException e) {
+            assertEquals("MAC mismatch", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMacDigestState() {
+        for (int size : new int[] {0, 1, 32, 135, 136, 137, 300}) {
+            KeccakDigest handshakeMac = new KeccakDigest(256);
+            byte[] absorbed = randomBytes(size);
+            handshakeMac.update(absorbed, 0, absorbed.length);
+
+            Keccak256 frameMac = FrameCodec.toKeccak256(handshakeMac);
+            byte[] data = randomBytes(1000);
+            handshakeMac.update(data, 0, data.length);
+            frameMac.update(data, 0, data.length);
+
+            byte[] expected = new byte[32];
+            handshakeMac.doFinal(expected, 0);
+            assertArrayEquals("absorbed " + size, expected, frameMac.digest());
+        }
+    }
+
+    @Ignore("Benchmark")
+    @Test
+    public void benchmarkBlockBodies() throws IOException {
+        byte[] payload = randomBytes(4 * 1024 * 1024);
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+        long written = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            iCodec.writeFrame(new FrameCodec.Frame(0x16, payload), buf);
+            rCodec.readFrames(buf);
+            buf.discardReadBytes();
+            written += payload.length;
+        }
+        long time = System.nanoTime() - start;
+        buf.release();
+        System.out.println("Encoded and decoded " + written / 1024 / 1024 + " MB at " +
+                (written * 1000 / time) + " MB/s");
+    }
+
+    private static void assertFrame(long type, byte[] payload, List<FrameCodec.Frame> frames) throws IOException {
+        assertEquals(1, frames.size());
+        FrameCodec.Frame frame = frames.get(0);
+        assertEquals(type, frame.getType());
+        assertEquals(payload.length, frame.getSize());
+        assertArrayEquals(payload, frame.getPayload());
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
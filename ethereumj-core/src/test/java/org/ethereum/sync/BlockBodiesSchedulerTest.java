@@ -0,0 +1,141 @@
+package org.ethereum.sync;
+
+import org.ethereum.TestUtils;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeaderWrapper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.ethereum.sync.SyncStatistics.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockBodiesSchedulerTest {
+
+    private static final byte[] NODE_ID = new byte[64];
+
+    private final List<BlockHeaderWrapper> wanted = createHeaders(1000);
+
+    @Test
+    public void testRequestSize() {
+        SyncStatistics stats = new SyncStatistics();
+        assertEquals(DEFAULT_BODIES_REQUEST, stats.getBodiesRequestSize());
+
+        // 100 bodies in 1 sec
+        stats.bodiesRequested(100, 0);
+        stats.bodiesReceived(100, 1000);
+        assertEquals(100, stats.getBodiesRequestSize());
+
+        // 400 bodies per sec, but no more than the limit
+        stats.bodiesRequested(100, 1000);
+        stats.bodiesReceived(100, 1250);
+        assertEquals(190, (int) stats.getBodiesThroughput());
+        assertEquals(MAX_BODIES_REQUEST, stats.getBodiesRequestSize());
+
+        // the answer without request is ignored
+        stats.bodiesReceived(100, 1300);
+        assertEquals(190, (int) stats.getBodiesThroughput());
+    }
+
+    @Test
+    public void testPenalty() {
+        SyncStatistics stats = new SyncStatistics();
+        stats.bodiesRequested(100, 0);
+        stats.bodiesReceived(100, 1000);
+
+        stats.bodiesRequested(100, 1000);
+        stats.bodiesReceived(0, 2000);
+        assertEquals(1, stats.getPenalty());
+        assertEquals(17, stats.getBodiesRequestSize());
+
+        stats.bodiesRequested(100, 2000);
+        stats.bodiesFailed();
+        assertEquals(2, stats.getPenalty());
+        assertEquals(MIN_BODIES_REQUEST, stats.getBodiesRequestSize());
+
+        stats.bodiesRequested(100, 3000);
+        stats.bodiesReceived(100, 4000);
+        assertEquals(1, stats.getPenalty());
+    }
+
+    @Test
+    public void testNoDuplicates() {
+        BlockBodiesScheduler scheduler = new BlockBodiesScheduler();
+        SyncStatistics peer1 = measured(100);
+        SyncStatistics peer2 = measured(100);
+
+        List<BlockHeaderWrapper> req1 = request(scheduler, peer1, 10000);
+        assertEquals(wanted.subList(0, 100), req1);
+
+        List<BlockHeaderWrapper> req2 = request(scheduler, peer2, 10000);
+        assertEquals(wanted.subList(100, 200), req2);
+        assertEquals(200, scheduler.getInFlightCount());
+
+        // the bodies missing from the answer are wanted again
+        peer1.bodiesReceived(50, 10500);
+        assertEquals(100, scheduler.getInFlightCount());
+        assertEquals(wanted.subList(0, 100), scheduler.select(wanted, peer1, 10500));
+    }
+
+    @Test
+    public void testHedgeLate() {
+        BlockBodiesScheduler scheduler = new BlockBodiesScheduler();
+        SyncStatistics slow = measured(100);
+        SyncStatistics fast = measured(100);
+
+        List<BlockHeaderWrapper> slowReq = request(scheduler, slow, 10000);
+        assertEquals(wanted.subList(100, 200), scheduler.select(wanted, fast, 10500));
+
+        // twice the usual response time passed
+        List<BlockHeaderWrapper> hedged = request(scheduler, fast, 12100);
+        assertEquals(slowReq, hedged);
+
+        // the hedged bodies are not asked the third time
+        SyncStatistics another = measured(100);
+        assertEquals(wanted.subList(100, 200), scheduler.select(wanted, another, 20000));
+    }
+
+    @Test
+    public void testHedgeOldestGap() {
+        BlockBodiesScheduler scheduler = new BlockBodiesScheduler();
+        SyncStatistics slow = measured(4); // 4 sec to answer
+        SyncStatistics fast = measured(200);
+
+        List<BlockHeaderWrapper> slowReq = request(scheduler, slow, 10000);
+        assertEquals(MIN_BODIES_REQUEST, slowReq.size());
+
+        // the fast peer gets the oldest gap and the range after the slow one
+        List<BlockHeaderWrapper> fastReq = scheduler.select(wanted, fast, 10100);
+        assertEquals(MAX_BODIES_REQUEST, fastReq.size());
+        assertEquals(wanted.subList(0, MIN_BODIES_REQUEST), fastReq.subList(0, MIN_BODIES_REQUEST));
+        assertEquals(wanted.get(slowReq.size()), fastReq.get(MIN_BODIES_REQUEST));
+
+        // the slow peer is about to answer
+        assertEquals(wanted.get(slowReq.size()), scheduler.select(wanted, fast, 13500).get(0));
+    }
+
+    private List<BlockHeaderWrapper> request(BlockBodiesScheduler scheduler, SyncStatistics peer, long now) {
+        List<BlockHeaderWrapper> headers = scheduler.select(wanted, peer, now);
+        assertTrue(!headers.isEmpty());
+        peer.bodiesRequested(headers.size(), now);
+        scheduler.sent(headers, peer);
+        return headers;
+    }
+
+    private static SyncStatistics measured(int bodiesPerSec) {
+        SyncStatistics stats = new SyncStatistics();
+        stats.bodiesRequested(100, 0);
+        stats.bodiesReceived(bodiesPerSec, 1000);
+        return stats;
+    }
+
+    private static List<BlockHeaderWrapper> createHeaders(int count) {
+        List<BlockHeaderWrapper> ret = new ArrayList<>();
+        for (Block block : TestUtils.getRandomChain(new byte[32], 1, count)) {
+            ret.add(new BlockHeaderWrapper(block.getHeader(), NODE_ID));
+        }
+        return ret;
+    }
+}
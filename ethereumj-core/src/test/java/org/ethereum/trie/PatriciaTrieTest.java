@@ -0,0 +1,163 @@
+package org.ethereum.trie;
+
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.util.RLP;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class PatriciaTrieTest {
+
+    @Test
+    public void testEmpty() {
+        PatriciaTrie trie = new PatriciaTrie();
+        assertArrayEquals(EMPTY_TRIE_HASH, trie.getRootHash());
+
+        trie.update("dog".getBytes(), "puppy".getBytes());
+        trie.delete("dog".getBytes());
+        assertArrayEquals(EMPTY_TRIE_HASH, trie.getRootHash());
+        assertEquals(0, trie.get("dog".getBytes()).length);
+    }
+
+    @Test
+    public void testKnownRoot() {
+        PatriciaTrie trie = new PatriciaTrie();
+        trie.update("do".getBytes(), "verb".getBytes());
+        trie.update("dog".getBytes(), "puppy".getBytes());
+        trie.update("doge".getBytes(), "coin".getBytes());
+        trie.update("horse".getBytes(), "stallion".getBytes());
+
+        assertEquals("5991bb8c6514148a29db676a14ac506cd2cd5775ace63c30a4fe457715e9ac84",
+                Hex.toHexString(trie.getRootHash()));
+        assertEquals("puppy", new String(trie.get("dog".getBytes())));
+        assertEquals("verb", new String(trie.get("do".getBytes())));
+        assertEquals(0, trie.get("d".getBytes()).length);
+    }
+
+    @Test
+    public void testSameRootAsTrieImpl() {
+        Random rnd = new Random(42);
+        PatriciaTrie trie = new PatriciaTrie();
+        TrieImpl reference = new TrieImpl(null);
+        List<byte[]> keys = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            if (keys.isEmpty() || rnd.nextInt(3) > 0) {
+                // short keys produce nested branches and embedded nodes
+                byte[] key = new byte[1 + rnd.nextInt(rnd.nextBoolean() ? 3 : 32)];
+                rnd.nextBytes(key);
+                byte[] value = new byte[1 + rnd.nextInt(40)];
+                rnd.nextBytes(value);
+                keys.add(key);
+                trie.update(key, value);
+                reference.update(key, value);
+            } else {
+                byte[] key = keys.remove(rnd.nextInt(keys.size()));
+                trie.delete(key);
+                reference.delete(key);
+            }
+
+            if (i % 50 == 0) {
+                assertArrayEquals(reference.getRootHash(), trie.getRootHash());
+            }
+        }
+        assertArrayEquals(reference.getRootHash(), trie.getRootHash());
+
+        for (byte[] key : keys) {
+            assertArrayEquals(reference.get(key), trie.get(key));
+        }
+    }
+
+    @Test
+    public void testManyUpdates() {
+        PatriciaTrie trie = new PatriciaTrie();
+        TrieImpl reference = new TrieImpl(null);
+        for (int i = 0; i < 5000; i++) {
+            trie.update(sha3(RLP.encodeInt(i)), RLP.encodeInt(i));
+            reference.update(sha3(RLP.encodeInt(i)), RLP.encodeInt(i));
+        }
+        assertArrayEquals(reference.getRootHash(), trie.getRootHash());
+
+        for (int i = 0; i < 5000; i += 2) {
+            trie.delete(sha3(RLP.encodeInt(i)));
+            reference.delete(sha3(RLP.encodeInt(i)));
+        }
+        assertArrayEquals(reference.getRootHash(), trie.getRootHash());
+    }
+
+    @Test
+    public void testSyncAndReload() {
+        HashMapDB db = new HashMapDB();
+        PatriciaTrie trie = new PatriciaTrie(db);
+        for (int i = 0; i < 100; i++) {
+            trie.update(RLP.encodeInt(i), sha3(RLP.encodeInt(i)));
+        }
+        trie.sync();
+        byte[] root = trie.getRootHash();
+
+        // the nodes written are readable by TrieImpl and vice versa
+        TrieImpl reference = new TrieImpl(db, root);
+        PatriciaTrie trie2 = new PatriciaTrie(db, root);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(sha3(RLP.encodeInt(i)), reference.get(RLP.encodeInt(i)));
+            assertArrayEquals(sha3(RLP.encodeInt(i)), trie2.get(RLP.encodeInt(i)));
+        }
+        assertTrue(trie2.validate());
+
+        for (int i = 0; i < 50; i++) {
+            trie2.delete(RLP.encodeInt(i));
+            reference.delete(RLP.encodeInt(i));
+        }
+        assertArrayEquals(reference.getRootHash(), trie2.getRootHash());
+
+        trie2.undo();
+        assertArrayEquals(root, trie2.getRootHash());
+    }
+
+    @Ignore
+    @Test
+    public void benchmark() {
+        final int ITERATIONS = 20;
+        final int KEYS = 10000;
+
+        byte[][] keys = new byte[KEYS][];
+        byte[][] values = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = sha3(RLP.encodeInt(i));
+            values[i] = RLP.encodeElement(sha3(keys[i]));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start1 = System.currentTimeMillis();
+            for (int it = 0; it < ITERATIONS; it++) {
+                Trie trie = new TrieImpl(null);
+                for (int i = 0; i < KEYS; i++) {
+                    trie.update(keys[i], values[i]);
+                }
+                trie.getRootHash();
+            }
+            long end1 = System.currentTimeMillis();
+
+            long start2 = System.currentTimeMillis();
+            for (int it = 0; it < ITERATIONS; it++) {
+                Trie trie = new PatriciaTrie();
+                for (int i = 0; i < KEYS; i++) {
+                    trie.update(keys[i], values[i]);
+                }
+                trie.getRootHash();
+            }
+            long end2 = System.currentTimeMillis();
+
+            System.out.println("TrieImpl update/getRootHash\t: " + (end1 - start1) + "ms");
+            System.out.println("PatriciaTrie update/getRootHash\t: " + (end2 - start2) + "ms");
+        }
+    }
+}
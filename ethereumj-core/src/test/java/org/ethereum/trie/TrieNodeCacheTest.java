@@ -0,0 +1,82 @@
+package org.ethereum.trie;
+
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.util.RLP;
+import org.ethereum.util.Value;
+import org.junit.Test;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class TrieNodeCacheTest {
+
+    @Test
+    public void testEviction() {
+        byte[] value = new byte[100];
+        TrieNodeCache cache = new TrieNodeCache(3 * (32 + 2 * value.length + 96));
+
+        for (int i = 0; i < 4; i++) {
+            cache.put(sha3(new byte[]{(byte) i}), value);
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(sha3(new byte[]{0})));
+        assertNotNull(cache.get(sha3(new byte[]{3})));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // touching the eldest entry saves it from the next eviction
+        cache.get(sha3(new byte[]{1}));
+        cache.put(sha3(new byte[]{4}), value);
+        assertNotNull(cache.get(sha3(new byte[]{1})));
+        assertNull(cache.get(sha3(new byte[]{2})));
+    }
+
+    @Test
+    public void testDisabled() {
+        TrieNodeCache cache = new TrieNodeCache(0);
+        cache.put(sha3(new byte[]{0}), new byte[100]);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNodesSurviveCommit() {
+        HashMapDB db = new HashMapDB();
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+
+        TrieImpl trie = new TrieImpl(db);
+        trie.getCache().setReadCache(cache);
+        for (int i = 0; i < 100; i++) {
+            trie.update(sha3(new byte[]{(byte) i}), sha3(new byte[]{(byte) i}));
+        }
+        trie.sync();
+
+        assertEquals(0, trie.getCache().getNodes().size());
+        assertEquals(db.getAddedItems(), cache.size());
+
+        // wipe the DB: every node must now be served from the read cache
+        byte[] root = trie.getRootHash();
+        db.close();
+        db.init();
+
+        TrieImpl trie2 = new TrieImpl(db, root);
+        trie2.getCache().setReadCache(cache);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(sha3(new byte[]{(byte) i}), trie2.get(sha3(new byte[]{(byte) i})));
+        }
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testDecodedValueKept() {
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+        byte[] rlp = RLP.encodeList(RLP.encodeElement(new byte[40]), RLP.encodeElement(new byte[40]));
+        cache.put(sha3(rlp), rlp);
+
+        Value value = cache.getValue(sha3(rlp));
+        assertEquals(2, value.asList().size());
+        assertSame(value, cache.getValue(sha3(rlp)));
+        assertNull(cache.getValue(sha3(new byte[]{0})));
+    }
+}
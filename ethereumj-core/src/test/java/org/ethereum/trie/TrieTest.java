@@ -87,6 +87,20 @@ public class TrieTest {
         assertEquals(LONG_STRING, new String(trie.get(cat)));
     }
 
+    @Test
+    public void testDirtySize() {
+        TrieImpl trie = new TrieImpl(mockDb);
+        assertEquals(0, trie.getCache().getDirtySize());
+
+        trie.update(cat, LONG_STRING);
+        trie.update(dog, LONG_STRING);
+        long size = trie.getCache().getDirtySize();
+        assertTrue(size > 2 * LONG_STRING.length());
+
+        trie.sync();
+        assertEquals(0, trie.getCache().getDirtySize());
+    }
+
     @Test
     public void testInsertMultipleItems1() {
         TrieImpl trie = new TrieImpl(mockDb);
@@ -1125,4 +1125,35 @@ public class RLPTest {
         assertEquals(1, el.size());
         assertEquals(0, Util.rlpDecodeInt(el.get(0)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDecodeListItems() {
+        byte[] longItem = new byte[100];
+        Arrays.fill(longItem, (byte) 0x42);
+        byte[][] items = {
+                encodeElement(new byte[]{0x7f}),
+                encodeElement(new byte[0]),
+                encodeElement(new byte[55]),
+                encodeElement(longItem),
+                encodeList(),
+                encodeList(encodeElement(longItem), encodeList(encodeInt(1)))
+        };
+        byte[] list = encodeList(items);
+
+        List<byte[]> decoded = decodeListItems(list);
+        assertEquals(items.length, decoded.size());
+        for (int i = 0; i < items.length; i++) {
+            assertArrayEquals(items[i], decoded.get(i));
+            assertArrayEquals(((RLPList) decode2(list).get(0)).get(i).getRLPData(),
+                    decode2(decoded.get(i)).get(0).getRLPData());
+        }
+        assertTrue(decodeListItems(encodeList()).isEmpty());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDecodeListItemsTruncated() {
+        byte[] list = encodeList(encodeElement(new byte[100]));
+        decodeListItems(Arrays.copyOf(list, list.length - 1));
+    }
+}
+
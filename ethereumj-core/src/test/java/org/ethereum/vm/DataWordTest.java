@@ -1,11 +1,17 @@
 package org.ethereum.vm;
 
+import org.ethereum.util.ByteUtil;
 import org.junit.Test;
 
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
 
+import static java.math.BigInteger.ZERO;
+import static org.ethereum.vm.DataWord.MAX_VALUE;
+import static org.ethereum.vm.DataWord._2_256;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -393,6 +399,111 @@ public class DataWordTest {
         assertTrue(wr.isZero());
     }
 
+    @Test
+    public void testArithmeticAgainstBigInteger() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            byte[] a = randomWord(rnd), b = randomWord(rnd), c = randomWord(rnd);
+            BigInteger x = new BigInteger(1, a), y = new BigInteger(1, b), z = new BigInteger(1, c);
+            BigInteger sx = new BigInteger(a), sy = new BigInteger(b);
+
+            DataWord w = new DataWord(a);
+            w.add(new DataWord(b));
+            assertWord(x.add(y), w, "add", a, b);
+
+            w = new DataWord(a);
+            w.sub(new DataWord(b));
+            assertWord(x.subtract(y), w, "sub", a, b);
+
+            w = new DataWord(a);
+            w.mul(new DataWord(b));
+            assertWord(x.multiply(y), w, "mul", a, b);
+
+            w = new DataWord(a);
+            w.div(new DataWord(b));
+            assertWord(y.signum() == 0 ? ZERO : x.divide(y), w, "div", a, b);
+
+            w = new DataWord(a);
+            w.mod(new DataWord(b));
+            assertWord(y.signum() == 0 ? ZERO : x.mod(y), w, "mod", a, b);
+
+            w = new DataWord(a);
+            w.sDiv(new DataWord(b));
+            assertWord(sy.signum() == 0 ? ZERO : sx.divide(sy), w, "sdiv", a, b);
+
+            w = new DataWord(a);
+            w.sMod(new DataWord(b));
+            BigInteger smod = sy.signum() == 0 ? ZERO : sx.abs().mod(sy.abs());
+            assertWord(sx.signum() < 0 ? smod.negate() : smod, w, "smod", a, b);
+
+            w = new DataWord(a);
+            w.addmod(new DataWord(b), new DataWord(c));
+            assertWord(z.signum() == 0 ? ZERO : x.add(y).mod(z), w, "addmod", a, b);
+
+            w = new DataWord(a);
+            w.mulmod(new DataWord(b), new DataWord(c));
+            assertWord(z.signum() == 0 ? ZERO : x.multiply(y).mod(z), w, "mulmod", a, b);
+
+            w = new DataWord(a);
+            w.bnot();
+            assertWord(MAX_VALUE.subtract(x), w, "not", a, b);
+
+            assertEquals(Integer.signum(x.compareTo(y)), Integer.signum(new DataWord(a).compareTo(new DataWord(b))));
+            assertEquals(Integer.signum(sx.compareTo(sy)), Integer.signum(new DataWord(a).sCompareTo(new DataWord(b))));
+
+            if (i % 10 == 0) {
+                w = new DataWord(a);
+                w.exp(new DataWord(b));
+                assertWord(x.modPow(y, _2_256), w, "exp", a, b);
+            }
+        }
+    }
+
+    /**
+     * Mostly the edge cases: zero/short/full/all-ones limbs and the sign bits
+     */
+    private static byte[] randomWord(Random rnd) {
+        byte[] word = new byte[32];
+        switch (rnd.nextInt(6)) {
+            case 0:
+                break;
+            case 1:
+                word[31] = (byte) rnd.nextInt();
+                break;
+            case 2:
+                for (int i = 32 - 4 * (1 + rnd.nextInt(8)); i < 32; i++) word[i] = (byte) rnd.nextInt();
+                break;
+            case 3:
+                Arrays.fill(word, (byte) 0xFF);
+                word[31 - rnd.nextInt(32)] = (byte) rnd.nextInt();
+                break;
+            case 4:
+                word[0] = (byte) 0x80;
+                if (rnd.nextBoolean()) word[31] = 1;
+                break;
+            default:
+                rnd.nextBytes(word);
+                for (int i = 0; i < 32; i++) {
+                    if (rnd.nextInt(4) == 0) word[i] = rnd.nextBoolean() ? 0 : (byte) 0xFF;
+                }
+        }
+        return word;
+    }
+
+    private static void assertWord(BigInteger expected, DataWord actual, String op, byte[] a, byte[] b) {
+        assertEquals(op + " " + Hex.toHexString(a) + " " + Hex.toHexString(b),
+                Hex.toHexString(ByteUtil.copyToArray(expected.and(MAX_VALUE))), actual.toString());
+    }
+
+    @Test
+    public void testNoAliasing() {
+        byte[] hash = Hex.decode("0000000000000000000000000000000000000000000000000000000000000001");
+        DataWord w = new DataWord(hash);
+        w.add(w.clone());
+        assertEquals(1, hash[31]);
+        assertEquals(2, w.getData()[31]);
+    }
+
     public static BigInteger pow(BigInteger x, BigInteger y) {
         if (y.compareTo(BigInteger.ZERO) < 0)
             throw new IllegalArgumentException();
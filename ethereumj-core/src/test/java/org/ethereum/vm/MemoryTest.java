@@ -511,6 +511,40 @@ public class MemoryTest {
         assertTrue(zero == 10);
     }
 
+    @Test
+    public void memoryCopy() {
+
+        Memory memoryBuffer = new Memory();
+        memoryBuffer.write(0, new byte[]{9, 9, 9, 9, 9, 9}, 6, false);
+
+        byte[] code = Hex.decode("0102030405");
+        memoryBuffer.copy(1, code, 3, 4);
 
+        assertArrayEquals(Hex.decode("0904050000090000"), memoryBuffer.read(0, 8));
 
-}
\ No newline at end of file
+        // source offset beyond the source end
+        memoryBuffer.copy(2, code, 100, 2);
+        assertArrayEquals(Hex.decode("0904000000090000"), memoryBuffer.read(0, 8));
+        assertEquals(32, memoryBuffer.size());
+    }
+
+    @Test
+    public void memoryGrowth() {
+
+        Memory memoryBuffer = new Memory();
+        for (int i = 0; i < 64 * 1024; i += 32) {
+            memoryBuffer.writeWord(i, new DataWord(i));
+        }
+
+        assertEquals(64 * 1024, memoryBuffer.size());
+        assertEquals(64 * 1024, memoryBuffer.internalSize());
+        assertEquals(64, memoryBuffer.getChunks().size());
+        assertEquals(new DataWord(0x1020), memoryBuffer.readWord(0x1020));
+        assertEquals(new DataWord(0x1020).intValue() >>> 8, memoryBuffer.readWord(0x1020 - 1).intValue());
+
+        // growing by a word doubles the capacity
+        memoryBuffer.readWord(64 * 1024);
+        assertEquals(64 * 1024 + 32, memoryBuffer.size());
+        assertEquals(128 * 1024, memoryBuffer.internalSize());
+    }
+}
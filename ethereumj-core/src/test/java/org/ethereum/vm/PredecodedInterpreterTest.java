@@ -0,0 +1,154 @@
+package org.ethereum.vm;
+
+import com.typesafe.config.ConfigFactory;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PredecodedInterpreterTest {
+
+    private static final SystemProperties defaultConfig = new SystemProperties();
+    private static final SystemProperties predecodedConfig =
+            new SystemProperties(ConfigFactory.parseString("vm.interpreter = predecoded"));
+    private static final SystemProperties jitConfig =
+            new SystemProperties(ConfigFactory.parseString("vm.interpreter = jit\nvm.jit.threshold = 0"));
+
+    private static final OpCode[] OPS = {
+            OpCode.ADD, OpCode.MUL, OpCode.SUB, OpCode.DIV, OpCode.SDIV, OpCode.MOD, OpCode.SMOD,
+            OpCode.ADDMOD, OpCode.MULMOD, OpCode.EXP, OpCode.SIGNEXTEND, OpCode.LT, OpCode.GT,
+            OpCode.SLT, OpCode.SGT, OpCode.EQ, OpCode.ISZERO, OpCode.AND, OpCode.OR, OpCode.XOR,
+            OpCode.NOT, OpCode.BYTE, OpCode.SHA3, OpCode.ADDRESS, OpCode.CALLER, OpCode.CALLVALUE,
+            OpCode.CALLDATALOAD, OpCode.CALLDATASIZE, OpCode.POP, OpCode.MLOAD, OpCode.MSTORE,
+            OpCode.MSTORE8, OpCode.PC, OpCode.MSIZE, OpCode.GAS, OpCode.JUMPDEST,
+            OpCode.DUP1, OpCode.DUP2, OpCode.DUP3, OpCode.DUP16, OpCode.SWAP1, OpCode.SWAP2, OpCode.SWAP16,
+            // executed by the generic step
+            OpCode.SLOAD, OpCode.SSTORE, OpCode.CALLDATACOPY, OpCode.CODECOPY, OpCode.LOG1, OpCode.NUMBER
+    };
+
+    @Test
+    public void testLoop() {
+        // sums 1..100 into the memory word 0 and returns it
+        // PUSH1 100, JUMPDEST, DUP1, PUSH1 0, MLOAD, ADD, PUSH1 0, MSTORE, PUSH1 1, SWAP1, SUB, DUP1, PUSH1 2, JUMPI,
+        // PUSH1 32, PUSH1 0, RETURN
+        byte[] code = Hex.decode("60645b8060005101600052600190038060025760206000f3");
+        Program program = assertSameExecution(code, new byte[0]);
+        assertEquals(new DataWord(5050), new DataWord(program.getResult().getHReturn()));
+
+        // everything but the RETURN is run by the predecoded loop
+        program = new Program(code, new ProgramInvokeMockImpl(), null, predecodedConfig);
+        assertEquals(1 + 100 * 13 + 2, PredecodedInterpreter.run(program));
+        assertEquals(OpCode.RETURN.val(), program.getCurrentOp());
+    }
+
+    @Test
+    public void testEdgeCases() {
+        // huge memory offset, left to the generic step
+        assertSameExecution(Hex.decode("7f0100000000000000000000000000000000000000000000000000000000000000005100"), null);
+        // truncated PUSH at the code end
+        assertSameExecution(Hex.decode("600161ab"), null);
+        // bad jump, stack underflow, invalid op
+        assertSameExecution(Hex.decode("600356"), null);
+        assertSameExecution(Hex.decode("600101"), null);
+        assertSameExecution(Hex.decode("6001ef"), null);
+        // out of gas in the loop
+        assertSameExecution(Hex.decode("5b600056"), null);
+        // BYTE and SIGNEXTEND with the large index
+        assertSameExecution(Hex.decode("60ff61010016601f60ff1a6101000b00"), null);
+    }
+
+    @Test
+    public void testRandomPrograms() {
+        Random rnd = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            assertSameExecution(randomCode(rnd), randomBytes(rnd, rnd.nextInt(70)));
+        }
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkLoop() {
+        // 10000 iterations of the testLoop sum
+        byte[] code = Hex.decode("6127105b8060005101600052600190038060035760206000f3");
+        for (SystemProperties config : new SystemProperties[]{defaultConfig, predecodedConfig, jitConfig,
+                defaultConfig, predecodedConfig, jitConfig}) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 100; i++) {
+                ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+                invoke.setGas(10000000);
+                Program program = new Program(code, invoke, null, config);
+                new VM(config).play(program);
+                assertNull(program.getResult().getException());
+            }
+            System.out.println(config.vmInterpreter() + ": " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+
+    private static Program assertSameExecution(byte[] code, byte[] data) {
+        Program expected = execute(code, data, defaultConfig);
+        assertSameExecution(code, expected, execute(code, data, jitConfig));
+        return assertSameExecution(code, expected, execute(code, data, predecodedConfig));
+    }
+
+    private static Program assertSameExecution(byte[] code, Program expected, Program actual) {
+        String msg = Hex.toHexString(code);
+        RuntimeException expectedException = expected.getResult().getException();
+        RuntimeException actualException = actual.getResult().getException();
+        assertEquals(msg, expectedException == null ? null : expectedException.getClass(),
+                actualException == null ? null : actualException.getClass());
+        assertEquals(msg, expected.getResult().getGasUsed(), actual.getResult().getGasUsed());
+        assertEquals(msg, expected.getResult().getFutureRefund(), actual.getResult().getFutureRefund());
+        assertArrayEquals(msg, expected.getResult().getHReturn(), actual.getResult().getHReturn());
+        assertEquals(msg, expected.getResult().getLogInfoList().size(), actual.getResult().getLogInfoList().size());
+        assertEquals(msg, expected.getPC(), actual.getPC());
+        assertEquals(msg, Arrays.toString(expected.getStack().toArray()), Arrays.toString(actual.getStack().toArray()));
+        assertEquals(msg, expected.memoryToString(), actual.memoryToString());
+        assertEquals(msg, expected.getStorageDiff(), actual.getStorageDiff());
+        return actual;
+    }
+
+    private static Program execute(byte[] code, byte[] data, SystemProperties config) {
+        ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl(data);
+        invoke.setGas(100000);
+        Program program = new Program(code, invoke, null, config);
+        new VM(config).play(program);
+        invoke.getRepository().close();
+        return program;
+    }
+
+    private static byte[] randomCode(Random rnd) {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        int length = 1 + rnd.nextInt(60);
+        for (int i = 0; i < length; i++) {
+            int choice = rnd.nextInt(10);
+            if (choice < 4) {
+                // mostly small operands, so the memory ops and jumps stay in range
+                int n = rnd.nextInt(3) == 0 ? 1 + rnd.nextInt(32) : 1;
+                code.write(OpCode.PUSH1.val() + n - 1);
+                byte[] value = randomBytes(rnd, n);
+                if (n == 1) value[0] = (byte) rnd.nextInt(rnd.nextBoolean() ? 40 : 256);
+                code.write(value, 0, value.length);
+            } else if (choice < 5) {
+                code.write(rnd.nextBoolean() ? OpCode.JUMP.val() : OpCode.JUMPI.val());
+            } else {
+                code.write(OPS[rnd.nextInt(OPS.length)].val());
+            }
+        }
+        if (rnd.nextInt(4) == 0) code.write(rnd.nextInt(256));
+        return code.toByteArray();
+    }
+
+    private static byte[] randomBytes(Random rnd, int size) {
+        byte[] ret = new byte[size];
+        rnd.nextBytes(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,58 @@
+package org.ethereum.vm;
+
+import org.ethereum.vm.program.ProgramPrecompile;
+import org.ethereum.vm.program.ProgramPrecompileCache;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.junit.Assert.*;
+
+public class ProgramPrecompileTest {
+
+    @Test
+    public void testAnalysis() {
+        // 0: PUSH1 0x5b, 2: PUSH1 0x06, 4: JUMP, 5: STOP, 6: JUMPDEST, 7: PUSH2 0x5b5b, 10: POP, 11: STOP
+        byte[] code = Hex.decode("605b600656005b615b5b5000");
+        ProgramPrecompile precompile = ProgramPrecompile.compile(code);
+
+        // JUMPDEST byte inside of the PUSH data is not a jump destination
+        assertFalse(precompile.hasJumpDest(1));
+        assertFalse(precompile.hasJumpDest(8));
+        assertTrue(precompile.hasJumpDest(6));
+        assertFalse(precompile.hasJumpDest(100));
+
+        assertTrue(precompile.isInstructionStart(2));
+        assertFalse(precompile.isInstructionStart(3));
+        assertFalse(precompile.isInstructionStart(9));
+        assertTrue(precompile.isInstructionStart(10));
+
+        assertEquals(3, precompile.getBlockCount());
+        assertEquals(0, precompile.getBlockIndex(0));
+        assertEquals(1, precompile.getBlockIndex(5));
+        assertEquals(2, precompile.getBlockIndex(6));
+        assertTrue(precompile.getBlockIndex(2) < 0);
+        // PUSH1 + PUSH1 + JUMP
+        assertEquals(3 + 3 + 8, precompile.getBlockStaticGas(0));
+        assertEquals(0, precompile.getBlockStaticGas(1));
+        // JUMPDEST + PUSH2 + POP + STOP
+        assertEquals(1 + 3 + 2, precompile.getBlockStaticGas(2));
+    }
+
+    @Test
+    public void testCache() {
+        ProgramPrecompileCache cache = new ProgramPrecompileCache(1024);
+        byte[] code = Hex.decode("6000565b00");
+
+        ProgramPrecompile precompile = cache.get(code);
+        assertSame(precompile, cache.get(code.clone()));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        // large codes push the old entries out
+        for (int i = 0; i < 10; i++) {
+            cache.get(new byte[200 + i]);
+        }
+        assertTrue(cache.getMemory() <= 1024);
+        assertNotSame(precompile, cache.get(code));
+    }
+}
@@ -0,0 +1,89 @@
+package org.ethereum.vm;
+
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.Stack;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.ethereum.vm.program.listener.ProgramListenerAdaptor;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StackTest {
+
+    @Test
+    public void testStack() {
+        final List<String> events = new ArrayList<>();
+        Stack stack = new Stack();
+        stack.setProgramListener(new ProgramListenerAdaptor() {
+            @Override
+            public void onStackPop() {
+                events.add("pop");
+            }
+
+            @Override
+            public void onStackPush(DataWord value) {
+                events.add("push " + value.intValue());
+            }
+
+            @Override
+            public void onStackSwap(int from, int to) {
+                events.add("swap " + from + " " + to);
+            }
+        });
+
+        stack.push(new DataWord(1));
+        stack.push(new DataWord(2));
+        stack.push(new DataWord(3));
+        stack.swap(2, 0);
+        stack.dup(2);
+
+        assertEquals(4, stack.size());
+        assertEquals(new DataWord(2), stack.peek());
+        assertNotSame(stack.get(1), stack.peek());
+        assertEquals(new DataWord(1), stack.get(2));
+        assertEquals(new DataWord(3), stack.get(0));
+
+        assertEquals(new DataWord(2), stack.pop());
+        assertEquals(3, stack.toArray().length);
+        assertEquals("[push 1, push 2, push 3, swap 2 0, push 2, pop]", events.toString());
+
+        // the out of range swap is ignored
+        stack.swap(1, 3);
+        assertEquals(new DataWord(2), stack.get(1));
+    }
+
+    @Test(expected = Program.StackTooSmallException.class)
+    public void testUnderflow() {
+        Program program = new Program(Hex.decode("50"), new ProgramInvokeMockImpl());
+        new VM().step(program);
+        throw program.getResult().getException();
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkStackOps() {
+        // loop of 1000 iterations: counter DUP/SWAP/POP shuffling, SUB and JUMPI back
+        // PUSH2 1000, JUMPDEST, PUSH1 1, DUP2, DUP2, SWAP1, POP, POP, SWAP1, SUB, DUP1, PUSH1 3, JUMPI, STOP
+        byte[] code = Hex.decode("6103e85b6001818190505090038060035700");
+        ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            long steps = 0;
+            for (int i = 0; i < 200; i++) {
+                Program program = new Program(code, invoke);
+                new VM().play(program);
+                assertNull(program.getResult().getException());
+                steps += 1000 * 12;
+            }
+            long time = System.nanoTime() - start;
+            System.out.printf("%d ops in %d ms, %d ns/op%n", steps, time / 1000000, time / steps);
+        }
+        invoke.getRepository().close();
+    }
+}
@@ -0,0 +1,60 @@
+package org.ethereum.vm.jit;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.ProgramPrecompile;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.junit.Assert.*;
+
+public class JitCompilerTest {
+
+    // sums 1..100 into the memory word 0 and returns it, see PredecodedInterpreterTest.testLoop
+    private static final byte[] LOOP = Hex.decode("60645b8060005101600052600190038060025760206000f3");
+
+    @Test
+    public void testThreshold() {
+        JitCompiler compiler = new JitCompiler();
+        ProgramPrecompile precompile = ProgramPrecompile.compile(LOOP);
+
+        assertNull(compiler.getCompiled(precompile, 2));
+        assertNull(compiler.getCompiled(precompile, 2));
+        CompiledCode compiled = compiler.getCompiled(precompile, 2);
+        assertNotNull(compiled);
+        assertSame(compiled, compiler.getCompiled(precompile, 2));
+
+        assertNull(compiler.getCompiled(ProgramPrecompile.compile(LOOP), 2));
+    }
+
+    @Test
+    public void testLoop() {
+        Program program = new Program(LOOP, new ProgramInvokeMockImpl());
+        CompiledCode compiled = new JitCompiler().getCompiled(program.getProgramPrecompile(), 0);
+
+        // everything but the RETURN is compiled
+        assertEquals(1 + 100 * 13 + 2, compiled.run(program));
+        assertEquals(OpCode.RETURN.val(), program.getCurrentOp());
+        assertEquals(new DataWord(5050), program.memoryLoad(new DataWord(0)));
+    }
+
+    @Test
+    public void testFallback() {
+        // PUSH1 1, PUSH1 0, SSTORE, PUSH1 2, JUMPDEST, STOP
+        Program program = new Program(Hex.decode("600160005560025b00"), new ProgramInvokeMockImpl());
+        CompiledCode compiled = new JitCompiler().getCompiled(program.getProgramPrecompile(), 0);
+
+        assertEquals(2, compiled.run(program));
+        assertEquals(OpCode.SSTORE.val(), program.getCurrentOp());
+
+        // resumes after the op executed by the interpreter
+        program.stackPop();
+        program.stackPop();
+        program.step();
+        assertEquals(3, compiled.run(program));
+        assertTrue(program.isStopped());
+        assertEquals(new DataWord(2), program.getStack().peek());
+    }
+}